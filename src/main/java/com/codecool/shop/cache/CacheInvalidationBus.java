@@ -0,0 +1,125 @@
+package com.codecool.shop.cache;
+
+import com.codecool.shop.util.MetricsRegistry;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the catalog caches of several nodes coherent. The dao write paths publish
+ * an event after changing the database; every other node hands it to its listeners,
+ * which drop or reload the affected entries. The publishing node has already
+ * updated its own caches, so its own events are ignored when they come back.
+ * Without a transport the bus only counts the catalog version.
+ */
+public class CacheInvalidationBus {
+
+    private static CacheInvalidationBus instance = null;
+
+    private final String nodeId;
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private final List<Consumer<InvalidationEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final Consumer<InvalidationEvent> receiver = this::receive;
+    private volatile InvalidationTransport transport;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    public static synchronized CacheInvalidationBus getInstance() {
+        if (instance == null) {
+            instance = new CacheInvalidationBus(UUID.randomUUID().toString());
+            MetricsRegistry.getInstance().register("cache.invalidation", instance::getMetrics);
+        }
+        return instance;
+    }
+
+    public CacheInvalidationBus(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public synchronized void start(InvalidationTransport transport) {
+        stop();
+        transport.subscribe(receiver);
+        this.transport = transport;
+    }
+
+    public synchronized void stop() {
+        if (transport != null) {
+            transport.unsubscribe(receiver);
+            transport = null;
+        }
+    }
+
+    public void addListener(Consumer<InvalidationEvent> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<InvalidationEvent> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Announces a change that is already in the database. Never throws: a lost event
+     * must not fail the write that caused it.
+     */
+    public void publish(InvalidationEvent.EntityType entityType, int id) {
+        long version = catalogVersion.incrementAndGet();
+        InvalidationTransport current = transport;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.publish(new InvalidationEvent(entityType, id, version, nodeId, System.currentTimeMillis()));
+            published.incrementAndGet();
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            e.printStackTrace();
+        }
+    }
+
+    void receive(InvalidationEvent event) {
+        if (nodeId.equals(event.getOrigin())) {
+            return;
+        }
+        received.incrementAndGet();
+        catalogVersion.accumulateAndGet(event.getCatalogVersion(), Math::max);
+        long lag = Math.max(0, System.currentTimeMillis() - event.getPublishedAtMillis());
+        lastLagMillis.set(lag);
+        maxLagMillis.accumulateAndGet(lag, Math::max);
+        for (Consumer<InvalidationEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion.get();
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("catalogVersion", catalogVersion.get());
+        metrics.put("published", published.get());
+        metrics.put("received", received.get());
+        metrics.put("failures", failures.get());
+        metrics.put("lag.last.ms", lastLagMillis.get());
+        metrics.put("lag.max.ms", maxLagMillis.get());
+        return metrics;
+    }
+}
@@ -0,0 +1,85 @@
+package com.codecool.shop.cache;
+
+/**
+ * Tells the other nodes that a cached catalog entity changed. An id of {@link #ALL}
+ * means every entity of the type. Events are encoded as short text so they fit in
+ * a PostgreSQL NOTIFY payload.
+ */
+public final class InvalidationEvent {
+
+    public enum EntityType {
+        PRODUCT, SUPPLIER, CATEGORY
+    }
+
+    public static final int ALL = -1;
+
+    private final EntityType entityType;
+    private final int id;
+    private final long catalogVersion;
+    private final String origin;
+    private final long publishedAtMillis;
+
+    public InvalidationEvent(EntityType entityType, int id, long catalogVersion, String origin, long publishedAtMillis) {
+        if (entityType == null || origin == null) {
+            throw new IllegalArgumentException("Invalidation event needs an entity type and an origin.");
+        }
+        this.entityType = entityType;
+        this.id = id;
+        this.catalogVersion = catalogVersion;
+        this.origin = origin;
+        this.publishedAtMillis = publishedAtMillis;
+    }
+
+    /**
+     * Drops everything of the given type, used when a transport may have missed events.
+     */
+    public static InvalidationEvent reset(EntityType entityType) {
+        return new InvalidationEvent(entityType, ALL, 0, "", System.currentTimeMillis());
+    }
+
+    public static InvalidationEvent decode(String payload) {
+        String[] parts = payload == null ? new String[0] : payload.split(",", -1);
+        if (parts.length != 5) {
+            throw new IllegalArgumentException("Malformed invalidation event: " + payload);
+        }
+        try {
+            return new InvalidationEvent(EntityType.valueOf(parts[0]), Integer.parseInt(parts[1]),
+                    Long.parseLong(parts[2]), parts[3], Long.parseLong(parts[4]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed invalidation event: " + payload, e);
+        }
+    }
+
+    public String encode() {
+        return entityType.name() + "," + id + "," + catalogVersion + "," + origin + "," + publishedAtMillis;
+    }
+
+    public EntityType getEntityType() {
+        return entityType;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public boolean isAll() {
+        return id == ALL;
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public long getPublishedAtMillis() {
+        return publishedAtMillis;
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
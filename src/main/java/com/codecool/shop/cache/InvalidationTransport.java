@@ -0,0 +1,18 @@
+package com.codecool.shop.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries invalidation events between the nodes. Every subscriber receives every
+ * published event, including the ones published through the same transport.
+ */
+public interface InvalidationTransport {
+
+    void publish(InvalidationEvent event);
+
+    void subscribe(Consumer<InvalidationEvent> subscriber);
+
+    void unsubscribe(Consumer<InvalidationEvent> subscriber);
+
+    void close();
+}
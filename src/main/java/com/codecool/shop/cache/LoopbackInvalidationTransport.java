@@ -0,0 +1,61 @@
+package com.codecool.shop.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * In-process transport for a single node or for several buses in one JVM (tests).
+ * Events are delivered asynchronously and in publish order, like NOTIFY.
+ */
+public class LoopbackInvalidationTransport implements InvalidationTransport {
+
+    private final List<Consumer<InvalidationEvent>> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService delivery = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "loopback-invalidation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public void publish(InvalidationEvent event) {
+        String payload = event.encode();
+        delivery.execute(() -> {
+            for (Consumer<InvalidationEvent> subscriber : subscribers) {
+                subscriber.accept(InvalidationEvent.decode(payload));
+            }
+        });
+    }
+
+    @Override
+    public void subscribe(Consumer<InvalidationEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void unsubscribe(Consumer<InvalidationEvent> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Waits until every event published so far has been delivered.
+     */
+    public void awaitDelivery(long timeoutMillis) throws InterruptedException, TimeoutException {
+        try {
+            delivery.submit(() -> { }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        subscribers.clear();
+        delivery.shutdown();
+    }
+}
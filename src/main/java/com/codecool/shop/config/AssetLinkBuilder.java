@@ -0,0 +1,19 @@
+package com.codecool.shop.config;
+
+import com.codecool.shop.service.AssetPipeline;
+import org.thymeleaf.context.IExpressionContext;
+import org.thymeleaf.context.IWebContext;
+import org.thymeleaf.linkbuilder.StandardLinkBuilder;
+
+/**
+ * Turns @{/static/...} links in the templates into their fingerprinted /assets/ names.
+ */
+public class AssetLinkBuilder extends StandardLinkBuilder {
+
+    @Override
+    protected String processLink(IExpressionContext context, String link) {
+        String contextPath = context instanceof IWebContext
+                ? ((IWebContext) context).getRequest().getContextPath() : "";
+        return super.processLink(context, AssetPipeline.getInstance().resolve(link, contextPath));
+    }
+}
@@ -0,0 +1,23 @@
+package com.codecool.shop.config;
+
+import com.codecool.shop.service.DatabaseExecutor;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Starts the database executor with the application and stops it on shutdown.
+ */
+@WebListener
+public class ExecutorConfig implements ServletContextListener {
+
+    public void contextInitialized(ServletContextEvent sce) {
+        DatabaseExecutor.getInstance();
+    }
+
+    public void contextDestroyed(ServletContextEvent sce) {
+        DatabaseExecutor.shutdownInstance();
+    }
+
+}
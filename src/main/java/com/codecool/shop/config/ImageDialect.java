@@ -0,0 +1,72 @@
+package com.codecool.shop.config;
+
+import com.codecool.shop.service.ImageVariants;
+import org.thymeleaf.context.IExpressionContext;
+import org.thymeleaf.context.IWebContext;
+import org.thymeleaf.dialect.AbstractDialect;
+import org.thymeleaf.dialect.IExpressionObjectDialect;
+import org.thymeleaf.expression.IExpressionObjectFactory;
+
+import javax.servlet.ServletContext;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Adds #images to the templates: ${#images.srcset('/static/img/title.png')} lists
+ * the scaled-down variants of an image for a srcset attribute.
+ */
+public class ImageDialect extends AbstractDialect implements IExpressionObjectDialect {
+
+    public ImageDialect() {
+        super("images");
+    }
+
+    @Override
+    public IExpressionObjectFactory getExpressionObjectFactory() {
+        return new IExpressionObjectFactory() {
+            @Override
+            public Set<String> getAllExpressionObjectNames() {
+                return Collections.singleton("images");
+            }
+
+            @Override
+            public Object buildObject(IExpressionContext context, String expressionObjectName) {
+                if (!(context instanceof IWebContext)) {
+                    return new Images(null, "");
+                }
+                IWebContext webContext = (IWebContext) context;
+                return new Images(webContext.getServletContext(), webContext.getRequest().getContextPath());
+            }
+
+            @Override
+            public boolean isCacheable(String expressionObjectName) {
+                return false;
+            }
+        };
+    }
+
+    public static class Images {
+        private final ServletContext servletContext;
+        private final String contextPath;
+
+        Images(ServletContext servletContext, String contextPath) {
+            this.servletContext = servletContext;
+            this.contextPath = contextPath;
+        }
+
+        public String srcset(String path) {
+            if (servletContext == null || !path.startsWith("/static/")) {
+                return "";
+            }
+            try {
+                ImageVariants variants = ImageVariants.getInstance();
+                ImageVariants.Source source = variants.findSource(servletContext, path.substring("/static/".length()));
+                return source == null ? "" : variants.srcset(source, contextPath);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                return "";
+            }
+        }
+    }
+}
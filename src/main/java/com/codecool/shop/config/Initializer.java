@@ -1,5 +1,6 @@
 package com.codecool.shop.config;
 
+import com.codecool.shop.dao.DatabaseUnavailableException;
 import com.codecool.shop.dao.ProductCategoryDao;
 import com.codecool.shop.dao.ProductDao;
 import com.codecool.shop.dao.SupplierDao;
@@ -7,22 +8,120 @@ import com.codecool.shop.dao.implementation.*;
 import com.codecool.shop.model.Product;
 import com.codecool.shop.model.ProductCategory;
 import com.codecool.shop.model.Supplier;
+import com.codecool.shop.service.CatalogSource;
+import com.codecool.shop.service.FlashSale;
+import com.codecool.shop.service.Inventory;
 
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 @WebListener
 public class Initializer implements ServletContextListener {
 
+    private static final long SEED_LOCK_KEY = 0x43435345L;
+
     @Override
     public void contextInitialized(ServletContextEvent sce) {
-        ProductDao productDataStore = ProductDaoDB.getInstance();
+        ServerConfig config = ServerConfig.getInstance();
+        boolean snapshotEnabled = config.getBoolean("catalog_snapshot_enabled", true);
+        Path snapshotPath = Paths.get(config.getString("catalog_snapshot_path", "target/catalog.snapshot"));
+
+        if (config.getBoolean("db_migrate_on_startup", true)) {
+            migrateSchema(Paths.get(config.getString("db_migrations_path", "src/main/sql/migration")));
+        }
+
+        ProductDao productDataStore;
+        boolean seeded = false;
+        if (snapshotEnabled && CatalogSource.getInstance().serveSnapshot(snapshotPath)) {
+            productDataStore = CatalogSource.getInstance().getSnapshotProductDao();
+        } else {
+            ProductDaoDB productDaoDB = ProductDaoDB.getInstance();
+            productDataStore = productDaoDB;
+            try {
+                // one commit for the whole catalog instead of one per row
+                seeded = productDaoDB.inTransaction(() -> {
+                    // nodes booting together seed one after the other, so only the first finds it empty
+                    productDaoDB.executeSelectQuery("SELECT pg_advisory_xact_lock(" + SEED_LOCK_KEY + ");");
+                    if (!productDaoDB.isCatalogEmpty()) {
+                        // keep what is there, e.g. an imported catalog
+                        return false;
+                    }
+                    seedDatabase(productDaoDB);
+                    return true;
+                });
+            } catch (SQLException | DatabaseUnavailableException e) {
+                e.printStackTrace();
+            }
+            if (snapshotEnabled) {
+                CatalogSource.getInstance().exportSnapshot(snapshotPath);
+            }
+        }
+
+        // suppliers and categories are looked up for every product row, so fill their caches up front
+        try {
+            SupplierDaoDB.getInstance().loadCache();
+            ProductCategoryDaoDB.getInstance().loadCache();
+        } catch (DatabaseUnavailableException e) {
+            // loaded on first use once the database is back
+            e.printStackTrace();
+        }
+
+        if (snapshotEnabled) {
+            CatalogSource.getInstance().start(snapshotPath, config.getLong("catalog_probe_interval_ms", 2000));
+        }
+
+        //limited mentor slots
+        Inventory inventory = Inventory.getInstance();
+        boolean catalogSeeded = seeded;
+        inventory.addLoadListener(() -> {
+            for (Product product : productDataStore.getAll()) {
+                // a restart keeps the stock already sold, only new products get the initial slots
+                if ("Teleport".equals(product.getName()) && (catalogSeeded || !inventory.isTracked(product.getId()))) {
+                    inventory.setStock(product.getId(), 3);
+                }
+            }
+        });
+        // without a database carts stay closed until the sync thread manages to load the stock
+        inventory.start(config.getLong("inventory_sync_interval_seconds", 10));
+
+        if (config.getBoolean("flash_sale_enabled", false)) {
+            FlashSale.getInstance().start(FlashSale.configuredProductNames());
+        }
+    }
+
+    /**
+     * Stops the startup when a migration fails, as the code expects the new schema.
+     * Without a database the shop still starts and serves the catalog snapshot.
+     */
+    private void migrateSchema(Path migrationDirectory) {
+        SchemaMigrator migrator = new SchemaMigrator("src/main/resources/connection.properties", migrationDirectory);
+        try {
+            List<Integer> applied = migrator.migrate();
+            if (!applied.isEmpty()) {
+                System.out.println("Applied schema migrations " + applied);
+            }
+        } catch (SQLException e) {
+            RuntimeException failure = migrator.transactionFailed(e);
+            if (!(failure instanceof DatabaseUnavailableException)) {
+                throw failure;
+            }
+            e.printStackTrace();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void seedDatabase(ProductDaoDB productDataStore) {
         ProductCategoryDao productCategoryDataStore = ProductCategoryDaoDB.getInstance();
         SupplierDao supplierDataStore = SupplierDaoDB.getInstance();
-        productDataStore.removeAllProducts();
-        productCategoryDataStore.removeAll();
-        supplierDataStore.removeAll();
 
         //setting up a new supplier
         Supplier mentorBence = new Supplier("Bence", "Mouse-less computer user");
@@ -47,23 +146,25 @@ public class Initializer implements ServletContextListener {
         productCategoryDataStore.add(entertainment);
 
 
-        //setting up products and printing it
-        addWithAllSupplier(supplierDataStore,productDataStore,"Combat Training", 1, "USD", "Private mentoring (consultancy)", personalProgramming);
-        addWithAllSupplier(supplierDataStore,productDataStore,"Summon Code Elemental", 3, "USD", "Mentor joins a students' team for one hour", personalProgramming);
-        addWithAllSupplier(supplierDataStore,productDataStore,"Circle of Sorcery", 20, "USD", "60 min workshop by a mentor(s) of the chosen topic (mentors will organize it within a months)", personalProgramming);
-        addWithAllSupplier(supplierDataStore,productDataStore,"Tome of knowledge", 40, "USD", "Extra material for the current topic (mentors will do it within 2 weeks)", material);
-        addWithAllSupplier(supplierDataStore,productDataStore,"Transform mentor", 50, "USD", "Mentor should dress up funny (or pirates) for the specified day (which is at least 2 days ahead)", entertainment);
-        addWithAllSupplier(supplierDataStore,productDataStore,"Teleport", 300, "USD", "Teleport the mentor to an off-school location a specified day (which is at least 2 weeks ahead) )", entertainment);
-        productDataStore.add(new Product("Guitar Hero", 10, "USD", "Bence will accompany you on guitar in a performace for 45 minutes", specialSkills, mentorBence));
-        productDataStore.add(new Product("Departure from the Cave", 10, "USD", "Zozi will enlighten you in a random philosophical topic", specialSkills, mentorZozi));
-        productDataStore.add(new Product("Ring the Bell", 10, "USD", "Rudi will be your personal kettle bell trainer for an hour", specialSkills, mentorRudi));
-        productDataStore.add(new Product("By Design", 10, "USD", "Dani will brag about one of his creations for an hour", specialSkills, mentorDani));
-        productDataStore.add(new Product("Pass the Ball", 10, "USD", "Laci will play any kind of ball game with you for an hour, mocking your miserable skills", specialSkills, mentorLaci));
+        //setting up products, inserted in one batch with the commit
+        List<Product> products = new ArrayList<>();
+        addWithAllSupplier(supplierDataStore,products,"Combat Training", 1, "USD", "Private mentoring (consultancy)", personalProgramming);
+        addWithAllSupplier(supplierDataStore,products,"Summon Code Elemental", 3, "USD", "Mentor joins a students' team for one hour", personalProgramming);
+        addWithAllSupplier(supplierDataStore,products,"Circle of Sorcery", 20, "USD", "60 min workshop by a mentor(s) of the chosen topic (mentors will organize it within a months)", personalProgramming);
+        addWithAllSupplier(supplierDataStore,products,"Tome of knowledge", 40, "USD", "Extra material for the current topic (mentors will do it within 2 weeks)", material);
+        addWithAllSupplier(supplierDataStore,products,"Transform mentor", 50, "USD", "Mentor should dress up funny (or pirates) for the specified day (which is at least 2 days ahead)", entertainment);
+        addWithAllSupplier(supplierDataStore,products,"Teleport", 300, "USD", "Teleport the mentor to an off-school location a specified day (which is at least 2 weeks ahead) )", entertainment);
+        products.add(new Product("Guitar Hero", 10, "USD", "Bence will accompany you on guitar in a performace for 45 minutes", specialSkills, mentorBence));
+        products.add(new Product("Departure from the Cave", 10, "USD", "Zozi will enlighten you in a random philosophical topic", specialSkills, mentorZozi));
+        products.add(new Product("Ring the Bell", 10, "USD", "Rudi will be your personal kettle bell trainer for an hour", specialSkills, mentorRudi));
+        products.add(new Product("By Design", 10, "USD", "Dani will brag about one of his creations for an hour", specialSkills, mentorDani));
+        products.add(new Product("Pass the Ball", 10, "USD", "Laci will play any kind of ball game with you for an hour, mocking your miserable skills", specialSkills, mentorLaci));
+        productDataStore.addAllDeferred(products);
     }
 
-    private void addWithAllSupplier(SupplierDao supplierDataStore, ProductDao productDataStore, String name, int price, String currency, String desc, ProductCategory category) {
+    private void addWithAllSupplier(SupplierDao supplierDataStore, List<Product> products, String name, int price, String currency, String desc, ProductCategory category) {
         for (Supplier supplier : supplierDataStore.getAll()){
-            productDataStore.add( new Product(name, price, currency, desc, category, supplier));
+            products.add( new Product(name, price, currency, desc, category, supplier));
         }
     }
 }
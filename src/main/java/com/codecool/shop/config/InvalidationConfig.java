@@ -0,0 +1,66 @@
+package com.codecool.shop.config;
+
+import com.codecool.shop.cache.CacheInvalidationBus;
+import com.codecool.shop.cache.InvalidationEvent;
+import com.codecool.shop.cache.InvalidationTransport;
+import com.codecool.shop.cache.LoopbackInvalidationTransport;
+import com.codecool.shop.dao.implementation.PostgresInvalidationTransport;
+import com.codecool.shop.dao.implementation.ProductCategoryDaoDB;
+import com.codecool.shop.dao.implementation.SupplierDaoDB;
+import com.codecool.shop.service.CatalogSource;
+import com.codecool.shop.service.FlashSale;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Connects the catalog caches of this node to the other nodes. The transport is
+ * chosen with cache_invalidation_transport: postgres, loopback or none.
+ */
+@WebListener
+public class InvalidationConfig implements ServletContextListener {
+
+    private InvalidationTransport transport;
+
+    public void contextInitialized(ServletContextEvent sce) {
+        ServerConfig config = ServerConfig.getInstance();
+        String transportName = config.getString("cache_invalidation_transport", "postgres");
+        if ("postgres".equals(transportName)) {
+            transport = new PostgresInvalidationTransport("src/main/resources/connection.properties",
+                    config.getInt("cache_invalidation_wait_ms", 1000),
+                    config.getLong("cache_invalidation_reconnect_ms", 2000));
+        } else if ("loopback".equals(transportName)) {
+            transport = new LoopbackInvalidationTransport();
+        } else {
+            return;
+        }
+
+        CacheInvalidationBus bus = CacheInvalidationBus.getInstance();
+        bus.addListener(InvalidationConfig::apply);
+        bus.start(transport);
+    }
+
+    public void contextDestroyed(ServletContextEvent sce) {
+        CacheInvalidationBus.getInstance().stop();
+        if (transport != null) {
+            transport.close();
+        }
+    }
+
+    private static void apply(InvalidationEvent event) {
+        CatalogSource.getInstance().serveDatabase();
+        switch (event.getEntityType()) {
+            case SUPPLIER:
+                SupplierDaoDB.getInstance().applyInvalidation(event);
+                break;
+            case CATEGORY:
+                ProductCategoryDaoDB.getInstance().applyInvalidation(event);
+                break;
+            case PRODUCT:
+                FlashSale.getInstance().applyInvalidation(event);
+                break;
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.codecool.shop.config;
+
+import com.codecool.shop.model.User;
+import com.codecool.shop.service.Inventory;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+/**
+ * Returns the reservations of expired sessions and flushes stock on shutdown.
+ */
+@WebListener
+public class InventoryConfig implements ServletContextListener, HttpSessionListener {
+
+    public void contextInitialized(ServletContextEvent sce) {
+    }
+
+    public void contextDestroyed(ServletContextEvent sce) {
+        Inventory.getInstance().stop();
+    }
+
+    public void sessionCreated(HttpSessionEvent se) {
+    }
+
+    public void sessionDestroyed(HttpSessionEvent se) {
+        Object user = se.getSession().getAttribute("UserObject");
+        if (user instanceof User) {
+            Inventory.getInstance().releaseAll(((User) user).shoppingCart.getReservationId());
+        }
+    }
+
+}
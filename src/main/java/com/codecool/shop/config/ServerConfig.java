@@ -0,0 +1,57 @@
+package com.codecool.shop.config;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Tuning options of the running shop, read from server.properties. Missing or
+ * malformed keys fall back to the given defaults.
+ */
+public class ServerConfig {
+
+    private static ServerConfig instance = null;
+
+    private final Properties properties = new Properties();
+
+    public static synchronized ServerConfig getInstance() {
+        if (instance == null) {
+            instance = new ServerConfig("src/main/resources/server.properties");
+        }
+        return instance;
+    }
+
+    public ServerConfig(String configPath) {
+        try (FileInputStream in = new FileInputStream(configPath)) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            e.printStackTrace(System.out);
+        }
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = System.getProperty(key, properties.getProperty(key));
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    public int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(getString(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(getString(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(getString(key, String.valueOf(defaultValue)));
+    }
+}
@@ -1,5 +1,7 @@
 package com.codecool.shop.config;
 
+import com.codecool.shop.service.AssetPipeline;
+
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
@@ -9,6 +11,8 @@ import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateresolver.ITemplateResolver;
 import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
 
+import java.io.IOException;
+
 /**
  * Thymeleaf configuration.
  */
@@ -16,6 +20,14 @@ import org.thymeleaf.templateresolver.ServletContextTemplateResolver;
 public class ThymeleafConfig implements ServletContextListener {
 
     public void contextInitialized(ServletContextEvent sce) {
+        if (ServerConfig.getInstance().getBoolean("asset_pipeline_enabled", true)) {
+            try {
+                AssetPipeline.getInstance().build(sce.getServletContext());
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                e.printStackTrace();
+            }
+        }
         TemplateEngine engine = templateEngine(sce.getServletContext());
         TemplateEngineUtil.storeTemplateEngine(sce.getServletContext(), engine);
     }
@@ -26,6 +38,8 @@ public class ThymeleafConfig implements ServletContextListener {
     private TemplateEngine templateEngine(ServletContext servletContext) {
         TemplateEngine engine = new TemplateEngine();
         engine.setTemplateResolver(templateResolver(servletContext));
+        engine.setLinkBuilder(new AssetLinkBuilder());
+        engine.addDialect(new ImageDialect());
         return engine;
     }
 
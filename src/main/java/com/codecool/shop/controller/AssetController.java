@@ -0,0 +1,50 @@
+package com.codecool.shop.controller;
+
+import com.codecool.shop.filter.CompressionFilter;
+import com.codecool.shop.service.AssetPipeline;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves fingerprinted assets. Their names change whenever their content does, so
+ * browsers may keep them for a year without asking again.
+ */
+@WebServlet(urlPatterns = {"/assets/*"}, asyncSupported = true)
+public class AssetController extends HttpServlet {
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String path = req.getServletPath() + (req.getPathInfo() == null ? "" : req.getPathInfo());
+        AssetPipeline.Asset asset = AssetPipeline.getInstance().find(path);
+        if (asset == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        resp.setHeader("Cache-Control", IMMUTABLE);
+        resp.setHeader("ETag", asset.getEtag());
+        if (asset.getGzipped() != null) {
+            resp.setHeader("Vary", "Accept-Encoding");
+        }
+        if (asset.getEtag().equals(req.getHeader("If-None-Match"))) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] body = asset.getContent();
+        if (asset.getGzipped() != null && CompressionFilter.acceptsGzip(req.getHeader("Accept-Encoding"))) {
+            body = asset.getGzipped();
+            resp.setHeader("Content-Encoding", "gzip");
+        }
+        resp.setContentType(asset.getContentType());
+        resp.setContentLength(body.length);
+        resp.getOutputStream().write(body);
+    }
+}
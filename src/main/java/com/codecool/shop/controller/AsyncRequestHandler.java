@@ -0,0 +1,481 @@
+package com.codecool.shop.controller;
+
+import com.codecool.shop.config.ServerConfig;
+import com.codecool.shop.dao.DatabaseUnavailableException;
+import com.codecool.shop.dao.implementation.ReplicaRouter;
+import com.codecool.shop.filter.ReplicaSessionFilter;
+import com.codecool.shop.service.CatalogSource;
+import com.codecool.shop.service.DatabaseExecutor;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs a servlet handler on the {@link DatabaseExecutor} instead of the container
+ * thread. Answers 503 with Retry-After when the executor is full, the database is
+ * unavailable or the handler does not finish within the async timeout. A
+ * {@link DeferredHandler} may leave the response open after it returned and
+ * finish it from a future, without keeping the executor thread. A handler that
+ * fails after part of the body was sent has its connection aborted, so the client
+ * does not take the cut-off body for a complete one.
+ */
+class AsyncRequestHandler {
+
+    interface Handler {
+        void handle(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException;
+    }
+
+    /**
+     * Returns null when the response is done, otherwise a future that completes
+     * once the handler has finished writing it.
+     */
+    interface DeferredHandler {
+        CompletableFuture<?> handle(HttpServletRequest request, HttpServletResponse response)
+                throws ServletException, IOException;
+    }
+
+    static void dispatch(HttpServletRequest request, HttpServletResponse response, Handler handler)
+            throws ServletException, IOException {
+        dispatch(request, response, ServerConfig.getInstance().getLong("async_timeout_ms", 10000), handler);
+    }
+
+    static void dispatch(HttpServletRequest request, HttpServletResponse response, long timeoutMillis, Handler handler)
+            throws ServletException, IOException {
+        dispatchDeferred(request, response, timeoutMillis, (asyncRequest, asyncResponse) -> {
+            handler.handle(asyncRequest, asyncResponse);
+            return null;
+        });
+    }
+
+    static void dispatchDeferred(HttpServletRequest request, HttpServletResponse response, DeferredHandler handler)
+            throws ServletException, IOException {
+        dispatchDeferred(request, response, ServerConfig.getInstance().getLong("async_timeout_ms", 10000), handler);
+    }
+
+    static void dispatchDeferred(HttpServletRequest request, HttpServletResponse response, long timeoutMillis,
+                                 DeferredHandler handler) throws ServletException, IOException {
+        if (!request.isAsyncSupported()) {
+            CompletableFuture<?> pending = handler.handle(request, response);
+            if (pending != null) {
+                try {
+                    pending.join();
+                } catch (CompletionException e) {
+                    throw new ServletException(e.getCause());
+                }
+            }
+            return;
+        }
+
+        ServerConfig config = ServerConfig.getInstance();
+        int retryAfterSeconds = config.getInt("retry_after_seconds", 2);
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(timeoutMillis);
+        HttpServletRequest asyncRequest = (HttpServletRequest) asyncContext.getRequest();
+        GuardedResponse guarded = new GuardedResponse((HttpServletResponse) asyncContext.getResponse());
+
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (guarded.finish()) {
+                    sendUnavailable((HttpServletResponse) event.getSuppliedResponse(), retryAfterSeconds);
+                    asyncContext.complete();
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                if (guarded.finish()) {
+                    asyncContext.complete();
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        try {
+            Supplier<String> sessionId = ReplicaSessionFilter.sessionId(request);
+            DatabaseExecutor.getInstance().execute(() -> {
+                if (!guarded.attach()) {
+                    // timed out while queued
+                    return;
+                }
+                ReplicaRouter.bindSession(sessionId);
+                CompletableFuture<?> pending = null;
+                Throwable failure = null;
+                try {
+                    pending = handler.handle(asyncRequest, guarded);
+                } catch (DatabaseUnavailableException e) {
+                    CatalogSource.getInstance().enterDegradedMode();
+                    if (guarded.isCommitted()) {
+                        failure = e;
+                    } else {
+                        try {
+                            sendUnavailable(guarded, retryAfterSeconds);
+                        } catch (IOException ioException) {
+                            ioException.printStackTrace();
+                        }
+                    }
+                } catch (Exception e) {
+                    failure = e;
+                } finally {
+                    ReplicaRouter.unbindSession();
+                    guarded.detach();
+                    if (pending == null) {
+                        complete(guarded, asyncContext, failure);
+                    } else {
+                        pending.whenComplete((result, pendingFailure) -> complete(guarded, asyncContext, pendingFailure));
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (guarded.finish()) {
+                sendUnavailable(response, retryAfterSeconds);
+                asyncContext.complete();
+            }
+        }
+    }
+
+    private static void complete(GuardedResponse guarded, AsyncContext asyncContext, Throwable failure) {
+        if (failure != null) {
+            if (!guarded.isFinished()) {
+                failure.printStackTrace();
+            }
+            if (!guarded.isCommitted()) {
+                guarded.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            } else if (!guarded.isFinished()) {
+                abort(asyncContext.getResponse(), failure);
+            }
+        }
+        if (guarded.finish()) {
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * Breaks off the connection of a response that was partly sent. The servlet API
+     * has no way to do that, so it uses Jetty's; on other containers the response
+     * ends normally.
+     */
+    static void abort(ServletResponse response, Throwable failure) {
+        while (response instanceof ServletResponseWrapper) {
+            response = ((ServletResponseWrapper) response).getResponse();
+        }
+        try {
+            Object channel = response.getClass().getMethod("getHttpChannel").invoke(response);
+            channel.getClass().getMethod("abort", Throwable.class).invoke(channel, failure);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Could not abort the response: " + e);
+        }
+    }
+
+    static void sendUnavailable(HttpServletResponse response, int retryAfterSeconds) throws IOException {
+        if (response.isCommitted()) {
+            return;
+        }
+        response.reset();
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        response.setContentType("text/plain");
+        response.getWriter().print("The shop is busy, please try again shortly.");
+    }
+
+    /**
+     * Response handed to the handler. Once the request is finished, by the handler or
+     * by a timeout, header changes are dropped and writes throw an IOException: the
+     * container recycles the response after completion, so a late handler would
+     * otherwise write into another request, and it must not think its body was sent.
+     * Writes and finishing hold the same lock, so no write is cut in half.
+     */
+    static class GuardedResponse extends HttpServletResponseWrapper {
+        private final Object lock = new Object();
+        private boolean finished;
+        private Thread worker;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        GuardedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        /**
+         * Marks the response finished and interrupts a handler still running.
+         * Returns false if it was finished already.
+         */
+        boolean finish() {
+            synchronized (lock) {
+                if (finished) {
+                    return false;
+                }
+                finished = true;
+                if (worker != null && worker != Thread.currentThread()) {
+                    worker.interrupt();
+                }
+                return true;
+            }
+        }
+
+        boolean isFinished() {
+            synchronized (lock) {
+                return finished;
+            }
+        }
+
+        boolean attach() {
+            synchronized (lock) {
+                if (finished) {
+                    return false;
+                }
+                worker = Thread.currentThread();
+                return true;
+            }
+        }
+
+        void detach() {
+            synchronized (lock) {
+                worker = null;
+            }
+            // an interrupt aimed at this request must not hit the next task of the thread
+            Thread.interrupted();
+        }
+
+        private interface Action {
+            void run() throws IOException;
+        }
+
+        private void guard(Action action) throws IOException {
+            synchronized (lock) {
+                if (finished) {
+                    throw new IOException("The response is already finished");
+                }
+                action.run();
+            }
+        }
+
+        private void guardUnchecked(Runnable action) {
+            synchronized (lock) {
+                if (!finished) {
+                    action.run();
+                }
+            }
+        }
+
+        @Override
+        public boolean isCommitted() {
+            synchronized (lock) {
+                return finished || super.isCommitted();
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            synchronized (lock) {
+                if (outputStream == null) {
+                    outputStream = new GuardedOutputStream(finished ? null : super.getOutputStream());
+                }
+                return outputStream;
+            }
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            synchronized (lock) {
+                if (writer == null) {
+                    writer = new PrintWriter(new GuardedWriter(finished ? null : super.getWriter()));
+                }
+                return writer;
+            }
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            guardUnchecked(() -> super.setStatus(sc));
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            guard(() -> super.sendError(sc, msg));
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            guard(() -> super.sendError(sc));
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            guard(() -> super.sendRedirect(location));
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            guardUnchecked(() -> super.setHeader(name, value));
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            guardUnchecked(() -> super.addHeader(name, value));
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            guardUnchecked(() -> super.setIntHeader(name, value));
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            guardUnchecked(() -> super.addIntHeader(name, value));
+        }
+
+        @Override
+        public void setDateHeader(String name, long date) {
+            guardUnchecked(() -> super.setDateHeader(name, date));
+        }
+
+        @Override
+        public void addDateHeader(String name, long date) {
+            guardUnchecked(() -> super.addDateHeader(name, date));
+        }
+
+        @Override
+        public void addCookie(Cookie cookie) {
+            guardUnchecked(() -> super.addCookie(cookie));
+        }
+
+        @Override
+        public void setContentType(String type) {
+            guardUnchecked(() -> super.setContentType(type));
+        }
+
+        @Override
+        public void setCharacterEncoding(String charset) {
+            guardUnchecked(() -> super.setCharacterEncoding(charset));
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            guardUnchecked(() -> super.setContentLength(len));
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            guardUnchecked(() -> super.setContentLengthLong(len));
+        }
+
+        @Override
+        public void setLocale(Locale locale) {
+            guardUnchecked(() -> super.setLocale(locale));
+        }
+
+        @Override
+        public void setBufferSize(int size) {
+            guardUnchecked(() -> super.setBufferSize(size));
+        }
+
+        @Override
+        public void reset() {
+            guardUnchecked(super::reset);
+        }
+
+        @Override
+        public void resetBuffer() {
+            guardUnchecked(super::resetBuffer);
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            guard(super::flushBuffer);
+        }
+
+        private class GuardedOutputStream extends ServletOutputStream {
+            private final ServletOutputStream out;
+
+            private GuardedOutputStream(ServletOutputStream out) {
+                this.out = out;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                guard(() -> out.write(b));
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                guard(() -> out.write(b, off, len));
+            }
+
+            @Override
+            public void flush() throws IOException {
+                guard(() -> out.flush());
+            }
+
+            @Override
+            public void close() throws IOException {
+                guard(() -> out.close());
+            }
+
+            @Override
+            public boolean isReady() {
+                return out == null || out.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                if (out != null) {
+                    out.setWriteListener(writeListener);
+                }
+            }
+        }
+
+        private class GuardedWriter extends Writer {
+            private final Writer out;
+
+            private GuardedWriter(Writer out) {
+                this.out = out;
+            }
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                guard(() -> out.write(cbuf, off, len));
+            }
+
+            @Override
+            public void write(String str, int off, int len) throws IOException {
+                guard(() -> out.write(str, off, len));
+            }
+
+            @Override
+            public void flush() throws IOException {
+                guard(() -> out.flush());
+            }
+
+            @Override
+            public void close() throws IOException {
+                guard(() -> out.close());
+            }
+        }
+    }
+}
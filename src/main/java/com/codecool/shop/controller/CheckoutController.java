@@ -21,6 +21,9 @@ public class CheckoutController extends HttpServlet {
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (ReadOnlyMode.reject(response)) {
+            return;
+        }
         TemplateEngine engine = TemplateEngineUtil.getTemplateEngine(request.getServletContext());
         WebContext context = new WebContext(request, response, request.getServletContext());
         engine.process("checkout/checkout.html", context, response.getWriter());
@@ -28,6 +31,9 @@ public class CheckoutController extends HttpServlet {
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (ReadOnlyMode.reject(response)) {
+            return;
+        }
         String name = request.getParameter("inputName");
         String email = request.getParameter("inputEmail");
         Integer phone = Integer.parseInt(request.getParameter("inputPhoneNumber"));
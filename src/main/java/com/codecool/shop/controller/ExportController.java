@@ -0,0 +1,120 @@
+package com.codecool.shop.controller;
+
+import com.codecool.shop.config.ServerConfig;
+import com.codecool.shop.dao.implementation.ProductDaoDB;
+import com.codecool.shop.filter.CompressionFilter;
+import com.codecool.shop.util.CsvWriter;
+import com.codecool.shop.util.MetricsRegistry;
+import org.json.JSONObject;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Product feed for partners: /export?format=jsonl (default) or /export?format=csv.
+ * Rows are written as they come from the database cursor, with chunked transfer and
+ * gzip when the client accepts it. The columns match what the catalog importer reads.
+ */
+@WebServlet(urlPatterns = {"/export"}, asyncSupported = true)
+public class ExportController extends HttpServlet {
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private final AtomicLong exports = new AtomicLong();
+    private final AtomicLong activeExports = new AtomicLong();
+    private final AtomicLong rowsExported = new AtomicLong();
+
+    @Override
+    public void init() throws ServletException {
+        MetricsRegistry.getInstance().register("export", this::getMetrics);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String format = req.getParameter("format") == null ? "jsonl" : req.getParameter("format");
+        if (!"jsonl".equals(format) && !"csv".equals(format)) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "format must be jsonl or csv");
+            return;
+        }
+        long timeoutMillis = ServerConfig.getInstance().getLong("export_timeout_ms", 600000);
+        AsyncRequestHandler.dispatch(req, resp, timeoutMillis, (request, response) -> export(request, response, format));
+    }
+
+    private void export(HttpServletRequest req, HttpServletResponse resp, String format) throws IOException {
+        boolean csv = "csv".equals(format);
+        boolean gzip = CompressionFilter.acceptsGzip(req.getHeader("Accept-Encoding"));
+
+        resp.setContentType(csv ? "text/csv" : "application/x-ndjson");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Content-Disposition", "attachment; filename=\"catalog." + format + "\"");
+        resp.setHeader("Vary", "Accept-Encoding");
+        if (gzip) {
+            resp.setHeader("Content-Encoding", "gzip");
+        }
+        resp.setBufferSize(BUFFER_SIZE);
+
+        exports.incrementAndGet();
+        activeExports.incrementAndGet();
+        OutputStream out = resp.getOutputStream();
+        if (gzip) {
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        CsvWriter csvWriter = new CsvWriter(writer);
+        try {
+            if (csv) {
+                csvWriter.writeRecord("id", "name", "description", "price", "currency", "category", "supplier");
+            }
+            int fetchSize = ServerConfig.getInstance().getInt("export_fetch_size", 500);
+            ProductDaoDB.getInstance().streamCatalog(fetchSize, row -> {
+                if (csv) {
+                    csvWriter.writeRecord(row.get("id"), row.get("name"), row.get("description"),
+                            row.get("default_price"), row.get("default_currency"), row.get("category"), row.get("supplier"));
+                } else {
+                    JSONObject product = new JSONObject();
+                    product.put("id", row.get("id"));
+                    product.put("name", row.get("name"));
+                    product.put("description", row.get("description"));
+                    product.put("price", row.get("default_price"));
+                    product.put("currency", row.get("default_currency"));
+                    product.put("category", row.get("category"));
+                    product.put("supplier", row.get("supplier"));
+                    writer.write(product.toString());
+                    writer.write('\n');
+                }
+                rowsExported.incrementAndGet();
+            });
+            writer.close();
+        } catch (SQLException e) {
+            // once rows were sent the connection is aborted, so a feed cut short does not look complete
+            if (!resp.isCommitted()) {
+                resp.reset();
+            }
+            throw new IOException("Catalog export failed", e);
+        } finally {
+            activeExports.decrementAndGet();
+        }
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("requests", exports.get());
+        metrics.put("active", activeExports.get());
+        metrics.put("rows", rowsExported.get());
+        return metrics;
+    }
+}
@@ -0,0 +1,61 @@
+package com.codecool.shop.controller;
+
+import com.codecool.shop.service.ImageVariants;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves /images/{width}/{path}, the image at /static/{path} or /assets/{path}
+ * scaled down to one of the configured widths.
+ */
+@WebServlet(urlPatterns = {"/images/*"}, asyncSupported = true)
+public class ImageController extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String pathInfo = req.getPathInfo();
+        int slash = pathInfo == null ? -1 : pathInfo.indexOf('/', 1);
+        if (slash < 0) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        ImageVariants variants = ImageVariants.getInstance();
+        int width;
+        try {
+            width = Integer.parseInt(pathInfo.substring(1, slash));
+        } catch (NumberFormatException e) {
+            width = -1;
+        }
+        ImageVariants.Source source = variants.isVariantWidth(width)
+                ? variants.findSource(getServletContext(), pathInfo.substring(slash + 1)) : null;
+        if (source == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String etag = "\"" + Integer.toHexString(source.getVersion().hashCode()) + "-" + width + "\"";
+        resp.setHeader("Cache-Control", source.isFingerprinted()
+                ? "public, max-age=31536000, immutable" : "public, max-age=86400");
+        resp.setHeader("ETag", etag);
+        if (etag.equals(req.getHeader("If-None-Match"))) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] body;
+        try {
+            body = variants.variant(source.getVersion(), source.getContent(), width, source.isJpeg());
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        resp.setContentType(source.isJpeg() ? "image/jpeg" : "image/png");
+        resp.setContentLength(body.length);
+        resp.getOutputStream().write(body);
+    }
+}
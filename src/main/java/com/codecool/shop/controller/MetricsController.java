@@ -0,0 +1,28 @@
+package com.codecool.shop.controller;
+
+import com.codecool.shop.util.MetricsRegistry;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+@WebServlet(urlPatterns = {"/metrics"})
+public class MetricsController extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("text/plain");
+        resp.setCharacterEncoding("UTF-8");
+        PrintWriter writer = resp.getWriter();
+        for (Map.Entry<String, Number> metric : MetricsRegistry.getInstance().snapshot().entrySet()) {
+            writer.print(metric.getKey());
+            writer.print(' ');
+            writer.println(metric.getValue());
+        }
+    }
+}
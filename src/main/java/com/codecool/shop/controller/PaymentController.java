@@ -2,7 +2,9 @@ package com.codecool.shop.controller;
 
 import com.codecool.shop.config.TemplateEngineUtil;
 import com.codecool.shop.model.Order;
+import com.codecool.shop.model.ShoppingCart;
 import com.codecool.shop.model.User;
+import com.codecool.shop.service.Inventory;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.WebContext;
 import javax.servlet.ServletException;
@@ -18,6 +20,9 @@ public class PaymentController extends HttpServlet {
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (ReadOnlyMode.reject(resp)) {
+            return;
+        }
         TemplateEngine engine = TemplateEngineUtil.getTemplateEngine(req.getServletContext());
         WebContext context = new WebContext(req, resp, req.getServletContext());
         engine.process("payment/payment.html", context, resp.getWriter());
@@ -25,14 +30,22 @@ public class PaymentController extends HttpServlet {
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (ReadOnlyMode.reject(resp)) {
+            return;
+        }
         HttpSession session = req.getSession();
         User user = (User)session.getAttribute("UserObject");
+        ShoppingCart shoppingCart = user.shoppingCart;
+        if (!Inventory.getInstance().commit(shoppingCart.getReservationId(), shoppingCart.getQuantitiesById())) {
+            resp.sendError(HttpServletResponse.SC_CONFLICT, "Some items in the cart are sold out.");
+            return;
+        }
         for (Order order: user.orders) {
             if(order.getStatus() == Order.Status.IN_PROGRESS) {
                 order.pay();
                 break;
             }
         }
-        user.shoppingCart.clear();
+        shoppingCart.clear();
     }
 }
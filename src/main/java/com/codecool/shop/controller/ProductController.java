@@ -1,19 +1,27 @@
 package com.codecool.shop.controller;
 
 import com.codecool.shop.dao.implementation.*;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.codecool.shop.model.User;
 import com.codecool.shop.model.ShoppingCart;
 
+import com.codecool.shop.dao.DatabaseUnavailableException;
 import com.codecool.shop.dao.ProductCategoryDao;
 import com.codecool.shop.dao.ProductDao;
 import com.codecool.shop.dao.SupplierDao;
+import com.codecool.shop.config.ServerConfig;
 import com.codecool.shop.config.TemplateEngineUtil;
 import com.codecool.shop.model.*;
 
 import com.codecool.shop.model.ProductCategory;
 import com.codecool.shop.model.Supplier;
+import com.codecool.shop.service.CatalogSource;
+import com.codecool.shop.service.CurrencyConverter;
+import com.codecool.shop.service.DatabaseExecutor;
+import com.codecool.shop.service.FlashSale;
+import com.codecool.shop.service.ProductQuery;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.WebContext;
 
@@ -24,64 +32,118 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
-@WebServlet(urlPatterns = {"/"})
+@WebServlet(urlPatterns = {"/"}, asyncSupported = true)
 public class ProductController extends HttpServlet {
 
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        AsyncRequestHandler.dispatch(req, resp, this::renderProducts);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        AsyncRequestHandler.dispatchDeferred(request, response, this::addToCart);
+    }
+
+    private void renderProducts(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        try {
+            renderCatalog(req, resp);
+        } catch (DatabaseUnavailableException e) {
+            // the listing only needs the catalog, which the last snapshot still has
+            if (resp.isCommitted() || !CatalogSource.getInstance().enterDegradedMode()) {
+                throw e;
+            }
+            resp.resetBuffer();
+            renderCatalog(req, resp);
+        }
+    }
+
+    private void renderCatalog(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 
         TemplateEngine engine = TemplateEngineUtil.getTemplateEngine(req.getServletContext());
         WebContext context = new WebContext(req, resp, req.getServletContext());
 
 
-        SupplierDao supplierDataStore = SupplierDaoDB.getInstance();
-        ProductDao productDataStore = ProductDaoDB.getInstance();
-        ProductCategoryDao productCategoryDataStore = ProductCategoryDaoDB.getInstance();
+        SupplierDao supplierDataStore = CoalescingSupplierDao.getInstance();
+        ProductDao productDataStore = CoalescingProductDao.getInstance();
+        ProductCategoryDao productCategoryDataStore = CoalescingProductCategoryDao.getInstance();
 
+        // independent reads run in parallel, so the page waits for the slowest one only
+        DatabaseExecutor queries = DatabaseExecutor.getQueryInstance();
+        boolean ajax = req.getParameter("ajax") != null;
+        CompletableFuture<List<Product>> allProducts = queries.supply(productDataStore::getAll);
+        CompletableFuture<List<ProductCategory>> categoryList = ajax ? null : queries.supply(productCategoryDataStore::getAll);
+        CompletableFuture<List<Supplier>> supplierList = ajax ? null : queries.supply(supplierDataStore::getAll);
 
         ProductCategory category;
         Supplier supplier;
 
         String selectedCategory = req.getParameter("select_category");
+        category = null;
         if (selectedCategory != null &&
                 !selectedCategory.equals(productCategoryDataStore.getDefaultCategory().getName())) {
-            category = productCategoryDataStore.find(
-                    productCategoryDataStore.findIdByName(
-                            req.getParameter("select_category")));
-        } else {
+            category = productCategoryDataStore.findByName(selectedCategory);
+        }
+        if (category == null) {
             category = productCategoryDataStore.getDefaultCategory();
         }
 
         String selectedSupplier = req.getParameter("select_supplier");
+        supplier = null;
         if (selectedSupplier != null &&
                 !selectedSupplier.equals(supplierDataStore.getDefaultSupplier().getName())) {
-            supplier = supplierDataStore.find(
-                    supplierDataStore.findIdByName(
-                            req.getParameter("select_supplier")));
-        } else {
+            supplier = supplierDataStore.findByName(selectedSupplier);
+        }
+        if (supplier == null) {
             supplier = supplierDataStore.getDefaultSupplier();
         }
 
         List<Product> products = supplierDataStore.filterProducts(
                 productCategoryDataStore.filterProducts(
-                        productDataStore.getAll(), category), supplier);
+                        DatabaseExecutor.join(allProducts), category), supplier);
+
+        RateTable rates = CurrencyConverter.getInstance().getRates();
+        int currencyIndex = getDisplayCurrency(req);
+
+        String sort = req.getParameter("sort");
+        String limit = req.getParameter("limit");
+        if ((sort != null && !sort.isEmpty()) || (limit != null && !limit.isEmpty())) {
+            try {
+                ProductQuery query = new ProductQuery().orderBy(sort).withRates(rates);
+                if (limit != null && !limit.isEmpty()) {
+                    query.limit(Integer.parseInt(limit));
+                }
+                products = query.execute(products);
+            } catch (IllegalArgumentException e) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
+            }
+        }
 
 
-        if (req.getParameter("ajax") != null) {
-            JSONObject json = new JSONObject();
-            int numberOfProducts = 0;
+        if (ajax) {
+            // an array keeps the sort order, object keys would not
+            JSONArray json = new JSONArray();
             for (Product product : products) {
+                String priceAmount = product.getPriceAmount(rates, currencyIndex);
+                // a currency missing from the rate table leaves the price in the product's own
+                String currencyCode = product.getPriceCurrency(rates, currencyIndex);
 
-                json.put("Product" + numberOfProducts, new JSONObject()
+                json.put(new JSONObject()
                         .put("title", product.getName())
                         .put("description", product.getDescription())
                         .put("id", product.getId())
-                        .put("price", product.getPrice())
+                        .put("price", priceAmount + " " + currencyCode)
+                        .put("priceAmount", priceAmount)
+                        .put("currency", currencyCode)
                         .put("supplier", product.getSupplier().getName()));
-                numberOfProducts++;
             }
 
             resp.setContentType("application/json");
@@ -90,35 +152,86 @@ public class ProductController extends HttpServlet {
         } else {
             ShoppingCart shoppingCart = getShoppingCart(req);
 
-            context.setVariable("total_price", shoppingCart.sumCart());
+            context.setVariable("total_price", sumCart(shoppingCart, currencyIndex));
             context.setVariable("number_of_items", shoppingCart.getNumberOfItems());
-            context.setVariable("category_list", productCategoryDataStore.getAll());
-            context.setVariable("supplier_list", supplierDataStore.getAll());
+            context.setVariable("category_list", DatabaseExecutor.join(categoryList));
+            context.setVariable("supplier_list", DatabaseExecutor.join(supplierList));
             context.setVariable("category", category);
             context.setVariable("supplier", supplier);
+            context.setVariable("sort", sort != null ? sort : "");
             context.setVariable("products", products);
+            context.setVariable("rates", rates);
+            context.setVariable("currency_index", currencyIndex);
+            context.setVariable("currency_list", rates.getCurrencies());
+            context.setVariable("currency", currencyIndex >= 0 ? Money.currency(currencyIndex).getCurrencyCode() : "");
+            context.setVariable("read_only", CatalogSource.getInstance().isDegraded());
 
             engine.process("product/index.html", context, resp.getWriter());
         }
     }
 
-    @Override
-    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+    private CompletableFuture<?> addToCart(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (ReadOnlyMode.reject(response)) {
+            return null;
+        }
 
         String productId = request.getParameter("id");
         ShoppingCart shoppingCart = getShoppingCart(request);
+        int currencyIndex = getDisplayCurrency(request);
+        int retryAfterSeconds = ServerConfig.getInstance().getInt("retry_after_seconds", 2);
+
+        int id = Integer.parseInt(productId);
+        CompletableFuture<Boolean> added;
+        try {
+            added = FlashSale.getInstance().addToCart(shoppingCart, id);
+        } catch (RejectedExecutionException e) {
+            AsyncRequestHandler.sendUnavailable(response, retryAfterSeconds);
+            return null;
+        }
 
-        shoppingCart.addItem(Integer.parseInt(productId));
-
-        float priceSum = shoppingCart.sumCart();
-        int numberOfItems = shoppingCart.getNumberOfItems();
+        // a queued flash-sale purchase answers from the thread that runs it
+        return added.handle((result, failure) -> {
+            try {
+                if (failure instanceof RejectedExecutionException) {
+                    AsyncRequestHandler.sendUnavailable(response, retryAfterSeconds);
+                    return null;
+                } else if (failure != null) {
+                    throw new CompletionException(failure);
+                }
+                JSONObject json = new JSONObject();
+                json.put("priceSum", sumCart(shoppingCart, currencyIndex));
+                json.put("numberOfItems", shoppingCart.getNumberOfItems());
+                json.put("added", result);
+
+                response.setContentType("application/json");
+                response.getWriter().print(json);
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
 
-        JSONObject json = new JSONObject();
-        json.put("priceSum", priceSum);
-        json.put("numberOfItems", numberOfItems);
+    private int getDisplayCurrency(HttpServletRequest request) {
+        HttpSession session = request.getSession();
+        String selectedCurrency = request.getParameter("currency");
+        if (selectedCurrency != null) {
+            session.setAttribute("currency", selectedCurrency);
+        } else {
+            selectedCurrency = (String) session.getAttribute("currency");
+        }
+        return CurrencyConverter.getInstance().findCurrencyIndex(selectedCurrency);
+    }
 
-        response.setContentType("application/json");
-        response.getWriter().print(json);
+    private String sumCart(ShoppingCart shoppingCart, int currencyIndex) {
+        if (currencyIndex < 0 || shoppingCart.getNumberOfItems() == 0) {
+            return shoppingCart.sumCart();
+        }
+        try {
+            return CurrencyConverter.getInstance().total(shoppingCart.getTotals(), currencyIndex).format();
+        } catch (IllegalArgumentException e) {
+            return shoppingCart.sumCart();
+        }
     }
 
     private ShoppingCart getShoppingCart(HttpServletRequest request) {
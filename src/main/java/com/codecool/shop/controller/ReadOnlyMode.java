@@ -0,0 +1,30 @@
+package com.codecool.shop.controller;
+
+import com.codecool.shop.config.ServerConfig;
+import com.codecool.shop.service.CatalogSource;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Turns away cart and checkout requests while the catalog is served read-only from
+ * the last snapshot because the database is unavailable.
+ */
+class ReadOnlyMode {
+
+    static final String MESSAGE = "Carts and checkout are temporarily unavailable. You can keep browsing the quests.";
+
+    /**
+     * Answers 503 with Retry-After and returns true in read-only mode.
+     */
+    static boolean reject(HttpServletResponse response) throws IOException {
+        if (!CatalogSource.getInstance().isDegraded()) {
+            return false;
+        }
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", String.valueOf(ServerConfig.getInstance().getInt("read_only_retry_after_seconds", 30)));
+        response.setContentType("text/plain");
+        response.getWriter().print(MESSAGE);
+        return true;
+    }
+}
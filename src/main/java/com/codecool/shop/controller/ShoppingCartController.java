@@ -1,9 +1,11 @@
 package com.codecool.shop.controller;
 
 import org.json.JSONObject;
+import com.codecool.shop.config.ServerConfig;
 import com.codecool.shop.config.TemplateEngineUtil;
 import com.codecool.shop.model.ShoppingCart;
 import com.codecool.shop.model.User;
+import com.codecool.shop.service.FlashSale;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.WebContext;
 
@@ -14,11 +16,27 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
-@WebServlet (urlPatterns = "/shoppingcart")
+@WebServlet (urlPatterns = "/shoppingcart", asyncSupported = true)
 public class ShoppingCartController extends HttpServlet{
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        AsyncRequestHandler.dispatch(request, response, this::renderShoppingCart);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        AsyncRequestHandler.dispatchDeferred(request, response, this::changeQuantity);
+    }
+
+    private void renderShoppingCart(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (ReadOnlyMode.reject(response)) {
+            return;
+        }
         HttpSession session = request.getSession();
         if (session.isNew()) {
             session.setAttribute("UserObject", new User());
@@ -37,8 +55,10 @@ public class ShoppingCartController extends HttpServlet{
         engine.process("shoppingcart/shoppingcart.html", context, response.getWriter());
     }
 
-    @Override
-    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+    private CompletableFuture<?> changeQuantity(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (ReadOnlyMode.reject(response)) {
+            return null;
+        }
         HttpSession session = request.getSession();
         if (session.isNew()) {
             session.setAttribute("UserObject", new User());
@@ -49,18 +69,41 @@ public class ShoppingCartController extends HttpServlet{
 
         int id = Integer.parseInt(request.getParameter("id"));
 
+        int retryAfterSeconds = ServerConfig.getInstance().getInt("retry_after_seconds", 2);
+        CompletableFuture<Boolean> added;
         if (request.getParameter("process").equals("increase")) {
-            shoppingCart.addItem(id);
+            try {
+                added = FlashSale.getInstance().addToCart(shoppingCart, id);
+            } catch (RejectedExecutionException e) {
+                AsyncRequestHandler.sendUnavailable(response, retryAfterSeconds);
+                return null;
+            }
         } else {
             shoppingCart.removeItem(id);
+            added = CompletableFuture.completedFuture(false);
         }
 
-        JSONObject json = new JSONObject();
-        json.put("numOfItems", shoppingCart.getNumberOfItemById(id));
-        json.put("total", shoppingCart.sumCart());
-
-        response.setContentType("application/json");
-        response.getWriter().print(json);
+        // a queued flash-sale purchase answers from the thread that runs it
+        return added.handle((result, failure) -> {
+            try {
+                if (failure instanceof RejectedExecutionException) {
+                    AsyncRequestHandler.sendUnavailable(response, retryAfterSeconds);
+                    return null;
+                } else if (failure != null) {
+                    throw new CompletionException(failure);
+                }
+                JSONObject json = new JSONObject();
+                json.put("added", result);
+                json.put("numOfItems", shoppingCart.getNumberOfItemById(id));
+                json.put("total", shoppingCart.sumCart());
+
+                response.setContentType("application/json");
+                response.getWriter().print(json);
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
 }
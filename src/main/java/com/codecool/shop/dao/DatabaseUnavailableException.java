@@ -0,0 +1,16 @@
+package com.codecool.shop.dao;
+
+/**
+ * Thrown instead of waiting when the database cannot be reached or its circuit
+ * breaker is open, so callers can answer 503 right away.
+ */
+public class DatabaseUnavailableException extends RuntimeException {
+
+    public DatabaseUnavailableException(String message) {
+        super(message);
+    }
+
+    public DatabaseUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
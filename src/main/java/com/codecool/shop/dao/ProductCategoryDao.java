@@ -12,6 +12,7 @@ public interface ProductCategoryDao {
     void remove(int id);
     void removeAll();
     Integer findIdByName(String name);
+    ProductCategory findByName(String name);
     ProductCategory getDefaultCategory();
     List<Product> filterProducts(List<Product> products, ProductCategory category);
 
@@ -0,0 +1,19 @@
+package com.codecool.shop.dao;
+
+import java.util.Map;
+
+public interface StockDao {
+
+    Map<Integer, Integer> getAll();
+    /**
+     * Adds the given changes to the stored quantities, creating missing rows.
+     */
+    void addAll(Map<Integer, Integer> changes);
+    /**
+     * Takes the sold quantities off the stored ones at once. Returns false and
+     * changes nothing if a product has fewer units left or no row.
+     */
+    boolean sell(Map<Integer, Integer> quantities);
+    void removeAll();
+
+}
@@ -12,6 +12,7 @@ public interface SupplierDao {
     void remove(int id);
     void removeAll();
     Integer findIdByName(String name);
+    Supplier findByName(String name);
     Supplier getDefaultSupplier();
     List<Product> filterProducts(List<Product> products, Supplier supplier);
 
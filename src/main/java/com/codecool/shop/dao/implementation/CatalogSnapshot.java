@@ -0,0 +1,273 @@
+package com.codecool.shop.dao.implementation;
+
+import com.codecool.shop.model.Money;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.Supplier;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The whole catalog in one binary file: suppliers and categories with the ids of
+ * their products, then the products. The file ends with a CRC32 of everything
+ * before it and records the database fingerprint it was exported from, so a
+ * damaged or outdated snapshot is never loaded.
+ */
+public final class CatalogSnapshot {
+
+    private static final int MAGIC = 0x43435348;
+    private static final int FORMAT_VERSION = 1;
+
+    private final String fingerprint;
+    private final long createdAtMillis;
+    private final List<Supplier> suppliers;
+    private final List<ProductCategory> categories;
+    private final List<Product> products;
+
+    public CatalogSnapshot(String fingerprint, long createdAtMillis, List<Supplier> suppliers,
+                           List<ProductCategory> categories, List<Product> products) {
+        this.fingerprint = fingerprint;
+        this.createdAtMillis = createdAtMillis;
+        this.suppliers = Collections.unmodifiableList(new ArrayList<>(suppliers));
+        this.categories = Collections.unmodifiableList(new ArrayList<>(categories));
+        this.products = Collections.unmodifiableList(new ArrayList<>(products));
+    }
+
+    /**
+     * Returns the snapshot at the given path if it is intact and was exported from a
+     * database with the given fingerprint, null otherwise.
+     */
+    public static CatalogSnapshot readIfFresh(Path path, String fingerprint) {
+        if (fingerprint == null || !Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            CatalogSnapshot snapshot = read(path);
+            return fingerprint.equals(snapshot.getFingerprint()) ? snapshot : null;
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    public static CatalogSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 16 || size > Integer.MAX_VALUE) {
+                throw new IOException("Catalog snapshot has an invalid size: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer body = buffer.duplicate();
+            body.limit((int) size - 8);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if (crc.getValue() != buffer.getLong((int) size - 8)) {
+                throw new IOException("Catalog snapshot checksum mismatch: " + path);
+            }
+            buffer.limit((int) size - 8);
+            return parse(buffer);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Catalog snapshot is malformed: " + path, e);
+        }
+    }
+
+    private static CatalogSnapshot parse(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            throw new IOException("Not a catalog snapshot of format " + FORMAT_VERSION);
+        }
+        long createdAtMillis = buffer.getLong();
+        String fingerprint = readString(buffer);
+
+        int supplierCount = buffer.getInt();
+        List<Supplier> suppliers = new ArrayList<>(supplierCount);
+        Map<Integer, Supplier> suppliersById = new HashMap<>();
+        for (int i = 0; i < supplierCount; i++) {
+            int id = buffer.getInt();
+            Supplier supplier = new Supplier(readString(buffer), readString(buffer));
+            supplier.setId(id);
+            supplier.setProductIds(readIds(buffer));
+            suppliers.add(supplier);
+            suppliersById.put(id, supplier);
+        }
+
+        int categoryCount = buffer.getInt();
+        List<ProductCategory> categories = new ArrayList<>(categoryCount);
+        Map<Integer, ProductCategory> categoriesById = new HashMap<>();
+        for (int i = 0; i < categoryCount; i++) {
+            int id = buffer.getInt();
+            String name = readString(buffer);
+            String department = readString(buffer);
+            String description = readString(buffer);
+            ProductCategory category = new ProductCategory(name, department, description);
+            category.setId(id);
+            category.setProductIds(readIds(buffer));
+            categories.add(category);
+            categoriesById.put(id, category);
+        }
+
+        int productCount = buffer.getInt();
+        List<Product> products = new ArrayList<>(productCount);
+        for (int i = 0; i < productCount; i++) {
+            int id = buffer.getInt();
+            String name = readString(buffer);
+            String description = readString(buffer);
+            long minorUnits = buffer.getLong();
+            String currencyCode = readString(buffer);
+            ProductCategory category = categoriesById.get(buffer.getInt());
+            Supplier supplier = suppliersById.get(buffer.getInt());
+            if (category == null || supplier == null) {
+                throw new IOException("Catalog snapshot refers to a missing category or supplier");
+            }
+            Product product = new Product(name, 0, currencyCode, description, category, supplier);
+            product.setUnitPrice(Money.ofMinor(minorUnits, Money.currencyIndex(currencyCode)));
+            product.setId(id);
+            products.add(product);
+        }
+        return new CatalogSnapshot(fingerprint, createdAtMillis, suppliers, categories, products);
+    }
+
+    /**
+     * Writes the snapshot next to the target and moves it in place, so readers never
+     * see a half-written file.
+     */
+    public void write(Path path) throws IOException {
+        Map<Integer, List<Integer>> idsBySupplier = new HashMap<>();
+        Map<Integer, List<Integer>> idsByCategory = new HashMap<>();
+        for (Product product : products) {
+            idsBySupplier.computeIfAbsent(product.getSupplier().getId(), id -> new ArrayList<>()).add(product.getId());
+            idsByCategory.computeIfAbsent(product.getProductCategory().getId(), id -> new ArrayList<>()).add(product.getId());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(createdAtMillis);
+        writeString(out, fingerprint);
+
+        out.writeInt(suppliers.size());
+        for (Supplier supplier : suppliers) {
+            out.writeInt(supplier.getId());
+            writeString(out, supplier.getName());
+            writeString(out, supplier.getDescription());
+            writeIds(out, idsBySupplier.get(supplier.getId()));
+        }
+
+        out.writeInt(categories.size());
+        for (ProductCategory category : categories) {
+            out.writeInt(category.getId());
+            writeString(out, category.getName());
+            writeString(out, category.getDepartment());
+            writeString(out, category.getDescription());
+            writeIds(out, idsByCategory.get(category.getId()));
+        }
+
+        out.writeInt(products.size());
+        for (Product product : products) {
+            out.writeInt(product.getId());
+            writeString(out, product.getName());
+            writeString(out, product.getDescription());
+            out.writeLong(product.getUnitPrice().getMinorUnits());
+            writeString(out, product.getUnitPrice().getCurrency().getCurrencyCode());
+            out.writeInt(product.getProductCategory().getId());
+            out.writeInt(product.getSupplier().getId());
+        }
+        out.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "catalog", ".tmp");
+        try {
+            Files.write(temp, bytes.toByteArray());
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] encoded = new byte[length];
+        buffer.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    private static void writeIds(DataOutputStream out, List<Integer> ids) throws IOException {
+        if (ids == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(ids.size());
+        for (int id : ids) {
+            out.writeInt(id);
+        }
+    }
+
+    private static int[] readIds(ByteBuffer buffer) {
+        int[] ids = new int[buffer.getInt()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = buffer.getInt();
+        }
+        return ids;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    public List<Supplier> getSuppliers() {
+        return suppliers;
+    }
+
+    public List<ProductCategory> getCategories() {
+        return categories;
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+}
@@ -0,0 +1,110 @@
+package com.codecool.shop.dao.implementation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops connection attempts to a data source after failureThreshold failures in a
+ * row, counting failed connects and statements cancelled by their timeout. While
+ * open every attempt fails at once; after openMillis a single trial is let through
+ * (half open), which closes the breaker on success or opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialRunning;
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong halfOpened = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this(failureThreshold, openMillis, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openMillis * 1_000_000L;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns false when the attempt must fail fast; a true answer has to be followed
+     * by {@link #recordConnected()}, {@link #recordSuccess()} or {@link #recordFailure()}.
+     */
+    public synchronized boolean allow() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            halfOpened.incrementAndGet();
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && !trialRunning) {
+            trialRunning = true;
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialRunning = false;
+        if (state != State.CLOSED) {
+            state = State.CLOSED;
+            closed.incrementAndGet();
+        }
+    }
+
+    /**
+     * A connection was opened. Ends a trial like a success, but in the closed state
+     * keeps the count of failures in a row, so statements that keep timing out on
+     * fresh connections still open the breaker.
+     */
+    public synchronized void recordConnected() {
+        if (state != State.CLOSED) {
+            recordSuccess();
+        }
+    }
+
+    public synchronized void recordFailure() {
+        failures.incrementAndGet();
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+            opened.incrementAndGet();
+        }
+        trialRunning = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("state", (long) state.ordinal());
+        metrics.put("transitions.opened", opened.get());
+        metrics.put("transitions.halfOpened", halfOpened.get());
+        metrics.put("transitions.closed", closed.get());
+        metrics.put("rejected", rejected.get());
+        metrics.put("failures", failures.get());
+        return metrics;
+    }
+}
@@ -0,0 +1,110 @@
+package com.codecool.shop.dao.implementation;
+
+import com.codecool.shop.dao.ProductCategoryDao;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.util.MetricsRegistry;
+import com.codecool.shop.util.SingleFlight;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Merges concurrent identical reads into a single call of the wrapped dao and
+ * shares the result with every waiting caller. Writes go straight through.
+ */
+public class CoalescingProductCategoryDao implements ProductCategoryDao {
+
+    private static CoalescingProductCategoryDao instance = null;
+
+    private volatile ProductCategoryDao productCategoryDao;
+    private final SingleFlight<Integer, ProductCategory> finds = new SingleFlight<>();
+    private final SingleFlight<String, Optional<Integer>> idsByName = new SingleFlight<>();
+    private final SingleFlight<String, List<ProductCategory>> getAlls = new SingleFlight<>();
+
+    public static synchronized CoalescingProductCategoryDao getInstance() {
+        if (instance == null) {
+            instance = new CoalescingProductCategoryDao(ProductCategoryDaoDB.getInstance());
+            MetricsRegistry.getInstance().register("dao.category", instance::getMetrics);
+        }
+        return instance;
+    }
+
+    public CoalescingProductCategoryDao(ProductCategoryDao productCategoryDao) {
+        this.productCategoryDao = productCategoryDao;
+    }
+
+    @Override
+    public void add(ProductCategory category) {
+        productCategoryDao.add(category);
+    }
+
+    @Override
+    public ProductCategory find(int id) {
+        return finds.get(id, productCategoryDao::find);
+    }
+
+    @Override
+    public void remove(int id) {
+        productCategoryDao.remove(id);
+    }
+
+    @Override
+    public void removeAll() {
+        productCategoryDao.removeAll();
+    }
+
+    @Override
+    public Integer findIdByName(String name) {
+        if (name == null) {
+            return productCategoryDao.findIdByName(null);
+        }
+        return idsByName.get(name, key -> Optional.ofNullable(productCategoryDao.findIdByName(key))).orElse(null);
+    }
+
+    @Override
+    public ProductCategory findByName(String name) {
+        return productCategoryDao.findByName(name);
+    }
+
+    @Override
+    public ProductCategory getDefaultCategory() {
+        return productCategoryDao.getDefaultCategory();
+    }
+
+    @Override
+    public List<Product> filterProducts(List<Product> products, ProductCategory category) {
+        return productCategoryDao.filterProducts(products, category);
+    }
+
+    @Override
+    public List<ProductCategory> getAll() {
+        return getAlls.get("all", key -> Collections.unmodifiableList(productCategoryDao.getAll()));
+    }
+
+    public ProductCategoryDao getDelegate() {
+        return productCategoryDao;
+    }
+
+    /**
+     * Switches the dao that serves reads and writes, e.g. between a catalog snapshot
+     * and the database.
+     */
+    public void setDelegate(ProductCategoryDao productCategoryDao) {
+        this.productCategoryDao = productCategoryDao;
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("find.loads", finds.getLoads());
+        metrics.put("find.collapsed", finds.getCollapsed());
+        metrics.put("findIdByName.loads", idsByName.getLoads());
+        metrics.put("findIdByName.collapsed", idsByName.getCollapsed());
+        metrics.put("getAll.loads", getAlls.getLoads());
+        metrics.put("getAll.collapsed", getAlls.getCollapsed());
+        return metrics;
+    }
+}
@@ -0,0 +1,111 @@
+package com.codecool.shop.dao.implementation;
+
+import com.codecool.shop.dao.ProductDao;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.Supplier;
+import com.codecool.shop.util.MetricsRegistry;
+import com.codecool.shop.util.SingleFlight;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges concurrent identical reads into a single call of the wrapped dao and
+ * shares the result with every waiting caller. Each caller gets its own copies of
+ * the products, so one changing a product does not change it for the others.
+ * Writes go straight through.
+ */
+public class CoalescingProductDao implements ProductDao {
+
+    private static CoalescingProductDao instance = null;
+
+    private volatile ProductDao productDao;
+    private final SingleFlight<Integer, Product> finds = new SingleFlight<>();
+    private final SingleFlight<String, List<Product>> getAlls = new SingleFlight<>();
+    private final SingleFlight<Integer, List<Product>> bySupplier = new SingleFlight<>();
+    private final SingleFlight<Integer, List<Product>> byCategory = new SingleFlight<>();
+
+    public static synchronized CoalescingProductDao getInstance() {
+        if (instance == null) {
+            instance = new CoalescingProductDao(ProductDaoDB.getInstance());
+            MetricsRegistry.getInstance().register("dao.product", instance::getMetrics);
+        }
+        return instance;
+    }
+
+    public CoalescingProductDao(ProductDao productDao) {
+        this.productDao = productDao;
+    }
+
+    @Override
+    public void add(Product product) {
+        productDao.add(product);
+    }
+
+    @Override
+    public Product find(int id) {
+        Product product = finds.get(id, productDao::find);
+        return product == null ? null : product.copy();
+    }
+
+    @Override
+    public void remove(int id) {
+        productDao.remove(id);
+    }
+
+    @Override
+    public void removeAllProducts() {
+        productDao.removeAllProducts();
+    }
+
+    @Override
+    public List<Product> getAll() {
+        return copies(getAlls.get("all", key -> productDao.getAll()));
+    }
+
+    @Override
+    public List<Product> getBy(Supplier supplier) {
+        return copies(bySupplier.get(supplier.getId(), id -> productDao.getBy(supplier)));
+    }
+
+    @Override
+    public List<Product> getBy(ProductCategory productCategory) {
+        return copies(byCategory.get(productCategory.getId(), id -> productDao.getBy(productCategory)));
+    }
+
+    private static List<Product> copies(List<Product> products) {
+        List<Product> copies = new ArrayList<>(products.size());
+        for (Product product : products) {
+            copies.add(product.copy());
+        }
+        return copies;
+    }
+
+    public ProductDao getDelegate() {
+        return productDao;
+    }
+
+    /**
+     * Switches the dao that serves reads and writes, e.g. between a catalog snapshot
+     * and the database.
+     */
+    public void setDelegate(ProductDao productDao) {
+        this.productDao = productDao;
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("find.loads", finds.getLoads());
+        metrics.put("find.collapsed", finds.getCollapsed());
+        metrics.put("getAll.loads", getAlls.getLoads());
+        metrics.put("getAll.collapsed", getAlls.getCollapsed());
+        metrics.put("getBySupplier.loads", bySupplier.getLoads());
+        metrics.put("getBySupplier.collapsed", bySupplier.getCollapsed());
+        metrics.put("getByCategory.loads", byCategory.getLoads());
+        metrics.put("getByCategory.collapsed", byCategory.getCollapsed());
+        return metrics;
+    }
+}
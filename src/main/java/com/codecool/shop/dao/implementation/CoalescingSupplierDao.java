@@ -0,0 +1,110 @@
+package com.codecool.shop.dao.implementation;
+
+import com.codecool.shop.dao.SupplierDao;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.Supplier;
+import com.codecool.shop.util.MetricsRegistry;
+import com.codecool.shop.util.SingleFlight;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Merges concurrent identical reads into a single call of the wrapped dao and
+ * shares the result with every waiting caller. Writes go straight through.
+ */
+public class CoalescingSupplierDao implements SupplierDao {
+
+    private static CoalescingSupplierDao instance = null;
+
+    private volatile SupplierDao supplierDao;
+    private final SingleFlight<Integer, Supplier> finds = new SingleFlight<>();
+    private final SingleFlight<String, Optional<Integer>> idsByName = new SingleFlight<>();
+    private final SingleFlight<String, List<Supplier>> getAlls = new SingleFlight<>();
+
+    public static synchronized CoalescingSupplierDao getInstance() {
+        if (instance == null) {
+            instance = new CoalescingSupplierDao(SupplierDaoDB.getInstance());
+            MetricsRegistry.getInstance().register("dao.supplier", instance::getMetrics);
+        }
+        return instance;
+    }
+
+    public CoalescingSupplierDao(SupplierDao supplierDao) {
+        this.supplierDao = supplierDao;
+    }
+
+    @Override
+    public void add(Supplier supplier) {
+        supplierDao.add(supplier);
+    }
+
+    @Override
+    public Supplier find(int id) {
+        return finds.get(id, supplierDao::find);
+    }
+
+    @Override
+    public void remove(int id) {
+        supplierDao.remove(id);
+    }
+
+    @Override
+    public void removeAll() {
+        supplierDao.removeAll();
+    }
+
+    @Override
+    public Integer findIdByName(String name) {
+        if (name == null) {
+            return supplierDao.findIdByName(null);
+        }
+        return idsByName.get(name, key -> Optional.ofNullable(supplierDao.findIdByName(key))).orElse(null);
+    }
+
+    @Override
+    public Supplier findByName(String name) {
+        return supplierDao.findByName(name);
+    }
+
+    @Override
+    public Supplier getDefaultSupplier() {
+        return supplierDao.getDefaultSupplier();
+    }
+
+    @Override
+    public List<Product> filterProducts(List<Product> products, Supplier supplier) {
+        return supplierDao.filterProducts(products, supplier);
+    }
+
+    @Override
+    public List<Supplier> getAll() {
+        return getAlls.get("all", key -> Collections.unmodifiableList(supplierDao.getAll()));
+    }
+
+    public SupplierDao getDelegate() {
+        return supplierDao;
+    }
+
+    /**
+     * Switches the dao that serves reads and writes, e.g. between a catalog snapshot
+     * and the database.
+     */
+    public void setDelegate(SupplierDao supplierDao) {
+        this.supplierDao = supplierDao;
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("find.loads", finds.getLoads());
+        metrics.put("find.collapsed", finds.getCollapsed());
+        metrics.put("findIdByName.loads", idsByName.getLoads());
+        metrics.put("findIdByName.collapsed", idsByName.getCollapsed());
+        metrics.put("getAll.loads", getAlls.getLoads());
+        metrics.put("getAll.collapsed", getAlls.getCollapsed());
+        return metrics;
+    }
+}
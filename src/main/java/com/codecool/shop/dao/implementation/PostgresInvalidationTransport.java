@@ -0,0 +1,128 @@
+package com.codecool.shop.dao.implementation;
+
+import com.codecool.shop.cache.InvalidationEvent;
+import com.codecool.shop.cache.InvalidationTransport;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Sends invalidation events with NOTIFY and receives them on a dedicated LISTEN
+ * connection. The listener thread blocks on the socket until a notification
+ * arrives, so events are applied right after the publishing transaction commits
+ * without polling. Notifications sent while the connection was down are lost,
+ * so every cache is reset after a reconnect.
+ */
+public class PostgresInvalidationTransport implements InvalidationTransport, Queryhandler {
+
+    private static final String CHANNEL = "catalog_invalidation";
+
+    private final String connectionConfigPath;
+    private final int waitMillis;
+    private final long reconnectDelayMillis;
+    private final List<Consumer<InvalidationEvent>> subscribers = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    public PostgresInvalidationTransport(String connectionConfigPath, int waitMillis, long reconnectDelayMillis) {
+        this.connectionConfigPath = connectionConfigPath;
+        this.waitMillis = waitMillis;
+        this.reconnectDelayMillis = reconnectDelayMillis;
+    }
+
+    @Override
+    public void publish(InvalidationEvent event) {
+        List<Object> parameters = new ArrayList<>();
+        parameters.add(CHANNEL);
+        parameters.add(event.encode());
+        executeWriteQuery("SELECT pg_notify(?, ?);", parameters);
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<InvalidationEvent> subscriber) {
+        subscribers.add(subscriber);
+        if (listenerThread == null) {
+            running = true;
+            listenerThread = new Thread(this::listen, "postgres-invalidation");
+            listenerThread.setDaemon(true);
+            listenerThread.start();
+        }
+    }
+
+    @Override
+    public void unsubscribe(Consumer<InvalidationEvent> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+            listenerThread = null;
+        }
+        subscribers.clear();
+    }
+
+    private void listen() {
+        boolean reconnecting = false;
+        while (running) {
+            try (Connection connection = getConnection()) {
+                if (connection == null) {
+                    throw new SQLException("No connection for " + CHANNEL);
+                }
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL + ";");
+                }
+                if (reconnecting) {
+                    for (InvalidationEvent.EntityType entityType : InvalidationEvent.EntityType.values()) {
+                        deliver(InvalidationEvent.reset(entityType));
+                    }
+                }
+                reconnecting = true;
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(waitMillis);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        try {
+                            deliver(InvalidationEvent.decode(notification.getParameter()));
+                        } catch (IllegalArgumentException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                e.printStackTrace();
+                try {
+                    Thread.sleep(reconnectDelayMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void deliver(InvalidationEvent event) {
+        for (Consumer<InvalidationEvent> subscriber : subscribers) {
+            subscriber.accept(event);
+        }
+    }
+
+    @Override
+    public String getConnectionConfigPath() {
+        return connectionConfigPath;
+    }
+}
@@ -1,18 +1,28 @@
 package com.codecool.shop.dao.implementation;
 
+import com.codecool.shop.cache.CacheInvalidationBus;
+import com.codecool.shop.cache.InvalidationEvent;
 import com.codecool.shop.dao.ProductCategoryDao;
 import com.codecool.shop.model.Product;
 import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.service.ProductQuery;
 import jdk.nashorn.internal.runtime.regexp.joni.exception.ValueException;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ProductCategoryDaoDB implements ProductCategoryDao, Queryhandler {
 
-    private String connectionConfigPath = "src/main/resources/connection.properties";
+    private static final String DEFAULT_CONNECTION_CONFIG_PATH = "src/main/resources/connection.properties";
+    private String connectionConfigPath = DEFAULT_CONNECTION_CONFIG_PATH;
     private static ProductCategoryDaoDB instance = null;
+    private static final Map<String, ProductCategoryDaoDB> instancesByConfigPath = new ConcurrentHashMap<>();
+
+    private volatile CacheView cacheView = new CacheView(false);
 
     public static ProductCategoryDaoDB getInstance() {
         if (instance == null) {
@@ -21,6 +31,13 @@ public class ProductCategoryDaoDB implements ProductCategoryDao, Queryhandler {
         return instance;
     }
 
+    public static ProductCategoryDaoDB getInstance(String connectionConfigPath) {
+        if (DEFAULT_CONNECTION_CONFIG_PATH.equals(connectionConfigPath)) {
+            return getInstance();
+        }
+        return instancesByConfigPath.computeIfAbsent(connectionConfigPath, ProductCategoryDaoDB::new);
+    }
+
     public ProductCategoryDaoDB(String connectionConfigPath) {
         this.connectionConfigPath = connectionConfigPath;
     }
@@ -41,31 +58,41 @@ public class ProductCategoryDaoDB implements ProductCategoryDao, Queryhandler {
         }
 
         String query = "INSERT INTO product_categories (name, description, department) VALUES" +
-                " (?, ?, ?);";
+                " (?, ?, ?) RETURNING id;";
         List<Object> parameters = new ArrayList<>();
         parameters.add(category.getName());
         parameters.add(category.getDescription());
         parameters.add(category.getDepartment());
-        executeDMLQuery(query, parameters);
+        List<Map<String, Object>> resultList = executeWriteQuery(query, parameters);
+        if (resultList.size() == 1) {
+            category.setId(Integer.parseInt(resultList.get(0).get("id").toString()));
+            afterCommit(() -> {
+                cache(category);
+                CacheInvalidationBus.getInstance().publish(InvalidationEvent.EntityType.CATEGORY, category.getId());
+            });
+        }
     }
 
     @Override
     public ProductCategory find(int id) {
+        CacheView view = loadedCache();
+        ProductCategory cached = view.byId.get(id);
+        if (cached != null || isAuthoritative(view)) {
+            return cached;
+        }
+        return fetch(id);
+    }
+
+    private ProductCategory fetch(int id) {
         String query = "SELECT * FROM product_categories WHERE id=?;";
         List<Object> parameters = new ArrayList<>();
         parameters.add(id);
-        List<Map<String, Object>> resultList = executeSelectQuery(query, parameters);
+        List<Map<String, Object>> resultList = executePrimarySelectQuery(query, parameters);
 
         ProductCategory result = null;
 
         if (resultList.size() == 1) {
-            for (Map<String, Object> resultSet : resultList) {
-                String name = resultSet.get("name").toString();
-                String description = resultSet.get("description").toString();
-                String department = resultSet.get("department").toString();
-                result = new ProductCategory(name, department, description);
-                result.setId(id);
-            }
+            result = cacheCommitted(buildCategory(resultList.get(0)));
         }
 
         return result;
@@ -77,37 +104,62 @@ public class ProductCategoryDaoDB implements ProductCategoryDao, Queryhandler {
         List<Object> parameters = new ArrayList<>();
         parameters.add(id);
 
-        String tempQuery = "SELECT * FROM product_categories WHERE id=?;";
-        List<Map<String, Object>> resultList = executeSelectQuery(tempQuery, parameters);
-        if (resultList.size() == 0){
-            throw new IllegalArgumentException("There is no product category with such id in the database.");
+        String tempQuery = "SELECT * FROM product_categories WHERE id=? FOR UPDATE;";
+        try {
+            inTransaction(() -> {
+                List<Map<String, Object>> resultList = executeSelectQuery(tempQuery, parameters);
+                if (resultList.size() == 0){
+                    throw new IllegalArgumentException("There is no product category with such id in the database.");
+                }
+                Integer removed = executeDMLQuery(query, parameters);
+                if (removed == null || removed == 0) {
+                    return null;
+                }
+                afterCommit(() -> {
+                    evict(id);
+                    CacheInvalidationBus.getInstance().publish(InvalidationEvent.EntityType.CATEGORY, id);
+                });
+                return null;
+            });
+        } catch (SQLException e) {
+            throw transactionFailed(e);
         }
-
-        Integer result = executeDMLQuery(query, parameters);
-
     }
 
     @Override
     public void removeAll() {
         String query = "DELETE from product_categories;";
         executeDMLQuery(query);
+        afterCommit(() -> {
+            cacheView = new CacheView(true);
+            CacheInvalidationBus.getInstance().publish(InvalidationEvent.EntityType.CATEGORY, InvalidationEvent.ALL);
+        });
     }
 
     @Override
     public Integer findIdByName(String name) {
-        String query = "SELECT * FROM product_categories WHERE name=?;";
+        ProductCategory category = findByName(name);
+        return category == null ? null : category.getId();
+    }
+
+    @Override
+    public ProductCategory findByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        CacheView view = loadedCache();
+        ProductCategory cached = view.byName.get(name);
+        if (cached != null || isAuthoritative(view)) {
+            return cached;
+        }
+        String query = "SELECT * FROM product_categories WHERE name=? ORDER BY id;";
         List<Object> parameters = new ArrayList<>();
         parameters.add(name);
-        List<Map<String, Object>> resultList = executeSelectQuery(query, parameters);
-
-        Integer result = null;
-        try {
-            result = Integer.parseInt(resultList.get(0).get("id").toString());
-        } catch (IndexOutOfBoundsException ex){
-            System.out.println(ex.getMessage());
-            ex.printStackTrace();
+        List<Map<String, Object>> resultList = executePrimarySelectQuery(query, parameters);
+        if (resultList.size() == 0) {
+            return null;
         }
-        return result;
+        return cacheCommitted(buildCategory(resultList.get(0)));
     }
 
     @Override
@@ -120,33 +172,151 @@ public class ProductCategoryDaoDB implements ProductCategoryDao, Queryhandler {
         if ((category.toString()).equals(getDefaultCategory().toString())) {
             return products;
         }
-        List<Product> temp = new ArrayList<>();
-        for (Product product : products) {
-            if (product.getProductCategory().toString().equals(category.toString())) {
-                temp.add(product);
-            }
-        }
-        return temp;
+        String wanted = category.toString();
+        return ProductQuery.filter(products, product -> product.getProductCategory().toString().equals(wanted));
     }
 
     @Override
     public List<ProductCategory> getAll() {
-        String query = "SELECT * FROM product_categories;";
-        List<Map<String, Object>> resultList = executeSelectQuery(query);
+        CacheView view = loadedCache();
+        if (!isAuthoritative(view)) {
+            List<ProductCategory> results = new ArrayList<>();
+            for (Map<String, Object> resultSet : executePrimarySelectQuery("SELECT * FROM product_categories ORDER BY id;", new ArrayList<>())) {
+                results.add(cacheCommitted(buildCategory(resultSet)));
+            }
+            return results;
+        }
+        List<ProductCategory> results = new ArrayList<>(view.byId.values());
+        results.sort(Comparator.comparingInt(ProductCategory::getId));
+        return results;
+    }
 
-        List<ProductCategory> results = new ArrayList<>();
+    /**
+     * Loads every category with one query the first time the cache is used. Once
+     * loaded the cache is the complete table and a miss means there is no such
+     * category. Until then, e.g. after a failed load, lookups go to the database.
+     */
+    public void loadCache() {
+        loadedCache();
+    }
 
-        for (Map<String, Object> resultSet : resultList) {
-            String id = resultSet.get("id").toString();
-            String name = resultSet.get("name").toString();
-            String description = resultSet.get("description").toString();
-            String department = resultSet.get("department").toString();
-            ProductCategory temp = new ProductCategory(name, department, description);
-            temp.setId(Integer.parseInt(id));
-            results.add(temp);
+    private CacheView loadedCache() {
+        CacheView view = cacheView;
+        if (view.loaded || UnitOfWork.current(connectionConfigPath) != null) {
+            // inside a transaction the table may hold rows that are not committed yet
+            return view;
         }
+        synchronized (this) {
+            view = cacheView;
+            if (view.loaded) {
+                return view;
+            }
+            String query = "SELECT * FROM product_categories ORDER BY id;";
+            CacheView loaded = new CacheView(true);
+            try {
+                // the primary, so the complete table is not missing a row a replica lags behind on
+                for (Map<String, Object> resultSet : withRetry(() -> executeQuery(getConnection(), query, new ArrayList<>()))) {
+                    loaded.put(buildCategory(resultSet));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return view;
+            }
+            cacheView = loaded;
+            return loaded;
+        }
+    }
 
-        return results;
+    /**
+     * Drops the cache by swapping in an empty one, so readers still holding the old
+     * one see every category until the next lookup loads the table again.
+     */
+    public synchronized void invalidateCache() {
+        cacheView = new CacheView(false);
+    }
+
+    /**
+     * Brings the cache in line with a change made by another node.
+     */
+    public void applyInvalidation(InvalidationEvent event) {
+        if (event.isAll()) {
+            invalidateCache();
+        } else {
+            evict(event.getId());
+            fetch(event.getId());
+        }
+    }
+
+    private ProductCategory buildCategory(Map<String, Object> resultSet) {
+        String id = resultSet.get("id").toString();
+        String name = resultSet.get("name").toString();
+        String description = resultSet.get("description").toString();
+        String department = resultSet.get("department").toString();
+        ProductCategory category = new ProductCategory(name, department, description);
+        category.setId(Integer.parseInt(id));
+        return category;
+    }
+
+    /**
+     * Inside a transaction a miss may be a row the transaction added itself, so it
+     * is looked up in the database.
+     */
+    private boolean isAuthoritative(CacheView view) {
+        return view.loaded && UnitOfWork.current(connectionConfigPath) == null;
+    }
+
+    /**
+     * Caches a row read from the database, unless it was read inside a transaction
+     * that may still roll back.
+     */
+    private ProductCategory cacheCommitted(ProductCategory category) {
+        return UnitOfWork.current(connectionConfigPath) == null ? cache(category) : category;
+    }
+
+    private synchronized ProductCategory cache(ProductCategory category) {
+        return cacheView.put(category);
+    }
+
+    private synchronized void evict(int id) {
+        cacheView.remove(id);
+    }
+
+    /**
+     * The cached categories by id and name. Invalidation replaces the whole view
+     * instead of clearing it; single rows are added and removed in place.
+     */
+    private static final class CacheView {
+        private final Map<Integer, ProductCategory> byId = new ConcurrentHashMap<>();
+        private final Map<String, ProductCategory> byName = new ConcurrentHashMap<>();
+        private final boolean loaded;
+
+        private CacheView(boolean loaded) {
+            this.loaded = loaded;
+        }
+
+        private ProductCategory put(ProductCategory category) {
+            ProductCategory canonical = byId.get(category.getId());
+            if (canonical != null) {
+                return canonical;
+            }
+            byId.put(category.getId(), category);
+            if (category.getName() != null) {
+                byName.putIfAbsent(category.getName(), category);
+            }
+            return category;
+        }
+
+        private void remove(int id) {
+            ProductCategory removed = byId.remove(id);
+            if (removed != null && removed.getName() != null) {
+                byName.remove(removed.getName(), removed);
+                for (ProductCategory other : byId.values()) {
+                    if (removed.getName().equals(other.getName())) {
+                        byName.putIfAbsent(other.getName(), other);
+                    }
+                }
+            }
+        }
     }
 
     @Override
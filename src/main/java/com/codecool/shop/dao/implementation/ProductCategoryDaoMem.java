@@ -4,13 +4,14 @@ package com.codecool.shop.dao.implementation;
 import com.codecool.shop.dao.ProductCategoryDao;
 import com.codecool.shop.model.Product;
 import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.service.ProductQuery;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class ProductCategoryDaoMem implements ProductCategoryDao {
 
-    private List<ProductCategory> data = new ArrayList<>();
+    private volatile List<ProductCategory> data = new ArrayList<>();
     private static ProductCategoryDaoMem instance = null;
     private ProductCategory defaultCategory;
 
@@ -48,6 +49,14 @@ public class ProductCategoryDaoMem implements ProductCategoryDao {
         data.clear();
     }
 
+    /**
+     * Replaces the contents with categories that already have their ids, e.g. from a
+     * catalog snapshot.
+     */
+    public void replaceAll(List<ProductCategory> categories) {
+        data = new ArrayList<>(categories);
+    }
+
     @Override
     public List<ProductCategory> getAll() {
         return data;
@@ -63,6 +72,16 @@ public class ProductCategoryDaoMem implements ProductCategoryDao {
         return null;
     }
 
+    @Override
+    public ProductCategory findByName(String name) {
+        for (ProductCategory category : data) {
+            if (category.getName().equals(name)) {
+                return category;
+            }
+        }
+        return null;
+    }
+
     @Override
     public ProductCategory getDefaultCategory() {
         return defaultCategory;
@@ -73,12 +92,6 @@ public class ProductCategoryDaoMem implements ProductCategoryDao {
         if (category.equals(defaultCategory)) {
             return products;
         }
-        List<Product> temp = new ArrayList<>();
-        for (Product product : products) {
-            if (product.getProductCategory().equals(category)) {
-                temp.add(product);
-            }
-        }
-        return temp;
+        return ProductQuery.filter(products, product -> product.getProductCategory().equals(category));
     }
 }
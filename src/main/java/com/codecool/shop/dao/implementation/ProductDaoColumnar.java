@@ -0,0 +1,378 @@
+package com.codecool.shop.dao.implementation;
+
+import com.codecool.shop.dao.ProductDao;
+import com.codecool.shop.model.Money;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.Supplier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory product store keeping every attribute in its own primitive column.
+ * Names, descriptions, categories and suppliers are dictionary encoded, so scans
+ * over prices, categories or suppliers walk plain int and long arrays, and
+ * Product objects are only built for the rows a query returns.
+ * <p>
+ * Writers are serialized; readers work on an immutable {@link Columns} view. An add
+ * appends behind the rows of the published view and publishes a longer one, a
+ * remove copies the columns, so a view never changes under a running scan.
+ */
+public class ProductDaoColumnar implements ProductDao {
+
+    private static ProductDaoColumnar instance = null;
+
+    private volatile Columns columns = new Columns(0, 16);
+    private int nextId = 1;
+
+    public ProductDaoColumnar() {
+    }
+
+    public static synchronized ProductDaoColumnar getInstance() {
+        if (instance == null) {
+            instance = new ProductDaoColumnar();
+        }
+        return instance;
+    }
+
+    @Override
+    public synchronized void add(Product product) {
+        product.setId(nextId);
+        append(product);
+        product.getProductCategory().addProduct(product);
+        product.getSupplier().addProduct(product);
+    }
+
+    private void append(Product product) {
+        Columns current = columns;
+        Columns next = current.size < current.ids.length ? current.withSize(current.size + 1) : current.grow();
+        next.set(current.size, product);
+        nextId = Math.max(nextId, product.getId() + 1);
+        columns = next;
+    }
+
+    @Override
+    public Product find(int id) {
+        Columns view = columns;
+        int row = view.rowOf(id);
+        return row < 0 ? null : view.materialize(row);
+    }
+
+    @Override
+    public synchronized void remove(int id) {
+        Columns current = columns;
+        int row = current.rowOf(id);
+        if (row >= 0) {
+            current.unlink(row);
+            columns = current.without(row);
+        }
+    }
+
+    @Override
+    public synchronized void removeAllProducts() {
+        Columns current = columns;
+        for (int row = 0; row < current.size; row++) {
+            current.unlink(row);
+        }
+        columns = new Columns(0, 16);
+    }
+
+    /**
+     * Replaces the contents with products that already have their ids, e.g. from a
+     * catalog snapshot.
+     */
+    public synchronized void replaceAll(List<Product> products) {
+        columns = new Columns(0, Math.max(16, products.size()));
+        nextId = 1;
+        for (Product product : products) {
+            append(product);
+        }
+    }
+
+    public int size() {
+        return columns.size;
+    }
+
+    @Override
+    public List<Product> getAll() {
+        Columns view = columns;
+        List<Product> result = new ArrayList<>(view.size);
+        for (int row = 0; row < view.size; row++) {
+            result.add(view.materialize(row));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Product> getBy(Supplier supplier) {
+        Columns view = columns;
+        int code = Dictionary.codeOf(view.supplierValues, supplier);
+        return code < 0 ? new ArrayList<>() : view.materialize(view.scan(view.supplierCodes, code));
+    }
+
+    @Override
+    public List<Product> getBy(ProductCategory productCategory) {
+        Columns view = columns;
+        int code = Dictionary.codeOf(view.categoryValues, productCategory);
+        return code < 0 ? new ArrayList<>() : view.materialize(view.scan(view.categoryCodes, code));
+    }
+
+    /**
+     * Products priced in the currency of the bounds, between min and max inclusive.
+     */
+    public List<Product> getByPriceRange(Money min, Money max) {
+        Columns view = columns;
+        return view.materialize(view.priceRange(min, max));
+    }
+
+    public int countByPriceRange(Money min, Money max) {
+        return columns.priceRange(min, max).length;
+    }
+
+    /**
+     * Sum of the unit prices of all products priced in the given currency.
+     */
+    public Money sumPrices(int currencyIndex) {
+        Columns view = columns;
+        long[] prices = view.prices;
+        int[] currencies = view.currencies;
+        long sum = 0;
+        for (int row = 0; row < view.size; row++) {
+            if (currencies[row] == currencyIndex) {
+                sum = Math.addExact(sum, prices[row]);
+            }
+        }
+        return Money.ofMinor(sum, currencyIndex);
+    }
+
+    public Map<ProductCategory, Integer> countByCategory() {
+        Columns view = columns;
+        return view.facet(view.categoryCodes, view.categoryValues, view.categories);
+    }
+
+    public Map<Supplier, Integer> countBySupplier() {
+        Columns view = columns;
+        return view.facet(view.supplierCodes, view.supplierValues, view.suppliers);
+    }
+
+    /**
+     * Append-only value to code mapping. The values array is replaced when it grows,
+     * so a Columns view holding an older array still sees every code it refers to.
+     */
+    private static final class Dictionary<T> {
+        private final Map<T, Integer> codes = new HashMap<>();
+        private Object[] values = new Object[16];
+
+        int encode(T value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = codes.size();
+                if (code == values.length) {
+                    values = Arrays.copyOf(values, code * 2);
+                }
+                values[code] = value;
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        static int codeOf(Object[] values, Object value) {
+            for (int code = 0; code < values.length && values[code] != null; code++) {
+                if (values[code].equals(value)) {
+                    return code;
+                }
+            }
+            return -1;
+        }
+
+        @SuppressWarnings("unchecked")
+        T decode(Object[] values, int code) {
+            return (T) values[code];
+        }
+    }
+
+    private static final class Columns {
+        private final int size;
+        private final int[] ids;
+        private final long[] prices;
+        private final int[] currencies;
+        private final int[] categoryCodes;
+        private final int[] supplierCodes;
+        private final int[] nameCodes;
+        private final int[] descriptionCodes;
+        private final Dictionary<ProductCategory> categories;
+        private final Dictionary<Supplier> suppliers;
+        private final Dictionary<String> strings;
+        private Object[] categoryValues;
+        private Object[] supplierValues;
+        private Object[] stringValues;
+        private boolean idsAscending = true;
+
+        private Columns(int size, int capacity) {
+            this(size, new int[capacity], new long[capacity], new int[capacity], new int[capacity], new int[capacity],
+                    new int[capacity], new int[capacity], new Dictionary<>(), new Dictionary<>(), new Dictionary<>());
+        }
+
+        private Columns(int size, int[] ids, long[] prices, int[] currencies, int[] categoryCodes, int[] supplierCodes,
+                        int[] nameCodes, int[] descriptionCodes, Dictionary<ProductCategory> categories,
+                        Dictionary<Supplier> suppliers, Dictionary<String> strings) {
+            this.size = size;
+            this.ids = ids;
+            this.prices = prices;
+            this.currencies = currencies;
+            this.categoryCodes = categoryCodes;
+            this.supplierCodes = supplierCodes;
+            this.nameCodes = nameCodes;
+            this.descriptionCodes = descriptionCodes;
+            this.categories = categories;
+            this.suppliers = suppliers;
+            this.strings = strings;
+            this.categoryValues = categories.values;
+            this.supplierValues = suppliers.values;
+            this.stringValues = strings.values;
+        }
+
+        private Columns withSize(int newSize) {
+            Columns view = new Columns(newSize, ids, prices, currencies, categoryCodes, supplierCodes,
+                    nameCodes, descriptionCodes, categories, suppliers, strings);
+            view.idsAscending = idsAscending;
+            return view;
+        }
+
+        private Columns grow() {
+            int capacity = Math.max(16, ids.length * 2);
+            Columns view = new Columns(size + 1, Arrays.copyOf(ids, capacity), Arrays.copyOf(prices, capacity),
+                    Arrays.copyOf(currencies, capacity), Arrays.copyOf(categoryCodes, capacity),
+                    Arrays.copyOf(supplierCodes, capacity), Arrays.copyOf(nameCodes, capacity),
+                    Arrays.copyOf(descriptionCodes, capacity), categories, suppliers, strings);
+            view.idsAscending = idsAscending;
+            return view;
+        }
+
+        private Columns without(int row) {
+            Columns view = new Columns(size - 1, remove(ids, row), remove(prices, row), remove(currencies, row),
+                    remove(categoryCodes, row), remove(supplierCodes, row), remove(nameCodes, row),
+                    remove(descriptionCodes, row), categories, suppliers, strings);
+            view.idsAscending = idsAscending;
+            return view;
+        }
+
+        private int[] remove(int[] column, int row) {
+            int[] copy = new int[column.length];
+            System.arraycopy(column, 0, copy, 0, row);
+            System.arraycopy(column, row + 1, copy, row, size - row - 1);
+            return copy;
+        }
+
+        private long[] remove(long[] column, int row) {
+            long[] copy = new long[column.length];
+            System.arraycopy(column, 0, copy, 0, row);
+            System.arraycopy(column, row + 1, copy, row, size - row - 1);
+            return copy;
+        }
+
+        /**
+         * Fills the last row of this view; only called by the writer before publishing.
+         */
+        private void set(int row, Product product) {
+            Money price = product.getUnitPrice();
+            ids[row] = product.getId();
+            prices[row] = price.getMinorUnits();
+            currencies[row] = price.getCurrencyIndex();
+            categoryCodes[row] = categories.encode(product.getProductCategory());
+            supplierCodes[row] = suppliers.encode(product.getSupplier());
+            nameCodes[row] = strings.encode(product.getName());
+            descriptionCodes[row] = strings.encode(product.getDescription());
+            categoryValues = categories.values;
+            supplierValues = suppliers.values;
+            stringValues = strings.values;
+            idsAscending = idsAscending && (row == 0 || ids[row - 1] < ids[row]);
+        }
+
+        private void unlink(int row) {
+            categories.decode(categoryValues, categoryCodes[row]).removeProduct(ids[row]);
+            suppliers.decode(supplierValues, supplierCodes[row]).removeProduct(ids[row]);
+        }
+
+        private int rowOf(int id) {
+            if (idsAscending) {
+                int row = Arrays.binarySearch(ids, 0, size, id);
+                return row >= 0 ? row : -1;
+            }
+            for (int row = 0; row < size; row++) {
+                if (ids[row] == id) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+
+        private int[] scan(int[] column, int code) {
+            int[] rows = new int[size];
+            int count = 0;
+            for (int row = 0; row < size; row++) {
+                if (column[row] == code) {
+                    rows[count++] = row;
+                }
+            }
+            return Arrays.copyOf(rows, count);
+        }
+
+        private int[] priceRange(Money min, Money max) {
+            if (min.getCurrencyIndex() != max.getCurrencyIndex()) {
+                throw new IllegalArgumentException("Price range bounds in different currencies: "
+                        + min.getCurrency() + ", " + max.getCurrency());
+            }
+            int currency = min.getCurrencyIndex();
+            long low = min.getMinorUnits();
+            long high = max.getMinorUnits();
+            int[] rows = new int[size];
+            int count = 0;
+            for (int row = 0; row < size; row++) {
+                long price = prices[row];
+                if (price >= low && price <= high && currencies[row] == currency) {
+                    rows[count++] = row;
+                }
+            }
+            return Arrays.copyOf(rows, count);
+        }
+
+        private <T> Map<T, Integer> facet(int[] column, Object[] values, Dictionary<T> dictionary) {
+            int[] counts = new int[values.length];
+            for (int row = 0; row < size; row++) {
+                counts[column[row]]++;
+            }
+            Map<T, Integer> result = new LinkedHashMap<>();
+            for (int code = 0; code < counts.length; code++) {
+                if (counts[code] > 0) {
+                    result.put(dictionary.decode(values, code), counts[code]);
+                }
+            }
+            return result;
+        }
+
+        private List<Product> materialize(int[] rows) {
+            List<Product> result = new ArrayList<>(rows.length);
+            for (int row : rows) {
+                result.add(materialize(row));
+            }
+            return result;
+        }
+
+        private Product materialize(int row) {
+            Money price = Money.ofMinor(prices[row], currencies[row]);
+            Product product = new Product(strings.decode(stringValues, nameCodes[row]), 0,
+                    price.getCurrency().getCurrencyCode(), strings.decode(stringValues, descriptionCodes[row]),
+                    categories.decode(categoryValues, categoryCodes[row]),
+                    suppliers.decode(supplierValues, supplierCodes[row]));
+            product.setUnitPrice(price);
+            product.setId(ids[row]);
+            return product;
+        }
+    }
+}
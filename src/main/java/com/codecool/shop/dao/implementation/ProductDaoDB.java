@@ -1,12 +1,18 @@
 package com.codecool.shop.dao.implementation;
 
+import com.codecool.shop.cache.CacheInvalidationBus;
+import com.codecool.shop.cache.InvalidationEvent;
 import com.codecool.shop.dao.ProductDao;
 import com.codecool.shop.model.Product;
 import com.codecool.shop.model.ProductCategory;
 import com.codecool.shop.model.Supplier;
 
-import java.lang.reflect.Field;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -14,6 +20,7 @@ public class ProductDaoDB implements ProductDao, Queryhandler {
 
     private String connection_config_path = "src/main/resources/connection.properties";
     private static ProductDaoDB instance = null;
+    private volatile boolean catalogVersioned;
 
     public ProductDaoDB() {}
 
@@ -32,20 +39,29 @@ public class ProductDaoDB implements ProductDao, Queryhandler {
     public void add(Product product) {
 
         String query = "INSERT INTO products (name, description, default_price, default_currency, product_category, supplier)" +
-                "VALUES (?, ?, ?, ?, ?, ?);";
-        ProductCategoryDaoDB productCategoryDaoDB = new ProductCategoryDaoDB();
-        int productId = productCategoryDaoDB.findIdByName(product.getProductCategory().getName());
-        SupplierDaoDB supplierDaoDB = new SupplierDaoDB();
-        int supplierId = supplierDaoDB.findIdByName(product.getSupplier().getName());
-        List<Object> parameters = new ArrayList<>();
-        parameters.add(product.getName());
-        parameters.add(product.getDescription());
-        parameters.add(product.getDefaultPrice());
-        parameters.add(product.getDefaultCurrency().toString());
-        parameters.add(productId);
-        parameters.add(supplierId);
+                "VALUES (?, ?, ?, ?, ?, ?) RETURNING id;";
+        try {
+            inTransaction(() -> {
+                int productId = ProductCategoryDaoDB.getInstance(connection_config_path).findIdByName(product.getProductCategory().getName());
+                int supplierId = SupplierDaoDB.getInstance(connection_config_path).findIdByName(product.getSupplier().getName());
+                List<Object> parameters = new ArrayList<>();
+                parameters.add(product.getName());
+                parameters.add(product.getDescription());
+                parameters.add(product.getDefaultPrice());
+                parameters.add(product.getDefaultCurrency().toString());
+                parameters.add(productId);
+                parameters.add(supplierId);
 
-        executeDMLQuery(query, parameters);
+                List<Map<String, Object>> results = executeWriteQuery(query, parameters);
+                if (results.size() == 1) {
+                    product.setId(Integer.parseInt(results.get(0).get("id").toString()));
+                    afterCommit(() -> CacheInvalidationBus.getInstance().publish(InvalidationEvent.EntityType.PRODUCT, product.getId()));
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw transactionFailed(e);
+        }
     }
 
     @Override
@@ -68,6 +84,7 @@ public class ProductDaoDB implements ProductDao, Queryhandler {
         List<Object> parameters = new ArrayList<>();
         parameters.add(id);
         executeDMLQuery(query, parameters);
+        afterCommit(() -> CacheInvalidationBus.getInstance().publish(InvalidationEvent.EntityType.PRODUCT, id));
     }
 
     @Override
@@ -106,14 +123,170 @@ public class ProductDaoDB implements ProductDao, Queryhandler {
         return Integer.parseInt(results.get(0).get("count").toString());
     }
 
+    /**
+     * Streams every product with its category and supplier name, ordered by id.
+     */
+    public void streamCatalog(int fetchSize, RowHandler handler) throws SQLException, IOException {
+        String query = "SELECT p.id, p.name, p.description, p.default_price, p.default_currency, " +
+                "c.name AS category, s.name AS supplier " +
+                "FROM products p " +
+                "JOIN product_categories c ON c.id = p.product_category " +
+                "JOIN suppliers s ON s.id = p.supplier " +
+                "ORDER BY p.id;";
+        streamSelectQuery(query, new ArrayList<>(), fetchSize, handler);
+    }
+
+    /**
+     * Inserts the products in one transaction together with the import checkpoint, so
+     * a resumed import neither skips nor repeats rows. Returns false if nothing was
+     * written.
+     */
+    public boolean addAll(List<Product> products, String importSource, String importFingerprint, long importPosition) {
+        String query = "INSERT INTO products (name, description, default_price, default_currency, product_category, supplier)" +
+                "VALUES (?, ?, ?, ?, ?, ?);";
+        List<List<Object>> rows = new ArrayList<>(products.size());
+        for (Product product : products) {
+            List<Object> parameters = new ArrayList<>();
+            parameters.add(product.getName());
+            parameters.add(product.getDescription());
+            parameters.add(product.getDefaultPrice());
+            parameters.add(product.getDefaultCurrency().toString());
+            parameters.add(product.getProductCategory().getId());
+            parameters.add(product.getSupplier().getId());
+            rows.add(parameters);
+        }
+        String checkpointQuery = "INSERT INTO catalog_imports (source, fingerprint, position) VALUES (?, ?, ?) " +
+                "ON CONFLICT (source) DO UPDATE SET fingerprint = EXCLUDED.fingerprint, position = EXCLUDED.position;";
+        List<Object> checkpoint = new ArrayList<>();
+        checkpoint.add(importSource);
+        checkpoint.add(importFingerprint);
+        checkpoint.add(importPosition);
+
+        LinkedHashMap<String, List<List<Object>>> batches = new LinkedHashMap<>();
+        batches.put(query, rows);
+        batches.put(checkpointQuery, Collections.singletonList(checkpoint));
+        boolean written = executeBatchDMLQueries(batches);
+        if (written && !products.isEmpty()) {
+            afterCommit(() -> CacheInvalidationBus.getInstance().publish(InvalidationEvent.EntityType.PRODUCT, InvalidationEvent.ALL));
+        }
+        return written;
+    }
+
+    /**
+     * Inserts the products as one batch right before the current transaction
+     * commits, or one by one at once outside a transaction. Their ids are not read
+     * back, so categories and suppliers must already have theirs.
+     */
+    public void addAllDeferred(List<Product> products) {
+        String query = "INSERT INTO products (name, description, default_price, default_currency, product_category, supplier)" +
+                "VALUES (?, ?, ?, ?, ?, ?);";
+        for (Product product : products) {
+            List<Object> parameters = new ArrayList<>();
+            parameters.add(product.getName());
+            parameters.add(product.getDescription());
+            parameters.add(product.getDefaultPrice());
+            parameters.add(product.getDefaultCurrency().toString());
+            parameters.add(product.getProductCategory().getId());
+            parameters.add(product.getSupplier().getId());
+            deferDMLQuery(query, parameters);
+        }
+        if (!products.isEmpty()) {
+            afterCommit(() -> CacheInvalidationBus.getInstance().publish(InvalidationEvent.EntityType.PRODUCT, InvalidationEvent.ALL));
+        }
+    }
+
+    /**
+     * Number of rows of the source already imported, or 0 if the source is new or
+     * has changed since.
+     */
+    public long getImportPosition(String importSource, String importFingerprint) {
+        String query = "SELECT fingerprint, position FROM catalog_imports WHERE source = ?;";
+        List<Object> parameters = new ArrayList<>();
+        parameters.add(importSource);
+        List<Map<String, Object>> results = executeSelectQuery(query, parameters);
+        if (results.size() != 1 || !importFingerprint.equals(results.get(0).get("fingerprint"))) {
+            return 0;
+        }
+        return ((Number) results.get(0).get("position")).longValue();
+    }
+
+    public void removeImportPosition(String importSource) {
+        String query = "DELETE FROM catalog_imports WHERE source = ?;";
+        List<Object> parameters = new ArrayList<>();
+        parameters.add(importSource);
+        executeDMLQuery(query, parameters);
+    }
+
+    /**
+     * The catalog version that every write to a catalog table bumps (migration V3),
+     * so the probe reads one row. Without it, e.g. with migrations turned off, row
+     * counts, highest ids and the sum of the row versions (xmin) of the catalog
+     * tables, which scans them all. Null if the database cannot be reached.
+     */
+    public String getCatalogFingerprint() {
+        if (!catalogVersioned) {
+            List<Map<String, Object>> results =
+                    executeSelectQuery("SELECT to_regclass('catalog_version') IS NOT NULL AS versioned;");
+            if (results.size() != 1) {
+                return null;
+            }
+            catalogVersioned = Boolean.TRUE.equals(results.get(0).get("versioned"));
+            if (!catalogVersioned) {
+                return getScannedCatalogFingerprint();
+            }
+        }
+        List<Map<String, Object>> results = executeSelectQuery("SELECT version FROM catalog_version WHERE id = 1;");
+        if (results.size() != 1) {
+            return null;
+        }
+        return "version:" + results.get(0).get("version");
+    }
+
+    private String getScannedCatalogFingerprint() {
+        String query = "SELECT (SELECT COUNT(id) FROM products) AS products, " +
+                "(SELECT COALESCE(MAX(id), 0) FROM products) AS max_product, " +
+                "(SELECT COALESCE(SUM(xmin::text::bigint), 0) FROM products) AS products_version, " +
+                "(SELECT COUNT(id) FROM suppliers) AS suppliers, " +
+                "(SELECT COALESCE(MAX(id), 0) FROM suppliers) AS max_supplier, " +
+                "(SELECT COALESCE(SUM(xmin::text::bigint), 0) FROM suppliers) AS suppliers_version, " +
+                "(SELECT COUNT(id) FROM product_categories) AS categories, " +
+                "(SELECT COALESCE(MAX(id), 0) FROM product_categories) AS max_category, " +
+                "(SELECT COALESCE(SUM(xmin::text::bigint), 0) FROM product_categories) AS categories_version;";
+        List<Map<String, Object>> results = executeSelectQuery(query);
+        if (results.size() != 1) {
+            return null;
+        }
+        Map<String, Object> row = results.get(0);
+        return "products:" + row.get("products") + ":" + row.get("max_product") + ":" + row.get("products_version") +
+                ",suppliers:" + row.get("suppliers") + ":" + row.get("max_supplier") + ":" + row.get("suppliers_version") +
+                ",categories:" + row.get("categories") + ":" + row.get("max_category") + ":" + row.get("categories_version");
+    }
+
+    /**
+     * True on a fresh database without any product, supplier or category. False if
+     * the database cannot be reached.
+     */
+    public boolean isCatalogEmpty() {
+        String query = "SELECT NOT EXISTS (SELECT 1 FROM products) " +
+                "AND NOT EXISTS (SELECT 1 FROM suppliers) " +
+                "AND NOT EXISTS (SELECT 1 FROM product_categories) AS empty;";
+        List<Map<String, Object>> results = executeSelectQuery(query);
+        return results.size() == 1 && Boolean.TRUE.equals(results.get(0).get("empty"));
+    }
+
     @Override
     public void removeAllProducts() {
         String query = "DELETE from products;";
         executeDMLQuery(query);
+        afterCommit(() -> CacheInvalidationBus.getInstance().publish(InvalidationEvent.EntityType.PRODUCT, InvalidationEvent.ALL));
     }
 
     private List<Product> buildProductsList(List<Map<String, Object>> results) {
-        List<Product> products = new ArrayList<>();
+        List<Product> products = new ArrayList<>(results.size());
+        Map<Integer, ProductCategory> categories = new HashMap<>();
+        Map<Integer, Supplier> suppliers = new HashMap<>();
+        ProductCategoryDaoDB productCategoryDaoDB = ProductCategoryDaoDB.getInstance(connection_config_path);
+        SupplierDaoDB supplierDaoDB = SupplierDaoDB.getInstance(connection_config_path);
         for (Map<String, Object> result : results) {
             int id = (int) result.get("id");
             String name = (String) result.get("name");
@@ -122,8 +295,8 @@ public class ProductDaoDB implements ProductDao, Queryhandler {
             String defaultCurrency = (String) result.get("default_currency");
             int productCategoryId = (int) result.get("product_category");
             int supplierId = (int) result.get("supplier");
-            ProductCategory productCategory = new ProductCategoryDaoDB(connection_config_path).find(productCategoryId);
-            Supplier supplier = new SupplierDaoDB().find(supplierId);
+            ProductCategory productCategory = categories.computeIfAbsent(productCategoryId, productCategoryDaoDB::find);
+            Supplier supplier = suppliers.computeIfAbsent(supplierId, supplierDaoDB::find);
             Product product = new Product(name, defaultPrice, defaultCurrency, description, productCategory, supplier);
             product.setId(id);
             products.add(product);
@@ -12,7 +12,7 @@ import java.util.stream.Collectors;
 
 public class ProductDaoMem implements ProductDao {
 
-    private List<Product> data = new ArrayList<>();
+    private volatile List<Product> data = new ArrayList<>();
     private static ProductDaoMem instance = null;
 
     /* A private Constructor prevents any other class from instantiating.
@@ -31,6 +31,8 @@ public class ProductDaoMem implements ProductDao {
     public void add(Product product) {
         product.setId(data.size() + 1);
         data.add(product);
+        product.getProductCategory().addProduct(product);
+        product.getSupplier().addProduct(product);
     }
 
     @Override
@@ -40,14 +42,31 @@ public class ProductDaoMem implements ProductDao {
 
     @Override
     public void remove(int id) {
-        data.remove(find(id));
+        Product product = find(id);
+        if (product != null) {
+            data.remove(product);
+            product.getProductCategory().removeProduct(id);
+            product.getSupplier().removeProduct(id);
+        }
     }
 
     @Override
     public void removeAllProducts() {
+        for (Product product : data) {
+            product.getProductCategory().removeProduct(product.getId());
+            product.getSupplier().removeProduct(product.getId());
+        }
         data.clear();
     }
 
+    /**
+     * Replaces the contents with products that already have their ids, e.g. from a
+     * catalog snapshot.
+     */
+    public void replaceAll(List<Product> products) {
+        data = new ArrayList<>(products);
+    }
+
     @Override
     public List<Product> getAll() {
         return data;
@@ -0,0 +1,462 @@
+package com.codecool.shop.dao.implementation;
+
+import com.codecool.shop.config.ServerConfig;
+import com.codecool.shop.dao.ProductDao;
+import com.codecool.shop.model.Money;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.Supplier;
+import com.codecool.shop.util.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Product store keeping the catalog outside the Java heap, so its size does not
+ * add to garbage collection work. Every product is a fixed size record in a
+ * direct or memory-mapped buffer; names and descriptions are UTF-8 bytes in a
+ * separate string arena the records point into. Only the few categories and
+ * suppliers stay on the heap.
+ * <p>
+ * Lists returned by the dao are views that build a Product when an element is
+ * read, so reading a list only keeps the products in use on the heap. Listing fields
+ * can also be read straight from the buffers, e.g. {@link #nameAt(int)}.
+ * <p>
+ * Writers are serialized and publish a new {@link Records} view after writing
+ * behind the rows of the old one. A removed product is marked deleted in place.
+ * Replacing the contents writes a new generation of buffers, or of files, and
+ * publishes it once complete, so readers of the old view never see its rows
+ * rewritten. Categories and suppliers get no back references to the products,
+ * which would put a per-product array on the heap again.
+ */
+public class ProductDaoOffHeap implements ProductDao {
+
+    static final int RECORD_SIZE = 40;
+    private static final int ID = 0;
+    private static final int FLAGS = 4;
+    private static final int PRICE = 8;
+    private static final int CURRENCY = 16;
+    private static final int CATEGORY = 20;
+    private static final int SUPPLIER = 24;
+    private static final int NAME = 28;
+    private static final int DESCRIPTION = 32;
+    private static final int DESCRIPTION_LENGTH = 36;
+    private static final int DELETED = 1;
+
+    private static ProductDaoOffHeap instance = null;
+
+    private final Path file;
+    private volatile Records records;
+    private int nextId = 1;
+    private int generation;
+
+    public ProductDaoOffHeap() {
+        this(null);
+    }
+
+    /**
+     * Records and strings are kept in file.N.records and file.N.strings when a file is
+     * given, N counting the generations of contents, in direct buffers otherwise.
+     */
+    public ProductDaoOffHeap(Path file) {
+        this.file = file;
+        this.records = newGeneration(1024);
+    }
+
+    public static synchronized ProductDaoOffHeap getInstance() {
+        if (instance == null) {
+            String path = ServerConfig.getInstance().getString("catalog_offheap_file", "");
+            instance = new ProductDaoOffHeap(path.isEmpty() ? null : Paths.get(path));
+            MetricsRegistry.getInstance().register("catalog.offheap", instance::getMetrics);
+        }
+        return instance;
+    }
+
+    /**
+     * Empty records in buffers of their own. The files of the previous generation are
+     * deleted; views still reading them keep their mapping.
+     */
+    private Records newGeneration(int recordCapacity) {
+        int previous = generation++;
+        if (file != null && previous > 0) {
+            try {
+                Files.deleteIfExists(path(previous, "records"));
+                Files.deleteIfExists(path(previous, "strings"));
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+        return Records.empty(allocate("records", recordCapacity * RECORD_SIZE, true),
+                allocate("strings", 64 * 1024, true));
+    }
+
+    private Path path(int generation, String suffix) {
+        return Paths.get(file.toString() + "." + generation + "." + suffix);
+    }
+
+    private ByteBuffer allocate(String suffix, int capacity, boolean fresh) {
+        if (file == null) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        Path path = path(generation, suffix);
+        OpenOption[] options = fresh
+                ? new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING}
+                : new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not map " + path, e);
+        }
+    }
+
+    private ByteBuffer grow(String suffix, ByteBuffer buffer, int used, long needed) {
+        long capacity = buffer.capacity();
+        while (capacity < needed) {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Off-heap catalog " + suffix + " can not grow beyond 2 GB");
+        }
+        // a mapped file only grows behind the rows older views read
+        ByteBuffer grown = allocate(suffix, (int) capacity, false);
+        if (file == null) {
+            ByteBuffer source = buffer.duplicate();
+            source.position(0).limit(used);
+            grown.put(source);
+        }
+        return grown;
+    }
+
+    @Override
+    public synchronized void add(Product product) {
+        product.setId(nextId);
+        records = append(records, product);
+    }
+
+    private Records append(Records current, Product product) {
+        byte[] name = bytes(product.getName());
+        byte[] description = bytes(product.getDescription());
+
+        ByteBuffer strings = current.strings;
+        long stringsNeeded = (long) current.stringsUsed + name.length + description.length;
+        if (stringsNeeded > strings.capacity()) {
+            strings = grow("strings", strings, current.stringsUsed, stringsNeeded);
+        }
+        ByteBuffer data = current.data;
+        long recordsNeeded = (long) (current.size + 1) * RECORD_SIZE;
+        if (recordsNeeded > data.capacity()) {
+            data = grow("records", data, current.size * RECORD_SIZE, recordsNeeded);
+        }
+
+        int nameOffset = current.stringsUsed;
+        int descriptionOffset = nameOffset + name.length;
+        ByteBuffer target = strings.duplicate();
+        target.position(nameOffset);
+        target.put(name).put(description);
+
+        Object[] categories = current.categories;
+        int category = codeOf(categories, product.getProductCategory());
+        if (category < 0) {
+            category = categories.length;
+            categories = Arrays.copyOf(categories, category + 1);
+            categories[category] = product.getProductCategory();
+        }
+        Object[] suppliers = current.suppliers;
+        int supplier = codeOf(suppliers, product.getSupplier());
+        if (supplier < 0) {
+            supplier = suppliers.length;
+            suppliers = Arrays.copyOf(suppliers, supplier + 1);
+            suppliers[supplier] = product.getSupplier();
+        }
+
+        Money price = product.getUnitPrice();
+        int base = current.size * RECORD_SIZE;
+        data.putInt(base + ID, product.getId());
+        data.putInt(base + FLAGS, 0);
+        data.putLong(base + PRICE, price.getMinorUnits());
+        data.putInt(base + CURRENCY, price.getCurrencyIndex());
+        data.putInt(base + CATEGORY, category);
+        data.putInt(base + SUPPLIER, supplier);
+        data.putInt(base + NAME, nameOffset);
+        data.putInt(base + DESCRIPTION, descriptionOffset);
+        data.putInt(base + DESCRIPTION_LENGTH, description.length);
+
+        boolean ascending = current.idsAscending
+                && (current.size == 0 || data.getInt(base - RECORD_SIZE + ID) < product.getId());
+        nextId = Math.max(nextId, product.getId() + 1);
+        return new Records(current.size + 1, current.deleted, ascending, data, strings,
+                descriptionOffset + description.length, categories, suppliers);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int codeOf(Object[] values, Object value) {
+        for (int code = 0; code < values.length; code++) {
+            if (values[code].equals(value)) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Product find(int id) {
+        Records view = records;
+        int row = view.rowOf(id);
+        return row < 0 ? null : view.materialize(row);
+    }
+
+    @Override
+    public synchronized void remove(int id) {
+        Records current = records;
+        int row = current.rowOf(id);
+        if (row >= 0) {
+            current.data.putInt(row * RECORD_SIZE + FLAGS, DELETED);
+            records = new Records(current.size, current.deleted + 1, current.idsAscending, current.data,
+                    current.strings, current.stringsUsed, current.categories, current.suppliers);
+        }
+    }
+
+    @Override
+    public synchronized void removeAllProducts() {
+        records = newGeneration(1024);
+    }
+
+    /**
+     * Replaces the contents with products that already have their ids, e.g. from a
+     * catalog snapshot.
+     */
+    public synchronized void replaceAll(List<Product> products) {
+        Records replacement = newGeneration(Math.max(1024, products.size()));
+        nextId = 1;
+        for (Product product : products) {
+            replacement = append(replacement, product);
+        }
+        records = replacement;
+    }
+
+    public int size() {
+        Records view = records;
+        return view.size - view.deleted;
+    }
+
+    @Override
+    public List<Product> getAll() {
+        Records view = records;
+        return new ProductView(view, view.deleted == 0 ? null : view.scan(-1, -1));
+    }
+
+    @Override
+    public List<Product> getBy(Supplier supplier) {
+        Records view = records;
+        int code = codeOf(view.suppliers, supplier);
+        return new ProductView(view, code < 0 ? new int[0] : view.scan(SUPPLIER, code));
+    }
+
+    @Override
+    public List<Product> getBy(ProductCategory productCategory) {
+        Records view = records;
+        int code = codeOf(view.categories, productCategory);
+        return new ProductView(view, code < 0 ? new int[0] : view.scan(CATEGORY, code));
+    }
+
+    /**
+     * Number of records, removed ones included. Rows below it can be read with the
+     * field accessors without building a Product.
+     */
+    public int rowCount() {
+        return records.size;
+    }
+
+    public boolean isRemovedAt(int row) {
+        return records.isDeleted(row);
+    }
+
+    public int idAt(int row) {
+        return records.data.getInt(row * RECORD_SIZE + ID);
+    }
+
+    public Money priceAt(int row) {
+        Records view = records;
+        int base = row * RECORD_SIZE;
+        return Money.ofMinor(view.data.getLong(base + PRICE), view.data.getInt(base + CURRENCY));
+    }
+
+    /**
+     * UTF-8 bytes of the name of a row as a read-only view of the string arena.
+     */
+    public ByteBuffer nameAt(int row) {
+        Records view = records;
+        int base = row * RECORD_SIZE;
+        return view.slice(view.data.getInt(base + NAME), view.data.getInt(base + DESCRIPTION));
+    }
+
+    public ByteBuffer descriptionAt(int row) {
+        Records view = records;
+        int base = row * RECORD_SIZE;
+        int offset = view.data.getInt(base + DESCRIPTION);
+        return view.slice(offset, offset + view.data.getInt(base + DESCRIPTION_LENGTH));
+    }
+
+    public Map<String, Long> getMetrics() {
+        Records view = records;
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("products", (long) (view.size - view.deleted));
+        metrics.put("deleted", (long) view.deleted);
+        metrics.put("records.bytes", (long) view.size * RECORD_SIZE);
+        metrics.put("strings.bytes", (long) view.stringsUsed);
+        metrics.put("capacity.bytes", (long) view.data.capacity() + view.strings.capacity());
+        return metrics;
+    }
+
+    private static final class Records {
+        private final int size;
+        private final int deleted;
+        private final boolean idsAscending;
+        private final ByteBuffer data;
+        private final ByteBuffer strings;
+        private final int stringsUsed;
+        private final Object[] categories;
+        private final Object[] suppliers;
+
+        private Records(int size, int deleted, boolean idsAscending, ByteBuffer data, ByteBuffer strings,
+                        int stringsUsed, Object[] categories, Object[] suppliers) {
+            this.size = size;
+            this.deleted = deleted;
+            this.idsAscending = idsAscending;
+            this.data = data;
+            this.strings = strings;
+            this.stringsUsed = stringsUsed;
+            this.categories = categories;
+            this.suppliers = suppliers;
+        }
+
+        private static Records empty(ByteBuffer data, ByteBuffer strings) {
+            return new Records(0, 0, true, data, strings, 0, new Object[0], new Object[0]);
+        }
+
+        private boolean isDeleted(int row) {
+            return data.getInt(row * RECORD_SIZE + FLAGS) == DELETED;
+        }
+
+        private int rowOf(int id) {
+            int row = -1;
+            if (idsAscending) {
+                int low = 0;
+                int high = size - 1;
+                while (low <= high) {
+                    int middle = (low + high) >>> 1;
+                    int value = data.getInt(middle * RECORD_SIZE + ID);
+                    if (value < id) {
+                        low = middle + 1;
+                    } else if (value > id) {
+                        high = middle - 1;
+                    } else {
+                        row = middle;
+                        break;
+                    }
+                }
+            } else {
+                for (int i = 0; i < size && row < 0; i++) {
+                    if (data.getInt(i * RECORD_SIZE + ID) == id) {
+                        row = i;
+                    }
+                }
+            }
+            return row >= 0 && !isDeleted(row) ? row : -1;
+        }
+
+        /**
+         * Live rows whose int field at the given offset equals the code, every live
+         * row when the offset is negative.
+         */
+        private int[] scan(int field, int code) {
+            int[] rows = new int[16];
+            int count = 0;
+            for (int row = 0; row < size; row++) {
+                int base = row * RECORD_SIZE;
+                if ((field < 0 || data.getInt(base + field) == code) && data.getInt(base + FLAGS) != DELETED) {
+                    if (count == rows.length) {
+                        rows = Arrays.copyOf(rows, count * 2);
+                    }
+                    rows[count++] = row;
+                }
+            }
+            return Arrays.copyOf(rows, count);
+        }
+
+        private ByteBuffer slice(int from, int to) {
+            ByteBuffer view = strings.asReadOnlyBuffer();
+            view.position(from).limit(to);
+            return view.slice();
+        }
+
+        private String string(int from, int to) {
+            byte[] bytes = new byte[to - from];
+            ByteBuffer view = strings.duplicate();
+            view.position(from);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private Product materialize(int row) {
+            int base = row * RECORD_SIZE;
+            int nameOffset = data.getInt(base + NAME);
+            int descriptionOffset = data.getInt(base + DESCRIPTION);
+            Money price = Money.ofMinor(data.getLong(base + PRICE), data.getInt(base + CURRENCY));
+            Product product = new Product(string(nameOffset, descriptionOffset), 0,
+                    price.getCurrency().getCurrencyCode(),
+                    string(descriptionOffset, descriptionOffset + data.getInt(base + DESCRIPTION_LENGTH)),
+                    (ProductCategory) categories[data.getInt(base + CATEGORY)],
+                    (Supplier) suppliers[data.getInt(base + SUPPLIER)]);
+            product.setUnitPrice(price);
+            product.setId(data.getInt(base + ID));
+            return product;
+        }
+    }
+
+    /**
+     * Read-only list over a fixed set of rows; elements are built on every get, so
+     * the list itself holds no products.
+     */
+    private static final class ProductView extends AbstractList<Product> implements RandomAccess {
+        private final Records records;
+        private final int[] rows;
+
+        private ProductView(Records records, int[] rows) {
+            this.records = records;
+            this.rows = rows;
+        }
+
+        @Override
+        public Product get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+            }
+            return records.materialize(rows == null ? index : rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows == null ? records.size : rows.length;
+        }
+    }
+}
@@ -1,15 +1,36 @@
 package com.codecool.shop.dao.implementation;
 
+import com.codecool.shop.dao.DatabaseUnavailableException;
+import com.codecool.shop.service.DatabaseExecutor;
+
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public interface Queryhandler {
 
+    interface RowHandler {
+        void handle(Map<String, Object> row) throws IOException;
+    }
+
     String getConnectionConfigPath();
 
     default Connection getConnection() {
+        UnitOfWork unitOfWork = UnitOfWork.current(getConnectionConfigPath());
+        if (unitOfWork != null) {
+            return unitOfWork.getConnection();
+        }
+        return getConnection(null);
+    }
+
+    /**
+     * Opens a connection to the database at dbUrl, or to the primary in db_url when
+     * dbUrl is null. Replicas share the database name and credentials of the primary.
+     * Returns null at once while the circuit breaker of the address is open.
+     */
+    default Connection getConnection(String dbUrl) {
         Properties connection_props = new Properties();
         try {
             connection_props.load(new FileInputStream(getConnectionConfigPath()));
@@ -18,27 +39,169 @@ public interface Queryhandler {
             e.printStackTrace(System.out);
         }
         String db_name = connection_props.getProperty("db_name");
-        String db_url = connection_props.getProperty("db_url");
+        String db_url = dbUrl != null ? dbUrl : connection_props.getProperty("db_url");
         String db_user = connection_props.getProperty("db_user");
         String db_password = connection_props.getProperty("db_password");
         String db_address = "jdbc:postgresql://" + db_url + "/" + db_name;
 
+        ResiliencePolicy policy = getResiliencePolicy();
+        CircuitBreaker breaker = policy.breaker(db_address);
+        if (!breaker.allow()) {
+            return null;
+        }
+        Properties jdbc_props = new Properties();
+        if (db_user != null) {
+            jdbc_props.setProperty("user", db_user);
+        }
+        if (db_password != null) {
+            jdbc_props.setProperty("password", db_password);
+        }
+        policy.applyTimeouts(jdbc_props);
+
         Connection connection = null;
         try {
-            connection = DriverManager.getConnection(
-                    db_address,
-                    db_user,
-                    db_password);
+            connection = policy.retry(() -> DriverManager.getConnection(db_address, jdbc_props));
+            breaker.recordConnected();
         } catch (SQLException e) {
+            breaker.recordFailure();
             System.out.println(e.getMessage());
             e.printStackTrace(System.out);
         }
         return connection;
     }
 
+    /**
+     * Like {@link #getConnection()}, but throws instead of returning null.
+     */
+    default Connection openConnection() {
+        Connection connection = getConnection();
+        if (connection == null) {
+            throw new DatabaseUnavailableException("No database connection for " + getConnectionConfigPath());
+        }
+        return connection;
+    }
+
+    default ResiliencePolicy getResiliencePolicy() {
+        return ResiliencePolicy.getInstance(getConnectionConfigPath());
+    }
+
+    /**
+     * Retries work that is safe to repeat on transient failures, except inside a
+     * transaction, which a failed statement has already spoiled.
+     */
+    default <T> T withRetry(ResiliencePolicy.Attempt<T> attempt) throws SQLException {
+        if (UnitOfWork.current(getConnectionConfigPath()) != null) {
+            return attempt.run();
+        }
+        return getResiliencePolicy().retry(attempt);
+    }
+
+    default ReplicaRouter getReplicaRouter() {
+        return ReplicaRouter.getInstance(getConnectionConfigPath());
+    }
+
+    /**
+     * Opens a connection for reading from the database the router picked, falling
+     * back to the primary when the replica cannot be reached.
+     */
+    default Connection getReadConnection(int replica) {
+        if (replica == ReplicaRouter.PRIMARY || UnitOfWork.current(getConnectionConfigPath()) != null) {
+            return getConnection();
+        }
+        Connection connection = getConnection(getReplicaRouter().getUrl(replica));
+        if (connection == null) {
+            getReplicaRouter().markDown(replica);
+            return getConnection();
+        }
+        return connection;
+    }
+
+    /**
+     * Runs work in one transaction on one connection: every query of this config made
+     * by the work, from any Queryhandler, joins it and it commits once at the end.
+     * Throws and rolls back everything if the work or any statement in it failed.
+     */
+    default <T> T inTransaction(UnitOfWork.Work<T> work) throws SQLException {
+        return UnitOfWork.run(this, work);
+    }
+
+    /**
+     * Queues a write to be sent in a batch with the others of the same query right
+     * before the transaction commits; runs it at once outside a transaction.
+     */
+    default void deferDMLQuery(String query, List<Object> parameters) {
+        UnitOfWork unitOfWork = UnitOfWork.current(getConnectionConfigPath());
+        if (unitOfWork == null) {
+            executeDMLQuery(query, parameters);
+            return;
+        }
+        getReplicaRouter().recordWrite();
+        unitOfWork.defer(query, parameters);
+    }
+
+    /**
+     * Unchecked form of a failed transaction for DAO methods that cannot throw
+     * SQLException: DatabaseUnavailableException when the database could not be
+     * reached, IllegalStateException for anything else.
+     */
+    default RuntimeException transactionFailed(SQLException e) {
+        String state = e.getSQLState();
+        if (state != null && (state.startsWith("08") || state.startsWith("57P"))) {
+            return new DatabaseUnavailableException(e.getMessage(), e);
+        }
+        return new IllegalStateException("Transaction failed: " + e.getMessage(), e);
+    }
+
+    /**
+     * Runs action once the current transaction committed, or at once outside one.
+     */
+    default void afterCommit(Runnable action) {
+        UnitOfWork unitOfWork = UnitOfWork.current(getConnectionConfigPath());
+        if (unitOfWork == null) {
+            action.run();
+        } else {
+            unitOfWork.afterCommit(action);
+        }
+    }
+
+    /**
+     * Runs action if the current transaction is rolled back; nothing outside one.
+     */
+    default void afterRollback(Runnable action) {
+        UnitOfWork unitOfWork = UnitOfWork.current(getConnectionConfigPath());
+        if (unitOfWork != null) {
+            unitOfWork.afterRollback(action);
+        }
+    }
+
+    /**
+     * Runs a statement on connection and reports the outcome to the breaker of its
+     * data source: a completed statement resets the failure count, one cancelled by
+     * the query timeout counts as a failure, as a database that is too slow to answer
+     * is as unusable as one that cannot be reached.
+     */
+    default <T> T executeStatement(Connection connection, ResiliencePolicy.Attempt<T> statement) throws SQLException {
+        DatabaseMetaData metadata = connection.getMetaData();
+        if (metadata == null) {
+            return statement.run();
+        }
+        CircuitBreaker breaker = getResiliencePolicy().breaker(metadata.getURL());
+        try {
+            T result = statement.run();
+            breaker.recordSuccess();
+            return result;
+        } catch (SQLException e) {
+            if (ResiliencePolicy.isStatementTimeout(e)) {
+                breaker.recordFailure();
+            }
+            throw e;
+        }
+    }
+
     default PreparedStatement createPreparedStatement(Connection connection, String query, List<Object> parameters)
             throws SQLException {
         PreparedStatement statement = connection.prepareStatement(query);
+        statement.setQueryTimeout(getResiliencePolicy().getQueryTimeoutSeconds());
 
         Integer index = 1;
         for (Object parameter : parameters) {
@@ -50,10 +213,11 @@ public interface Queryhandler {
 
     default Integer executeDMLQuery(String query) {
         Integer result = null;
-        try (Connection connection = getConnection();
-             PreparedStatement statement = connection.prepareStatement(query);
+        getReplicaRouter().recordWrite();
+        try (Connection connection = openConnection();
+             PreparedStatement statement = createPreparedStatement(connection, query, Collections.emptyList());
         ){
-            result = statement.executeUpdate();
+            result = executeStatement(connection, statement::executeUpdate);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -62,10 +226,11 @@ public interface Queryhandler {
 
     default Integer executeDMLQuery(String query, List<Object> parameters) {
         Integer result = null;
-        try (Connection connection = getConnection();
+        getReplicaRouter().recordWrite();
+        try (Connection connection = openConnection();
              PreparedStatement statement = createPreparedStatement(connection, query, parameters);
         ){
-            result = statement.executeUpdate();
+            result = executeStatement(connection, statement::executeUpdate);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -73,33 +238,178 @@ public interface Queryhandler {
         return result;
     }
 
-    default List<Map<String, Object>> executeSelectQuery(String query) {
-        List<Map<String, Object>> resultListOfMaps = new ArrayList<>();
-        try (Connection connection = getConnection();
+    default int[] executeBatchDMLQuery(String query, List<List<Object>> batch) {
+        int[] result = null;
+        getReplicaRouter().recordWrite();
+        try (Connection connection = openConnection();
              PreparedStatement statement = connection.prepareStatement(query)
         ){
-            ResultSet resultSet = statement.executeQuery();
-            ResultSetMetaData metadata = resultSet.getMetaData();
-            int numberOfColumns = metadata.getColumnCount();
-            while (resultSet.next()) {
-                Map<String, Object> tempMap = new HashMap<>();
-                for(int i=1; i<=numberOfColumns; i++){
-                    tempMap.put(metadata.getColumnName(i),resultSet.getObject(i));
+            statement.setQueryTimeout(getResiliencePolicy().getQueryTimeoutSeconds());
+            connection.setAutoCommit(false);
+            try {
+                for (List<Object> parameters : batch) {
+                    int index = 1;
+                    for (Object parameter : parameters) {
+                        statement.setObject(index, parameter);
+                        index++;
+                    }
+                    statement.addBatch();
                 }
-                resultListOfMaps.add(tempMap);
+                result = executeStatement(connection, statement::executeBatch);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return resultListOfMaps;
+        return result;
+    }
+
+    /**
+     * Runs each query with all of its parameter rows in one transaction, in the
+     * order of the map. Returns false if anything failed and was rolled back.
+     */
+    default boolean executeBatchDMLQueries(LinkedHashMap<String, List<List<Object>>> batches) {
+        getReplicaRouter().recordWrite();
+        try (Connection connection = openConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, List<List<Object>>> batch : batches.entrySet()) {
+                    try (PreparedStatement statement = connection.prepareStatement(batch.getKey())) {
+                        statement.setQueryTimeout(getResiliencePolicy().getQueryTimeoutSeconds());
+                        for (List<Object> parameters : batch.getValue()) {
+                            int index = 1;
+                            for (Object parameter : parameters) {
+                                statement.setObject(index, parameter);
+                                index++;
+                            }
+                            statement.addBatch();
+                        }
+                        executeStatement(connection, statement::executeBatch);
+                    }
+                }
+                connection.commit();
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Runs the query through a server-side cursor that fetches fetchSize rows at a
+     * time and hands each row to the handler as it arrives, so the result is never
+     * held in memory as a whole.
+     */
+    default void streamSelectQuery(String query, List<Object> parameters, int fetchSize, RowHandler handler)
+            throws SQLException, IOException {
+        int replica = getReplicaRouter().acquire();
+        try (Connection connection = getReadConnection(replica)) {
+            if (connection == null) {
+                throw new SQLException("No database connection for " + getConnectionConfigPath());
+            }
+            // the driver only uses a cursor inside a transaction
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = createPreparedStatement(connection, query, parameters)) {
+                // the export reads for minutes; only the socket timeout applies
+                statement.setQueryTimeout(0);
+                statement.setFetchSize(fetchSize);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    ResultSetMetaData metadata = resultSet.getMetaData();
+                    int numberOfColumns = metadata.getColumnCount();
+                    while (resultSet.next()) {
+                        Map<String, Object> row = new HashMap<>();
+                        for (int i = 1; i <= numberOfColumns; i++) {
+                            row.put(metadata.getColumnName(i), resultSet.getObject(i));
+                        }
+                        handler.handle(row);
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } finally {
+            getReplicaRouter().release(replica);
+        }
+    }
+
+    default List<Map<String, Object>> executeSelectQuery(String query) {
+        return executeSelectQuery(query, new ArrayList<>());
     }
 
     default List<Map<String, Object>> executeSelectQuery(String query, List<Object> parameters) {
+        try {
+            return withRetry(() -> {
+                int replica = getReplicaRouter().acquire();
+                try {
+                    return executeQuery(getReadConnection(replica), query, parameters);
+                } finally {
+                    getReplicaRouter().release(replica);
+                }
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Runs a select on the primary, for reads that must not miss a row a replica
+     * lags behind on, like the ones that fill a cache.
+     */
+    default List<Map<String, Object>> executePrimarySelectQuery(String query, List<Object> parameters) {
+        try {
+            return withRetry(() -> executeQuery(openConnection(), query, parameters));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Runs the select on the query executor, so independent queries of one request
+     * can wait for the database at the same time. Inside a transaction it runs at
+     * once on the transaction's connection instead.
+     */
+    default CompletableFuture<List<Map<String, Object>>> executeSelectQueryAsync(String query, List<Object> parameters) {
+        if (UnitOfWork.current(getConnectionConfigPath()) != null) {
+            return CompletableFuture.completedFuture(executeSelectQuery(query, parameters));
+        }
+        return DatabaseExecutor.getQueryInstance().supply(() -> executeSelectQuery(query, parameters));
+    }
+
+    /**
+     * Runs a statement that returns rows but also writes, like INSERT ... RETURNING
+     * or pg_notify, on the primary.
+     */
+    default List<Map<String, Object>> executeWriteQuery(String query, List<Object> parameters) {
+        getReplicaRouter().recordWrite();
+        try {
+            return executeQuery(openConnection(), query, parameters);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    default List<Map<String, Object>> executeQuery(Connection openedConnection, String query, List<Object> parameters)
+            throws SQLException {
+        if (openedConnection == null) {
+            throw new DatabaseUnavailableException("No database connection for " + getConnectionConfigPath());
+        }
         List<Map<String, Object>> resultListOfMaps = new ArrayList<>();
-        try (Connection connection = getConnection();
+        try (Connection connection = openedConnection;
              PreparedStatement statement = createPreparedStatement(connection, query, parameters)
         ){
-            ResultSet resultSet = statement.executeQuery();
+            ResultSet resultSet = executeStatement(connection, statement::executeQuery);
             ResultSetMetaData metadata = resultSet.getMetaData();
             int numberOfColumns = metadata.getColumnCount();
             while (resultSet.next()) {
@@ -109,8 +419,6 @@ public interface Queryhandler {
                 }
                 resultListOfMaps.add(tempMap);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
         return resultListOfMaps;
     }
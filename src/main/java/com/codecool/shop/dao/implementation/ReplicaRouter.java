@@ -0,0 +1,261 @@
+package com.codecool.shop.dao.implementation;
+
+import com.codecool.shop.util.MetricsRegistry;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Chooses the database a {@link Queryhandler} reads from. Writes always go to the
+ * primary in db_url; reads are spread over the replicas in db_replica_urls, round
+ * robin or to the one with the fewest queries in flight (replica_routing). A session
+ * or thread that wrote keeps reading from the primary for replica_sticky_ms, so it
+ * sees its own writes even while the replicas lag behind.
+ */
+public class ReplicaRouter {
+
+    public static final int PRIMARY = -1;
+
+    private static final Map<String, ReplicaRouter> instancesByConfigPath = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Supplier<String>> session = new ThreadLocal<>();
+    private static final ThreadLocal<Long> threadStickyUntil = new ThreadLocal<>();
+
+    private final List<String> replicaUrls;
+    private final boolean leastLoaded;
+    private final long stickyNanos;
+    private final long downNanos;
+    private final AtomicInteger[] inFlight;
+    private final AtomicLongArray downUntil;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<String, Long> sessionStickyUntil = new ConcurrentHashMap<>();
+
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong stickyReads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+
+    public static ReplicaRouter getInstance(String connectionConfigPath) {
+        return instancesByConfigPath.computeIfAbsent(connectionConfigPath, path -> {
+            Properties properties = new Properties();
+            try (FileInputStream in = new FileInputStream(path)) {
+                properties.load(in);
+            } catch (IOException e) {
+                // getConnection reports the missing file; without it there is nothing to route
+            }
+            ReplicaRouter router = new ReplicaRouter(properties);
+            if (!router.replicaUrls.isEmpty()) {
+                MetricsRegistry.getInstance().register("db.routing", router::getMetrics);
+            }
+            return router;
+        });
+    }
+
+    public ReplicaRouter(Properties properties) {
+        replicaUrls = new ArrayList<>();
+        String urls = properties.getProperty("db_replica_urls", "");
+        for (String url : urls.split(",")) {
+            if (!url.trim().isEmpty()) {
+                replicaUrls.add(url.trim());
+            }
+        }
+        leastLoaded = "least_loaded".equals(properties.getProperty("replica_routing", "round_robin"));
+        stickyNanos = Long.parseLong(properties.getProperty("replica_sticky_ms", "5000")) * 1_000_000L;
+        downNanos = Long.parseLong(properties.getProperty("replica_retry_ms", "10000")) * 1_000_000L;
+        inFlight = new AtomicInteger[replicaUrls.size()];
+        for (int i = 0; i < inFlight.length; i++) {
+            inFlight[i] = new AtomicInteger();
+        }
+        downUntil = new AtomicLongArray(replicaUrls.size());
+    }
+
+    /**
+     * Ties the reads and writes of the current thread to a session, whose id is only
+     * looked up when needed, as a request may not have a session until it writes.
+     * Starts a new task on this thread, so the stickiness of an earlier one is dropped.
+     */
+    public static void bindSession(Supplier<String> sessionId) {
+        threadStickyUntil.remove();
+        if (sessionId == null) {
+            session.remove();
+        } else {
+            session.set(sessionId);
+        }
+    }
+
+    /**
+     * Ends the task on this thread, including the stickiness of a write it made
+     * without a session, so the next task of a pooled thread does not inherit it.
+     */
+    public static void unbindSession() {
+        session.remove();
+        threadStickyUntil.remove();
+    }
+
+    /**
+     * The session bound to the current thread, to carry it over to another thread.
+     */
+    public static Supplier<String> boundSession() {
+        return session.get();
+    }
+
+    /**
+     * Picks the database for the next read and counts it as in flight until
+     * {@link #release(int)}. Returns a replica index or {@link #PRIMARY}.
+     */
+    public int acquire() {
+        if (replicaUrls.isEmpty()) {
+            primaryReads.incrementAndGet();
+            return PRIMARY;
+        }
+        if (isSticky()) {
+            stickyReads.incrementAndGet();
+            return PRIMARY;
+        }
+        int replica = leastLoaded ? leastLoadedReplica() : nextReplica();
+        if (replica == PRIMARY) {
+            primaryReads.incrementAndGet();
+            return PRIMARY;
+        }
+        inFlight[replica].incrementAndGet();
+        replicaReads.incrementAndGet();
+        return replica;
+    }
+
+    public void release(int replica) {
+        if (replica != PRIMARY) {
+            inFlight[replica].decrementAndGet();
+        }
+    }
+
+    public String getUrl(int replica) {
+        return replicaUrls.get(replica);
+    }
+
+    /**
+     * Takes a replica out of rotation for replica_retry_ms after a failed connection.
+     */
+    public void markDown(int replica) {
+        downUntil.set(replica, System.nanoTime() + downNanos);
+        failovers.incrementAndGet();
+    }
+
+    /**
+     * Records a write to the primary; reads of the same session, or of this thread
+     * until its task is unbound when there is no session, stay on the primary for
+     * the sticky window.
+     */
+    public void recordWrite() {
+        writes.incrementAndGet();
+        if (replicaUrls.isEmpty()) {
+            return;
+        }
+        long until = System.nanoTime() + stickyNanos;
+        String sessionId = currentSessionId();
+        if (sessionId == null) {
+            threadStickyUntil.set(until);
+            return;
+        }
+        sessionStickyUntil.put(sessionId, until);
+        if (sessionStickyUntil.size() > 10_000) {
+            pruneSessions();
+        }
+    }
+
+    private boolean isSticky() {
+        long now = System.nanoTime();
+        Long threadUntil = threadStickyUntil.get();
+        if (threadUntil != null) {
+            if (threadUntil - now > 0) {
+                return true;
+            }
+            threadStickyUntil.remove();
+        }
+        String sessionId = currentSessionId();
+        if (sessionId == null) {
+            return false;
+        }
+        Long until = sessionStickyUntil.get(sessionId);
+        if (until == null) {
+            return false;
+        }
+        if (until - now > 0) {
+            return true;
+        }
+        sessionStickyUntil.remove(sessionId, until);
+        return false;
+    }
+
+    private static String currentSessionId() {
+        Supplier<String> sessionId = session.get();
+        return sessionId == null ? null : sessionId.get();
+    }
+
+    private void pruneSessions() {
+        long now = System.nanoTime();
+        for (Iterator<Long> iterator = sessionStickyUntil.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next() - now <= 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private boolean isUp(int replica, long now) {
+        long until = downUntil.get(replica);
+        return until == 0 || until - now <= 0;
+    }
+
+    private int nextReplica() {
+        long now = System.nanoTime();
+        int start = Math.floorMod(next.getAndIncrement(), replicaUrls.size());
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            int replica = (start + i) % replicaUrls.size();
+            if (isUp(replica, now)) {
+                return replica;
+            }
+        }
+        return PRIMARY;
+    }
+
+    private int leastLoadedReplica() {
+        long now = System.nanoTime();
+        int start = Math.floorMod(next.getAndIncrement(), replicaUrls.size());
+        int best = PRIMARY;
+        int bestLoad = Integer.MAX_VALUE;
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            int replica = (start + i) % replicaUrls.size();
+            int load = inFlight[replica].get();
+            if (load < bestLoad && isUp(replica, now)) {
+                best = replica;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("reads.primary", primaryReads.get());
+        metrics.put("reads.replica", replicaReads.get());
+        metrics.put("reads.sticky", stickyReads.get());
+        metrics.put("writes", writes.get());
+        metrics.put("failovers", failovers.get());
+        long inFlightTotal = 0;
+        for (AtomicInteger count : inFlight) {
+            inFlightTotal += count.get();
+        }
+        metrics.put("replica.inflight", inFlightTotal);
+        return metrics;
+    }
+}
@@ -0,0 +1,156 @@
+package com.codecool.shop.dao.implementation;
+
+import com.codecool.shop.util.MetricsRegistry;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timeouts, retries and circuit breakers of the data sources of one connection
+ * config. Transient failures (lost connections, serialization failures, deadlocks,
+ * a restarting server) are retried up to db_retry_attempts times with exponential
+ * backoff and full jitter; every data source address has its own breaker.
+ */
+public class ResiliencePolicy {
+
+    public interface Attempt<T> {
+        T run() throws SQLException;
+    }
+
+    private static final Map<String, ResiliencePolicy> instancesByConfigPath = new ConcurrentHashMap<>();
+
+    private final int connectTimeoutSeconds;
+    private final int socketTimeoutSeconds;
+    private final int queryTimeoutSeconds;
+    private final int retryAttempts;
+    private final long retryBaseMillis;
+    private final long retryMaxMillis;
+    private final int breakerFailures;
+    private final long breakerOpenMillis;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong retriesExhausted = new AtomicLong();
+
+    public static ResiliencePolicy getInstance(String connectionConfigPath) {
+        return instancesByConfigPath.computeIfAbsent(connectionConfigPath, path -> {
+            Properties properties = new Properties();
+            try (FileInputStream in = new FileInputStream(path)) {
+                properties.load(in);
+            } catch (IOException e) {
+                // getConnection reports the missing file; the defaults apply meanwhile
+            }
+            ResiliencePolicy policy = new ResiliencePolicy(properties);
+            MetricsRegistry.getInstance().register("db.resilience", policy::getMetrics);
+            return policy;
+        });
+    }
+
+    public ResiliencePolicy(Properties properties) {
+        connectTimeoutSeconds = Integer.parseInt(properties.getProperty("db_connect_timeout_seconds", "3"));
+        socketTimeoutSeconds = Integer.parseInt(properties.getProperty("db_socket_timeout_seconds", "30"));
+        queryTimeoutSeconds = Integer.parseInt(properties.getProperty("db_query_timeout_seconds", "10"));
+        retryAttempts = Integer.parseInt(properties.getProperty("db_retry_attempts", "3"));
+        retryBaseMillis = Long.parseLong(properties.getProperty("db_retry_base_ms", "50"));
+        retryMaxMillis = Long.parseLong(properties.getProperty("db_retry_max_ms", "1000"));
+        breakerFailures = Integer.parseInt(properties.getProperty("db_breaker_failures", "5"));
+        breakerOpenMillis = Long.parseLong(properties.getProperty("db_breaker_open_ms", "5000"));
+    }
+
+    public CircuitBreaker breaker(String address) {
+        return breakers.computeIfAbsent(address, key -> new CircuitBreaker(breakerFailures, breakerOpenMillis));
+    }
+
+    /**
+     * Adds the connect and socket timeouts of the driver to the connection properties.
+     */
+    public void applyTimeouts(Properties jdbcProperties) {
+        jdbcProperties.setProperty("connectTimeout", String.valueOf(connectTimeoutSeconds));
+        jdbcProperties.setProperty("loginTimeout", String.valueOf(connectTimeoutSeconds));
+        jdbcProperties.setProperty("socketTimeout", String.valueOf(socketTimeoutSeconds));
+    }
+
+    public int getQueryTimeoutSeconds() {
+        return queryTimeoutSeconds;
+    }
+
+    /**
+     * Runs attempt, running it again after a backoff while it fails transiently.
+     * Only for work that is safe to repeat.
+     */
+    public <T> T retry(Attempt<T> attempt) throws SQLException {
+        for (int tries = 1; ; tries++) {
+            try {
+                return attempt.run();
+            } catch (SQLException e) {
+                if (!isTransient(e)) {
+                    throw e;
+                }
+                if (tries >= retryAttempts) {
+                    retriesExhausted.incrementAndGet();
+                    throw e;
+                }
+                retries.incrementAndGet();
+                try {
+                    Thread.sleep(backoffMillis(tries));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    long backoffMillis(int tries) {
+        long ceiling = Math.min(retryMaxMillis, retryBaseMillis << Math.min(tries - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    public static boolean isTransient(SQLException e) {
+        if (e instanceof SQLTransientException || e instanceof SQLRecoverableException) {
+            return true;
+        }
+        String state = e.getSQLState();
+        if (state == null) {
+            return false;
+        }
+        return state.startsWith("08")           // connection exception
+                || "40001".equals(state)        // serialization failure
+                || "40P01".equals(state)        // deadlock detected
+                || "57P01".equals(state)        // admin shutdown
+                || "57P03".equals(state)        // cannot connect now
+                || "53300".equals(state);       // too many connections
+    }
+
+    public static boolean isStatementTimeout(SQLException e) {
+        return "57014".equals(e.getSQLState());    // query canceled
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("retries", retries.get());
+        metrics.put("retries.exhausted", retriesExhausted.get());
+        long open = 0;
+        for (Map.Entry<String, CircuitBreaker> breaker : breakers.entrySet()) {
+            Map<String, Long> breakerMetrics = breaker.getValue().getMetrics();
+            for (Map.Entry<String, Long> value : breakerMetrics.entrySet()) {
+                metrics.merge("breaker." + value.getKey(), value.getValue(), Long::sum);
+            }
+            if (breaker.getValue().getState() != CircuitBreaker.State.CLOSED) {
+                open++;
+            }
+        }
+        metrics.remove("breaker.state");
+        metrics.put("breakers.notClosed", open);
+        return metrics;
+    }
+}
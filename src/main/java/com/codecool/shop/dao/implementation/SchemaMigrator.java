@@ -0,0 +1,159 @@
+package com.codecool.shop.dao.implementation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Applies the versioned scripts of a migration directory (V1__name.sql, V2__...) that
+ * the database has not seen yet and records them in schema_migrations, all in one
+ * transaction, as PostgreSQL DDL is transactional. Nodes starting at the same time
+ * wait for each other on an advisory lock. A recorded script that has since been
+ * edited stops the migration.
+ */
+public class SchemaMigrator implements Queryhandler {
+
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+    private static final long LOCK_KEY = 0x43435348L;
+
+    private final String connectionConfigPath;
+    private final Path migrationDirectory;
+
+    public static class Migration {
+        private final int version;
+        private final String description;
+        private final String script;
+        private final String checksum;
+
+        Migration(int version, String description, String script) {
+            this.version = version;
+            this.description = description;
+            this.script = script;
+            this.checksum = sha256(script);
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+    }
+
+    public SchemaMigrator(String connectionConfigPath, Path migrationDirectory) {
+        this.connectionConfigPath = connectionConfigPath;
+        this.migrationDirectory = migrationDirectory;
+    }
+
+    public SchemaMigrator() {
+        this("src/main/resources/connection.properties", Paths.get("src/main/sql/migration"));
+    }
+
+    /**
+     * Returns the versions applied by this call, in order.
+     */
+    public List<Integer> migrate() throws SQLException, IOException {
+        List<Migration> migrations = load(migrationDirectory);
+        List<Integer> applied = new ArrayList<>();
+        inTransaction(() -> {
+            // held until commit, so a second node waits and then sees the recorded versions
+            executeSelectQuery("SELECT pg_advisory_xact_lock(" + LOCK_KEY + ");");
+            execute("CREATE TABLE IF NOT EXISTS schema_migrations (" +
+                    "version INT PRIMARY KEY, description TEXT NOT NULL, checksum TEXT NOT NULL, " +
+                    "applied_at TIMESTAMP NOT NULL DEFAULT now());");
+            Map<Integer, String> checksums = new HashMap<>();
+            for (Map<String, Object> row : executeSelectQuery("SELECT version, checksum FROM schema_migrations;")) {
+                checksums.put((Integer) row.get("version"), (String) row.get("checksum"));
+            }
+            for (Migration migration : migrations) {
+                String recorded = checksums.get(migration.version);
+                if (recorded == null) {
+                    execute(migration.script);
+                    List<Object> parameters = new ArrayList<>();
+                    parameters.add(migration.version);
+                    parameters.add(migration.description);
+                    parameters.add(migration.checksum);
+                    executeDMLQuery("INSERT INTO schema_migrations (version, description, checksum) VALUES (?, ?, ?);",
+                            parameters);
+                    applied.add(migration.version);
+                } else if (!recorded.equals(migration.checksum)) {
+                    throw new IllegalStateException("Migration V" + migration.version + " was changed after it had been applied.");
+                }
+            }
+            return null;
+        });
+        return applied;
+    }
+
+    private void execute(String script) throws SQLException {
+        Connection connection = getConnection();
+        if (connection == null) {
+            throw new SQLException("No database connection for " + connectionConfigPath, "08001");
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(script);
+        }
+    }
+
+    /**
+     * Reads the migrations of a directory ordered by version.
+     */
+    public static List<Migration> load(Path directory) throws IOException {
+        List<Migration> migrations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.sql")) {
+            for (Path file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (!matcher.matches()) {
+                    throw new IllegalArgumentException("Migration file name must look like V1__description.sql: " + file);
+                }
+                String script = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                migrations.add(new Migration(Integer.parseInt(matcher.group(1)), matcher.group(2).replace('_', ' '), script));
+            }
+        }
+        migrations.sort(Comparator.comparingInt(Migration::getVersion));
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).version == migrations.get(i - 1).version) {
+                throw new IllegalArgumentException("Two migrations with version " + migrations.get(i).version);
+            }
+        }
+        return migrations;
+    }
+
+    private static String sha256(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(script.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String getConnectionConfigPath() {
+        return connectionConfigPath;
+    }
+}
@@ -0,0 +1,102 @@
+package com.codecool.shop.dao.implementation;
+
+import com.codecool.shop.dao.StockDao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class StockDaoDB implements StockDao, Queryhandler {
+
+    private String connectionConfigPath = "src/main/resources/connection.properties";
+    private static StockDaoDB instance = null;
+
+    public static StockDaoDB getInstance() {
+        if (instance == null) {
+            instance = new StockDaoDB();
+        }
+        return instance;
+    }
+
+    public StockDaoDB(String connectionConfigPath) {
+        this.connectionConfigPath = connectionConfigPath;
+    }
+
+    public StockDaoDB() {
+    }
+
+    @Override
+    public Map<Integer, Integer> getAll() {
+        String query = "SELECT product_id, quantity FROM stock;";
+        Map<Integer, Integer> quantities = new HashMap<>();
+        for (Map<String, Object> row : executeSelectQuery(query)) {
+            quantities.put((Integer) row.get("product_id"), (Integer) row.get("quantity"));
+        }
+        return quantities;
+    }
+
+    @Override
+    public void addAll(Map<Integer, Integer> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        // relative to the stored row, so sales on other nodes are not overwritten; a cut
+        // below what they already sold empties the row instead of failing the batch forever
+        String query = "INSERT INTO stock (product_id, quantity) VALUES (?, ?) " +
+                "ON CONFLICT (product_id) DO UPDATE SET quantity = GREATEST(stock.quantity + EXCLUDED.quantity, 0);";
+        List<List<Object>> batch = new ArrayList<>(changes.size());
+        for (Map.Entry<Integer, Integer> entry : changes.entrySet()) {
+            List<Object> parameters = new ArrayList<>();
+            parameters.add(entry.getKey());
+            parameters.add(entry.getValue());
+            batch.add(parameters);
+        }
+        if (executeBatchDMLQuery(query, batch) == null) {
+            throw new IllegalStateException("Could not save stock of " + changes.size() + " products.");
+        }
+    }
+
+    @Override
+    public boolean sell(Map<Integer, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return true;
+        }
+        String query = "UPDATE stock SET quantity = quantity - ? WHERE product_id = ? AND quantity >= ?;";
+        List<Integer> soldOut = new ArrayList<>();
+        try {
+            inTransaction(() -> {
+                // in id order, so two carts with the same products can not deadlock
+                for (Map.Entry<Integer, Integer> entry : new TreeMap<>(quantities).entrySet()) {
+                    Integer updated = executeDMLQuery(query,
+                            Arrays.asList(entry.getValue(), entry.getKey(), entry.getValue()));
+                    if (updated != null && updated == 0) {
+                        soldOut.add(entry.getKey());
+                        throw new SQLException("Product " + entry.getKey() + " is sold out");
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            if (!soldOut.isEmpty()) {
+                return false;
+            }
+            throw transactionFailed(e);
+        }
+        return true;
+    }
+
+    @Override
+    public void removeAll() {
+        String query = "DELETE FROM stock;";
+        executeDMLQuery(query);
+    }
+
+    @Override
+    public String getConnectionConfigPath() {
+        return connectionConfigPath;
+    }
+}
@@ -1,21 +1,28 @@
 package com.codecool.shop.dao.implementation;
 
+import com.codecool.shop.cache.CacheInvalidationBus;
+import com.codecool.shop.cache.InvalidationEvent;
 import com.codecool.shop.dao.SupplierDao;
 import com.codecool.shop.model.Product;
 import com.codecool.shop.model.Supplier;
+import com.codecool.shop.service.ProductQuery;
 
-import javax.xml.transform.Result;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class SupplierDaoDB implements SupplierDao, Queryhandler {
-    private String connection_config_path = "src/main/resources/connection.properties";
+    private static final String DEFAULT_CONNECTION_CONFIG_PATH = "src/main/resources/connection.properties";
+    private String connection_config_path = DEFAULT_CONNECTION_CONFIG_PATH;
     private static SupplierDaoDB instance = null;
+    private static final Map<String, SupplierDaoDB> instancesByConfigPath = new ConcurrentHashMap<>();
+
+    private volatile CacheView cacheView = new CacheView(false);
 
     public SupplierDaoDB(String connection_config_path) {
         this.connection_config_path = connection_config_path;
@@ -31,46 +38,88 @@ public class SupplierDaoDB implements SupplierDao, Queryhandler {
         return instance;
     }
 
+    public static SupplierDaoDB getInstance(String connectionConfigPath) {
+        if (DEFAULT_CONNECTION_CONFIG_PATH.equals(connectionConfigPath)) {
+            return getInstance();
+        }
+        return instancesByConfigPath.computeIfAbsent(connectionConfigPath, SupplierDaoDB::new);
+    }
+
     @Override
     public void add(Supplier supplier) {
         if (supplier == null) {
             throw new IllegalArgumentException();
         }
-        String query = "INSERT INTO suppliers (name, description) VALUES (?, ?)";
+        String query = "INSERT INTO suppliers (name, description) VALUES (?, ?) RETURNING id";
         List<Object> parameters = Stream.of(supplier.getName(), supplier.getDescription()).collect(Collectors.toList());
-        executeDMLQuery(query, parameters);
+        List<Map<String, Object>> result = executeWriteQuery(query, parameters);
+        if (result.size() == 1) {
+            supplier.setId((Integer) result.get(0).get("id"));
+            afterCommit(() -> {
+                cache(supplier);
+                CacheInvalidationBus.getInstance().publish(InvalidationEvent.EntityType.SUPPLIER, supplier.getId());
+            });
+        }
     }
 
     @Override
     public Supplier find(int id) {
+        CacheView view = loadedCache();
+        Supplier cached = view.byId.get(id);
+        if (cached != null || isAuthoritative(view)) {
+            return cached;
+        }
+        return fetch(id);
+    }
+
+    private Supplier fetch(int id) {
         String query = "SELECT * FROM suppliers WHERE id = ?";
         List<Object> parameters = Stream.of(id).collect(Collectors.toList());
-        List<Map<String, Object>> result = executeSelectQuery(query, parameters);
+        List<Map<String, Object>> result = executePrimarySelectQuery(query, parameters);
         if(result.size() == 0) {
             return null;
         }
-        Supplier supplier = new Supplier((String) result.get(0).get("name"), (String) result.get(0).get("description"));
-        supplier.setId((Integer) result.get(0).get("id"));
-        return supplier;
+        return cacheCommitted(buildSupplier(result.get(0)));
     }
 
     @Override
     public void remove(int id) {
         String query = "DELETE FROM suppliers WHERE id = ?";
         List<Object> parameters = Stream.of(id).collect(Collectors.toList());
-        executeDMLQuery(query, parameters);
+        Integer removed = executeDMLQuery(query, parameters);
+        if (removed == null || removed == 0) {
+            // failed or nothing to remove, the cache still matches the table
+            return;
+        }
+        afterCommit(() -> {
+            evict(id);
+            CacheInvalidationBus.getInstance().publish(InvalidationEvent.EntityType.SUPPLIER, id);
+        });
     }
 
     @Override
     public Integer findIdByName(String name) {
-        String query = "SELECT * FROM suppliers WHERE name = ?";
+        Supplier supplier = findByName(name);
+        return supplier == null ? null : supplier.getId();
+    }
+
+    @Override
+    public Supplier findByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        CacheView view = loadedCache();
+        Supplier cached = view.byName.get(name);
+        if (cached != null || isAuthoritative(view)) {
+            return cached;
+        }
+        String query = "SELECT * FROM suppliers WHERE name = ? ORDER BY id";
         List<Object> parameters = Stream.of(name).collect(Collectors.toList());
-        List<Map<String, Object>> result = executeSelectQuery(query, parameters);
+        List<Map<String, Object>> result = executePrimarySelectQuery(query, parameters);
         if (result.size() == 0) {
             return null;
         }
-        Integer id = (Integer) result.get(0).get("id");
-        return id;
+        return cacheCommitted(buildSupplier(result.get(0)));
     }
 
     @Override
@@ -84,25 +133,22 @@ public class SupplierDaoDB implements SupplierDao, Queryhandler {
         if (supplier.toString().equals(getDefaultSupplier().toString())) {
             return products;
         }
-        List<Product> temp = new ArrayList<>();
-        for (Product product : products) {
-            if (product.getSupplier().toString().equals(supplier.toString())) {
-                temp.add(product);
-            }
-        }
-        return temp;
+        String wanted = supplier.toString();
+        return ProductQuery.filter(products, product -> product.getSupplier().toString().equals(wanted));
     }
 
     @Override
     public List<Supplier> getAll() {
-        String query = "SELECT * FROM suppliers;";
-        List<Supplier> allSupplierList = new ArrayList<>();
-        List<Map<String, Object>> result = executeSelectQuery(query);
-        for (Map<String, Object> row : result) {
-            Supplier supplier = new Supplier((String) row.get("name"), (String) row.get("description"));
-            supplier.setId((Integer) result.get(0).get("id"));
-            allSupplierList.add(supplier);
+        CacheView view = loadedCache();
+        if (!isAuthoritative(view)) {
+            List<Supplier> allSupplierList = new ArrayList<>();
+            for (Map<String, Object> row : executePrimarySelectQuery("SELECT * FROM suppliers ORDER BY id;", new ArrayList<>())) {
+                allSupplierList.add(cacheCommitted(buildSupplier(row)));
+            }
+            return allSupplierList;
         }
+        List<Supplier> allSupplierList = new ArrayList<>(view.byId.values());
+        allSupplierList.sort(Comparator.comparingInt(Supplier::getId));
         return allSupplierList;
     }
 
@@ -110,6 +156,134 @@ public class SupplierDaoDB implements SupplierDao, Queryhandler {
     public void removeAll() {
         String query = "DELETE FROM suppliers;";
         executeDMLQuery(query);
+        afterCommit(() -> {
+            cacheView = new CacheView(true);
+            CacheInvalidationBus.getInstance().publish(InvalidationEvent.EntityType.SUPPLIER, InvalidationEvent.ALL);
+        });
+    }
+
+    /**
+     * Loads every supplier with one query the first time the cache is used. Once
+     * loaded the cache is the complete table and a miss means there is no such
+     * supplier. Until then, e.g. after a failed load, lookups go to the database.
+     */
+    public void loadCache() {
+        loadedCache();
+    }
+
+    private CacheView loadedCache() {
+        CacheView view = cacheView;
+        if (view.loaded || UnitOfWork.current(connection_config_path) != null) {
+            // inside a transaction the table may hold rows that are not committed yet
+            return view;
+        }
+        synchronized (this) {
+            view = cacheView;
+            if (view.loaded) {
+                return view;
+            }
+            String query = "SELECT * FROM suppliers ORDER BY id;";
+            CacheView loaded = new CacheView(true);
+            try {
+                // the primary, so the complete table is not missing a row a replica lags behind on
+                for (Map<String, Object> row : withRetry(() -> executeQuery(getConnection(), query, new ArrayList<>()))) {
+                    loaded.put(buildSupplier(row));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return view;
+            }
+            cacheView = loaded;
+            return loaded;
+        }
+    }
+
+    /**
+     * Drops the cache by swapping in an empty one, so readers still holding the old
+     * one see every supplier until the next lookup loads the table again.
+     */
+    public synchronized void invalidateCache() {
+        cacheView = new CacheView(false);
+    }
+
+    /**
+     * Brings the cache in line with a change made by another node.
+     */
+    public void applyInvalidation(InvalidationEvent event) {
+        if (event.isAll()) {
+            invalidateCache();
+        } else {
+            evict(event.getId());
+            fetch(event.getId());
+        }
+    }
+
+    private Supplier buildSupplier(Map<String, Object> row) {
+        Supplier supplier = new Supplier((String) row.get("name"), (String) row.get("description"));
+        supplier.setId((Integer) row.get("id"));
+        return supplier;
+    }
+
+    /**
+     * Inside a transaction a miss may be a row the transaction added itself, so it
+     * is looked up in the database.
+     */
+    private boolean isAuthoritative(CacheView view) {
+        return view.loaded && UnitOfWork.current(connection_config_path) == null;
+    }
+
+    /**
+     * Caches a row read from the database, unless it was read inside a transaction
+     * that may still roll back.
+     */
+    private Supplier cacheCommitted(Supplier supplier) {
+        return UnitOfWork.current(connection_config_path) == null ? cache(supplier) : supplier;
+    }
+
+    private synchronized Supplier cache(Supplier supplier) {
+        return cacheView.put(supplier);
+    }
+
+    private synchronized void evict(int id) {
+        cacheView.remove(id);
+    }
+
+    /**
+     * The cached suppliers by id and name. Invalidation replaces the whole view
+     * instead of clearing it; single rows are added and removed in place.
+     */
+    private static final class CacheView {
+        private final Map<Integer, Supplier> byId = new ConcurrentHashMap<>();
+        private final Map<String, Supplier> byName = new ConcurrentHashMap<>();
+        private final boolean loaded;
+
+        private CacheView(boolean loaded) {
+            this.loaded = loaded;
+        }
+
+        private Supplier put(Supplier supplier) {
+            Supplier canonical = byId.get(supplier.getId());
+            if (canonical != null) {
+                return canonical;
+            }
+            byId.put(supplier.getId(), supplier);
+            if (supplier.getName() != null) {
+                byName.putIfAbsent(supplier.getName(), supplier);
+            }
+            return supplier;
+        }
+
+        private void remove(int id) {
+            Supplier removed = byId.remove(id);
+            if (removed != null && removed.getName() != null) {
+                byName.remove(removed.getName(), removed);
+                for (Supplier other : byId.values()) {
+                    if (removed.getName().equals(other.getName())) {
+                        byName.putIfAbsent(other.getName(), other);
+                    }
+                }
+            }
+        }
     }
 
     @Override
@@ -3,13 +3,14 @@ package com.codecool.shop.dao.implementation;
 import com.codecool.shop.dao.SupplierDao;
 import com.codecool.shop.model.Product;
 import com.codecool.shop.model.Supplier;
+import com.codecool.shop.service.ProductQuery;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class SupplierDaoMem implements SupplierDao {
 
-    private List<Supplier> data = new ArrayList<>();
+    private volatile List<Supplier> data = new ArrayList<>();
     private static SupplierDaoMem instance = null;
     private Supplier defaultSupplier;
 
@@ -47,6 +48,14 @@ public class SupplierDaoMem implements SupplierDao {
         data.clear();
     }
 
+    /**
+     * Replaces the contents with suppliers that already have their ids, e.g. from a
+     * catalog snapshot.
+     */
+    public void replaceAll(List<Supplier> suppliers) {
+        data = new ArrayList<>(suppliers);
+    }
+
     @Override
     public List<Supplier> getAll() {
         return data;
@@ -62,6 +71,16 @@ public class SupplierDaoMem implements SupplierDao {
         return null;
     }
 
+    @Override
+    public Supplier findByName(String name) {
+        for (Supplier supp : data) {
+            if (supp.getName().equals(name)) {
+                return supp;
+            }
+        }
+        return null;
+    }
+
     @Override
     public Supplier getDefaultSupplier(){
         return defaultSupplier;
@@ -72,12 +91,6 @@ public class SupplierDaoMem implements SupplierDao {
         if (supplier.equals(defaultSupplier)) {
             return products;
         }
-        List<Product> temp = new ArrayList<>();
-        for (Product product : products) {
-            if (product.getSupplier().equals(supplier)) {
-                temp.add(product);
-            }
-        }
-        return temp;
+        return ProductQuery.filter(products, product -> product.getSupplier().equals(supplier));
     }
 }
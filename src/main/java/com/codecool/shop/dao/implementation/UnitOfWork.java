@@ -0,0 +1,178 @@
+package com.codecool.shop.dao.implementation;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One database transaction bound to the current thread for a connection config.
+ * While it is open every {@link Queryhandler} of that config runs on its single
+ * connection, whose close, commit and autocommit calls are ignored; deferred writes
+ * are sent as batches just before the one commit at the end of the outermost scope.
+ * A statement that fails marks the transaction for rollback.
+ */
+public class UnitOfWork {
+
+    public interface Work<T> {
+        T run() throws SQLException;
+    }
+
+    private static final ThreadLocal<Map<String, UnitOfWork>> current = ThreadLocal.withInitial(HashMap::new);
+
+    private final Connection connection;
+    private final Connection scopedConnection;
+    private final LinkedHashMap<String, List<List<Object>>> deferred = new LinkedHashMap<>();
+    private final List<Runnable> afterCommit = new ArrayList<>();
+    private final List<Runnable> afterRollback = new ArrayList<>();
+    private boolean rollbackOnly;
+
+    private UnitOfWork(Connection connection) {
+        this.connection = connection;
+        this.scopedConnection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ScopedConnection());
+    }
+
+    public static UnitOfWork current(String connectionConfigPath) {
+        return current.get().get(connectionConfigPath);
+    }
+
+    /**
+     * Runs work in a transaction of the queryhandler's config. Joins the transaction
+     * already open on this thread, so only the outermost scope commits.
+     */
+    static <T> T run(Queryhandler queryhandler, Work<T> work) throws SQLException {
+        String configPath = queryhandler.getConnectionConfigPath();
+        if (current(configPath) != null) {
+            return work.run();
+        }
+        Connection connection = queryhandler.getConnection();
+        if (connection == null) {
+            throw new SQLException("No database connection for " + configPath, "08001");
+        }
+        UnitOfWork unitOfWork = new UnitOfWork(connection);
+        current.get().put(configPath, unitOfWork);
+        boolean committed = false;
+        try {
+            connection.setAutoCommit(false);
+            T result = work.run();
+            unitOfWork.flush();
+            if (unitOfWork.rollbackOnly) {
+                throw new SQLException("A statement failed, the transaction was rolled back");
+            }
+            connection.commit();
+            committed = true;
+            return result;
+        } finally {
+            current.get().remove(configPath);
+            try {
+                if (!committed) {
+                    connection.rollback();
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            for (Runnable action : committed ? unitOfWork.afterCommit : unitOfWork.afterRollback) {
+                action.run();
+            }
+        }
+    }
+
+    Connection getConnection() {
+        return scopedConnection;
+    }
+
+    void defer(String query, List<Object> parameters) {
+        deferred.computeIfAbsent(query, key -> new ArrayList<>()).add(parameters);
+    }
+
+    void afterCommit(Runnable action) {
+        afterCommit.add(action);
+    }
+
+    void afterRollback(Runnable action) {
+        afterRollback.add(action);
+    }
+
+    public boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    private void flush() throws SQLException {
+        try {
+            for (Map.Entry<String, List<List<Object>>> batch : deferred.entrySet()) {
+                try (PreparedStatement statement = connection.prepareStatement(batch.getKey())) {
+                    for (List<Object> parameters : batch.getValue()) {
+                        int index = 1;
+                        for (Object parameter : parameters) {
+                            statement.setObject(index, parameter);
+                            index++;
+                        }
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+        } finally {
+            deferred.clear();
+        }
+    }
+
+    private Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                rollbackOnly = true;
+            }
+            throw e.getCause();
+        }
+    }
+
+    private class ScopedConnection implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                case "commit":
+                case "setAutoCommit":
+                    return null;
+                case "rollback":
+                    if (args == null) {
+                        rollbackOnly = true;
+                        return null;
+                    }
+                    break;
+                case "isClosed":
+                    return connection.isClosed();
+                default:
+                    break;
+            }
+            Object result = UnitOfWork.this.invoke(connection, method, args);
+            if (result instanceof Statement) {
+                Class<?> type = result instanceof CallableStatement ? CallableStatement.class
+                        : result instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{type},
+                        (statementProxy, statementMethod, statementArgs) ->
+                                UnitOfWork.this.invoke(result, statementMethod, statementArgs));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.codecool.shop.filter;
+
+import com.codecool.shop.config.ServerConfig;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admits requests through the {@link AdmissionController} and answers 503 with
+ * Retry-After when the request's traffic class is at its limit. Permits of async
+ * requests are released when the async processing completes.
+ */
+public class AdmissionControlFilter implements Filter {
+
+    private AdmissionController admissionController;
+    private int retryAfterSeconds;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        admissionController = AdmissionController.getInstance();
+        retryAfterSeconds = ServerConfig.getInstance().getInt("retry_after_seconds", 2);
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/static/") || path.startsWith("/assets/") || path.startsWith("/images/")) {
+            chain.doFilter(req, resp);
+            return;
+        }
+
+        RequestPriority priority = RequestPriority.of(request);
+        if (!admissionController.tryAcquire(priority)) {
+            HttpServletResponse response = (HttpServletResponse) resp;
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+            response.setContentType("text/plain");
+            response.getWriter().print("The shop is busy, please try again shortly.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean(false);
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                admissionController.release(priority, System.nanoTime() - start);
+            }
+        };
+        AsyncListener asyncRelease = new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                release.run();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                release.run();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                release.run();
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        };
+        HttpServletRequest wrapped = new HttpServletRequestWrapper(request) {
+            @Override
+            public AsyncContext startAsync() throws IllegalStateException {
+                AsyncContext asyncContext = super.startAsync();
+                asyncContext.addListener(asyncRelease);
+                return asyncContext;
+            }
+
+            @Override
+            public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse)
+                    throws IllegalStateException {
+                AsyncContext asyncContext = super.startAsync(servletRequest, servletResponse);
+                asyncContext.addListener(asyncRelease);
+                return asyncContext;
+            }
+        };
+
+        try {
+            chain.doFilter(wrapped, resp);
+        } finally {
+            if (!request.isAsyncStarted()) {
+                release.run();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
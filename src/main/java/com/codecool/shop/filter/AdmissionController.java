@@ -0,0 +1,138 @@
+package com.codecool.shop.filter;
+
+import com.codecool.shop.config.ServerConfig;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrency limits per {@link RequestPriority}. Every finished request reports its
+ * latency: a request slower than its class target shrinks the limit of the least
+ * important class that can still shrink, but never one more important than its
+ * own; a fast one grows its own class again. So when checkout slows down, browsing
+ * is throttled first and checkout last, and slow browsing never throttles checkout.
+ */
+public class AdmissionController {
+
+    private static AdmissionController instance = null;
+
+    private final Limiter[] limiters = new Limiter[RequestPriority.values().length];
+
+    public static synchronized AdmissionController getInstance() {
+        if (instance == null) {
+            ServerConfig config = ServerConfig.getInstance();
+            instance = new AdmissionController();
+            for (RequestPriority priority : RequestPriority.values()) {
+                String prefix = "admission_" + priority.name().toLowerCase();
+                instance.configure(priority,
+                        config.getInt(prefix + "_min", 4),
+                        config.getInt(prefix + "_max", 32),
+                        config.getLong(prefix + "_target_ms", 300));
+            }
+        }
+        return instance;
+    }
+
+    public AdmissionController() {
+        for (RequestPriority priority : RequestPriority.values()) {
+            limiters[priority.ordinal()] = new Limiter(4, 32, 300);
+        }
+    }
+
+    public void configure(RequestPriority priority, int minLimit, int maxLimit, long targetLatencyMillis) {
+        limiters[priority.ordinal()] = new Limiter(minLimit, maxLimit, targetLatencyMillis);
+    }
+
+    public boolean tryAcquire(RequestPriority priority) {
+        Limiter limiter = limiters[priority.ordinal()];
+        while (true) {
+            int current = limiter.inFlight.get();
+            if (current >= limiter.getLimit()) {
+                limiter.rejected.incrementAndGet();
+                return false;
+            }
+            if (limiter.inFlight.compareAndSet(current, current + 1)) {
+                limiter.admitted.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    public void release(RequestPriority priority, long latencyNanos) {
+        Limiter limiter = limiters[priority.ordinal()];
+        limiter.inFlight.decrementAndGet();
+        long latencyMillis = latencyNanos / 1_000_000;
+        limiter.recordLatency(latencyMillis);
+        if (latencyMillis > limiter.targetLatencyMillis) {
+            shedLowestPriority(priority);
+        } else {
+            limiter.increase();
+        }
+    }
+
+    private void shedLowestPriority(RequestPriority slowest) {
+        for (int i = limiters.length - 1; i >= slowest.ordinal(); i--) {
+            if (limiters[i].decrease()) {
+                return;
+            }
+        }
+    }
+
+    public int getLimit(RequestPriority priority) {
+        return limiters[priority.ordinal()].getLimit();
+    }
+
+    public int getInFlight(RequestPriority priority) {
+        return limiters[priority.ordinal()].inFlight.get();
+    }
+
+    public long getAdmitted(RequestPriority priority) {
+        return limiters[priority.ordinal()].admitted.get();
+    }
+
+    public long getRejected(RequestPriority priority) {
+        return limiters[priority.ordinal()].rejected.get();
+    }
+
+    public long getAverageLatencyMillis(RequestPriority priority) {
+        return limiters[priority.ordinal()].averageLatencyMillis;
+    }
+
+    private static class Limiter {
+        private final int minLimit;
+        private final int maxLimit;
+        private final long targetLatencyMillis;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private volatile double limit;
+        private volatile long averageLatencyMillis;
+
+        private Limiter(int minLimit, int maxLimit, long targetLatencyMillis) {
+            this.minLimit = Math.max(1, minLimit);
+            this.maxLimit = Math.max(this.minLimit, maxLimit);
+            this.targetLatencyMillis = targetLatencyMillis;
+            this.limit = this.maxLimit;
+        }
+
+        private int getLimit() {
+            return (int) limit;
+        }
+
+        private synchronized void increase() {
+            limit = Math.min(maxLimit, limit + 1.0 / Math.max(1.0, limit));
+        }
+
+        private synchronized boolean decrease() {
+            if (limit <= minLimit) {
+                return false;
+            }
+            limit = Math.max(minLimit, limit * 0.9);
+            return true;
+        }
+
+        private void recordLatency(long latencyMillis) {
+            averageLatencyMillis = (averageLatencyMillis * 7 + latencyMillis) / 8;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.codecool.shop.filter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Holds back the first bytes of a response until it is clear whether compressing
+ * pays off, then either gzips everything as it is written or passes it through.
+ */
+class CompressingOutputStream extends ServletOutputStream {
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    interface Decision {
+        /**
+         * Called once the response turned out large enough; returns true to compress.
+         */
+        boolean startCompressing();
+
+        void passThrough(int contentLength);
+    }
+
+    private final ServletOutputStream out;
+    private final Decision decision;
+    private final DeflaterPool pool;
+    private final CompressionStats stats;
+    private final byte[] pending;
+    private int pendingLength;
+    private boolean decided;
+    private boolean passThrough;
+    private boolean finished;
+
+    private Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] deflated = new byte[8192];
+    private long bytesIn;
+    private long bytesOut;
+
+    CompressingOutputStream(ServletOutputStream out, Decision decision, DeflaterPool pool,
+                            CompressionStats stats, int minBytes) {
+        this.out = out;
+        this.decision = decision;
+        this.pool = pool;
+        this.stats = stats;
+        this.pending = new byte[minBytes];
+    }
+
+    /**
+     * Sends everything written so far uncompressed and stops compressing.
+     */
+    void passThrough() throws IOException {
+        if (decided) {
+            return;
+        }
+        decided = true;
+        passThrough = true;
+        out.write(pending, 0, pendingLength);
+        pendingLength = 0;
+    }
+
+    /**
+     * Forgets everything written so far, e.g. after the response was reset.
+     */
+    void reset() {
+        if (deflater != null) {
+            pool.release(deflater);
+            deflater = null;
+        }
+        crc.reset();
+        bytesIn = 0;
+        bytesOut = 0;
+        pendingLength = 0;
+        decided = false;
+        passThrough = false;
+    }
+
+    boolean isCompressing() {
+        return decided && !passThrough;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Response already finished");
+        }
+        if (!decided) {
+            if (pendingLength + len <= pending.length) {
+                System.arraycopy(b, off, pending, pendingLength, len);
+                pendingLength += len;
+                return;
+            }
+            decide();
+        }
+        if (passThrough) {
+            out.write(b, off, len);
+            return;
+        }
+        deflate(b, off, len);
+    }
+
+    private void decide() throws IOException {
+        decided = true;
+        if (!decision.startCompressing()) {
+            passThrough = true;
+            out.write(pending, 0, pendingLength);
+            pendingLength = 0;
+            return;
+        }
+        deflater = pool.borrow();
+        out.write(GZIP_HEADER);
+        bytesOut += GZIP_HEADER.length;
+        deflate(pending, 0, pendingLength);
+        pendingLength = 0;
+    }
+
+    private void deflate(byte[] b, int off, int len) throws IOException {
+        long start = cpuTime();
+        crc.update(b, off, len);
+        bytesIn += len;
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            writeDeflated(deflater.deflate(deflated, 0, deflated.length, Deflater.NO_FLUSH));
+        }
+        stats.addCpuNanos(cpuTime() - start);
+    }
+
+    private void writeDeflated(int length) throws IOException {
+        if (length > 0) {
+            out.write(deflated, 0, length);
+            bytesOut += length;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (isCompressing() && !finished) {
+            long start = cpuTime();
+            int length;
+            do {
+                length = deflater.deflate(deflated, 0, deflated.length, Deflater.SYNC_FLUSH);
+                writeDeflated(length);
+            } while (length == deflated.length);
+            stats.addCpuNanos(cpuTime() - start);
+        }
+        if (decided) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Completes the response body: writes a small response uncompressed with its
+     * length, or ends the gzip stream and returns the deflater to the pool.
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (!decided) {
+            decided = true;
+            passThrough = true;
+            decision.passThrough(pendingLength);
+            out.write(pending, 0, pendingLength);
+        }
+        if (passThrough) {
+            stats.skipped();
+            return;
+        }
+        try {
+            long start = cpuTime();
+            deflater.finish();
+            while (!deflater.finished()) {
+                writeDeflated(deflater.deflate(deflated, 0, deflated.length, Deflater.NO_FLUSH));
+            }
+            stats.addCpuNanos(cpuTime() - start);
+            byte[] trailer = new byte[8];
+            writeIntLE(trailer, 0, (int) crc.getValue());
+            writeIntLE(trailer, 4, (int) bytesIn);
+            out.write(trailer);
+            bytesOut += trailer.length;
+            stats.compressed(bytesIn, bytesOut);
+        } finally {
+            pool.release(deflater);
+            deflater = null;
+        }
+    }
+
+    /**
+     * Returns the deflater if the response ended without {@link #finish()}.
+     */
+    void abandon() {
+        finished = true;
+        if (deflater != null) {
+            pool.release(deflater);
+            deflater = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    @Override
+    public boolean isReady() {
+        return out.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+        out.setWriteListener(writeListener);
+    }
+
+    private static void writeIntLE(byte[] target, int offset, int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >> 8);
+        target[offset + 2] = (byte) (value >> 16);
+        target[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+}
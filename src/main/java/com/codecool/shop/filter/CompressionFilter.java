@@ -0,0 +1,403 @@
+package com.codecool.shop.filter;
+
+import com.codecool.shop.config.ServerConfig;
+import com.codecool.shop.util.MetricsRegistry;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Gzips text responses for clients that accept it. The first compression_min_bytes
+ * of a body are held back: shorter responses go out uncompressed with their length,
+ * longer ones are compressed as they are written, so the body is never buffered as
+ * a whole. Responses that already carry a Content-Encoding are left alone.
+ */
+public class CompressionFilter implements Filter {
+
+    private static final String[] COMPRESSIBLE_TYPES = {
+            "text/", "application/json", "application/javascript", "application/xml",
+            "application/x-ndjson", "image/svg+xml"
+    };
+
+    private static final CompressionStats stats = new CompressionStats();
+
+    private DeflaterPool pool;
+    private int minBytes;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        ServerConfig config = ServerConfig.getInstance();
+        minBytes = config.getInt("compression_min_bytes", 1024);
+        pool = new DeflaterPool(config.getInt("compression_pool_size", 32), config.getInt("compression_level", 6));
+        MetricsRegistry.getInstance().register("compression", stats::getMetrics);
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) resp;
+        if ("HEAD".equals(request.getMethod()) || !acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            chain.doFilter(req, resp);
+            return;
+        }
+
+        CompressingResponse compressing = new CompressingResponse(response, pool, minBytes);
+        HttpServletRequest wrapped = new HttpServletRequestWrapper(request) {
+            @Override
+            public AsyncContext startAsync() throws IllegalStateException {
+                return new FinishingAsyncContext(super.startAsync(), compressing);
+            }
+
+            @Override
+            public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse)
+                    throws IllegalStateException {
+                return new FinishingAsyncContext(super.startAsync(servletRequest, servletResponse), compressing);
+            }
+        };
+
+        boolean completed = false;
+        try {
+            chain.doFilter(wrapped, compressing);
+            completed = true;
+        } finally {
+            if (!request.isAsyncStarted()) {
+                if (completed) {
+                    compressing.finish();
+                } else {
+                    compressing.abandon();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        MetricsRegistry.getInstance().unregister("compression");
+    }
+
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (!"gzip".equals(name) && !"*".equals(name)) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim().toLowerCase(Locale.ROOT);
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        for (String compressible : COMPRESSIBLE_TYPES) {
+            if (type.startsWith(compressible)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decides per response whether to compress; lengths set by the servlet are held
+     * back until that decision is made.
+     */
+    static class CompressingResponse extends HttpServletResponseWrapper implements CompressingOutputStream.Decision {
+
+        private final DeflaterPool pool;
+        private final int minBytes;
+        private CompressingOutputStream stream;
+        private PrintWriter writer;
+        private long contentLength = -1;
+        private boolean passThrough;
+
+        CompressingResponse(HttpServletResponse response, DeflaterPool pool, int minBytes) {
+            super(response);
+            this.pool = pool;
+            this.minBytes = minBytes;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            return stream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (stream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        private CompressingOutputStream stream() throws IOException {
+            if (stream == null) {
+                stream = new CompressingOutputStream(getResponse().getOutputStream(), this, pool, stats, minBytes);
+                if (passThrough) {
+                    stream.passThrough();
+                }
+            }
+            return stream;
+        }
+
+        @Override
+        public boolean startCompressing() {
+            if (passThrough || !isCompressible(getContentType()) || getHeader("Content-Encoding") != null
+                    || getStatus() == SC_NO_CONTENT || getStatus() == SC_NOT_MODIFIED) {
+                passThrough(contentLength);
+                return false;
+            }
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            response.addHeader("Vary", "Accept-Encoding");
+            response.setHeader("Content-Encoding", "gzip");
+            return true;
+        }
+
+        @Override
+        public void passThrough(int contentLength) {
+            passThrough((long) contentLength);
+        }
+
+        private void passThrough(long length) {
+            passThrough = true;
+            if (isCompressible(getContentType())) {
+                ((HttpServletResponse) getResponse()).addHeader("Vary", "Accept-Encoding");
+            }
+            if (length >= 0) {
+                getResponse().setContentLengthLong(length);
+            }
+        }
+
+        private void skip() throws IOException {
+            if (!passThrough) {
+                passThrough(contentLength);
+                if (stream != null) {
+                    stream.passThrough();
+                }
+            }
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (passThrough) {
+                super.setContentLengthLong(len);
+                return;
+            }
+            contentLength = len;
+            if (len < minBytes) {
+                try {
+                    skip();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+                return;
+            }
+            super.setHeader(name, value);
+            passThroughIfEncoded(name);
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+                return;
+            }
+            super.addHeader(name, value);
+            passThroughIfEncoded(name);
+        }
+
+        private void passThroughIfEncoded(String name) {
+            if ("Content-Encoding".equalsIgnoreCase(name) && !isCompressing()) {
+                try {
+                    skip();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private boolean isCompressing() {
+            return stream != null && stream.isCompressing();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (stream != null) {
+                stream.flush();
+            } else {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (stream != null) {
+                stream.reset();
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            contentLength = -1;
+            passThrough = false;
+            if (stream != null) {
+                stream.reset();
+            }
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (stream != null) {
+                stream.finish();
+            }
+        }
+
+        void abandon() {
+            if (stream != null) {
+                stream.abandon();
+            }
+        }
+    }
+
+    /**
+     * Finishes the gzip stream before the container completes an async response;
+     * completion listeners run only after the output has been closed.
+     */
+    private static class FinishingAsyncContext implements AsyncContext {
+
+        private final AsyncContext delegate;
+        private final CompressingResponse response;
+
+        FinishingAsyncContext(AsyncContext delegate, CompressingResponse response) {
+            this.delegate = delegate;
+            this.response = response;
+        }
+
+        @Override
+        public void complete() {
+            try {
+                response.finish();
+            } catch (IOException e) {
+                e.printStackTrace();
+                response.abandon();
+            }
+            delegate.complete();
+        }
+
+        @Override
+        public ServletRequest getRequest() {
+            return delegate.getRequest();
+        }
+
+        @Override
+        public ServletResponse getResponse() {
+            return delegate.getResponse();
+        }
+
+        @Override
+        public boolean hasOriginalRequestAndResponse() {
+            return delegate.hasOriginalRequestAndResponse();
+        }
+
+        @Override
+        public void dispatch() {
+            delegate.dispatch();
+        }
+
+        @Override
+        public void dispatch(String path) {
+            delegate.dispatch(path);
+        }
+
+        @Override
+        public void dispatch(ServletContext context, String path) {
+            delegate.dispatch(context, path);
+        }
+
+        @Override
+        public void addListener(AsyncListener listener) {
+            delegate.addListener(listener);
+        }
+
+        @Override
+        public void addListener(AsyncListener listener, ServletRequest servletRequest, ServletResponse servletResponse) {
+            delegate.addListener(listener, servletRequest, servletResponse);
+        }
+
+        @Override
+        public <T extends AsyncListener> T createListener(Class<T> clazz) throws ServletException {
+            return delegate.createListener(clazz);
+        }
+
+        @Override
+        public void setTimeout(long timeout) {
+            delegate.setTimeout(timeout);
+        }
+
+        @Override
+        public long getTimeout() {
+            return delegate.getTimeout();
+        }
+
+        @Override
+        public void start(Runnable run) {
+            delegate.start(run);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.codecool.shop.filter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the compression filter, published under compression on /metrics.
+ */
+class CompressionStats {
+
+    private final AtomicLong compressed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong cpuNanos = new AtomicLong();
+
+    void compressed(long in, long out) {
+        compressed.incrementAndGet();
+        bytesIn.addAndGet(in);
+        bytesOut.addAndGet(out);
+    }
+
+    void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    void addCpuNanos(long nanos) {
+        cpuNanos.addAndGet(nanos);
+    }
+
+    Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        long in = bytesIn.get();
+        long out = bytesOut.get();
+        metrics.put("responses.compressed", compressed.get());
+        metrics.put("responses.skipped", skipped.get());
+        metrics.put("bytes.in", in);
+        metrics.put("bytes.out", out);
+        metrics.put("ratio.percent", in == 0 ? 0 : out * 100 / in);
+        metrics.put("cpu.micros", cpuNanos.get() / 1000);
+        return metrics;
+    }
+}
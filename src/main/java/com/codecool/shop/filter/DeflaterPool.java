@@ -0,0 +1,36 @@
+package com.codecool.shop.filter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Reuses raw (headerless) deflaters, whose native buffers are expensive to create
+ * for every response. Deflaters beyond the pool size are freed when returned.
+ */
+class DeflaterPool {
+
+    private final BlockingQueue<Deflater> idle;
+    private final int level;
+
+    DeflaterPool(int size, int level) {
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.level = level;
+    }
+
+    Deflater borrow() {
+        Deflater deflater = idle.poll();
+        return deflater != null ? deflater : new Deflater(level, true);
+    }
+
+    void release(Deflater deflater) {
+        deflater.reset();
+        if (!idle.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    int getIdle() {
+        return idle.size();
+    }
+}
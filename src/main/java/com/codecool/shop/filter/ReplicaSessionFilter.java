@@ -0,0 +1,46 @@
+package com.codecool.shop.filter;
+
+import com.codecool.shop.dao.implementation.ReplicaRouter;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Binds the request's session to the container thread, so reads after a write of
+ * the same session are routed to the primary by the {@link ReplicaRouter}.
+ */
+public class ReplicaSessionFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain) throws IOException, ServletException {
+        ReplicaRouter.bindSession(sessionId((HttpServletRequest) req));
+        try {
+            chain.doFilter(req, resp);
+        } finally {
+            ReplicaRouter.unbindSession();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    public static Supplier<String> sessionId(HttpServletRequest request) {
+        return () -> {
+            HttpSession session = request.getSession(false);
+            return session == null ? null : session.getId();
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package com.codecool.shop.filter;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Traffic classes of the shop, from most to least important.
+ */
+public enum RequestPriority {
+    CHECKOUT,
+    CART,
+    BROWSE,
+    /**
+     * Partner feeds, which run for minutes and so are measured against their own
+     * target instead of slowing the shop's.
+     */
+    EXPORT;
+
+    public static RequestPriority of(HttpServletRequest request) {
+        String path = request.getServletPath();
+        if (path.startsWith("/export")) {
+            return EXPORT;
+        }
+        if (path.startsWith("/checkout") || path.startsWith("/payment")) {
+            return CHECKOUT;
+        }
+        if (path.startsWith("/shoppingcart") || "POST".equals(request.getMethod())) {
+            return CART;
+        }
+        return BROWSE;
+    }
+}
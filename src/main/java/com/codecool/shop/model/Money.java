@@ -0,0 +1,184 @@
+package com.codecool.shop.model;
+
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable amount of money stored as integer minor units (e.g. cents) plus the
+ * index of its currency in a process-wide currency table.
+ */
+public final class Money implements Comparable<Money> {
+
+    private static final Map<String, Integer> currencyIndexes = new ConcurrentHashMap<>();
+    private static volatile Currency[] currencies = new Currency[0];
+    private static volatile long[] minorUnitFactors = new long[0];
+
+    private final long minorUnits;
+    private final int currencyIndex;
+
+    private Money(long minorUnits, int currencyIndex) {
+        this.minorUnits = minorUnits;
+        this.currencyIndex = currencyIndex;
+    }
+
+    public static Money of(long majorUnits, String currencyCode) {
+        int index = currencyIndex(currencyCode);
+        return new Money(Math.multiplyExact(majorUnits, minorUnitFactors[index]), index);
+    }
+
+    public static Money ofMinor(long minorUnits, int currencyIndex) {
+        if (currencyIndex < 0 || currencyIndex >= currencies.length) {
+            throw new IllegalArgumentException("Unknown currency index: " + currencyIndex);
+        }
+        return new Money(minorUnits, currencyIndex);
+    }
+
+    public static Money zero(int currencyIndex) {
+        return ofMinor(0, currencyIndex);
+    }
+
+    public static int currencyIndex(String currencyCode) {
+        Integer index = currencyIndexes.get(currencyCode);
+        return index != null ? index : register(Currency.getInstance(currencyCode));
+    }
+
+    public static int currencyIndex(Currency currency) {
+        Integer index = currencyIndexes.get(currency.getCurrencyCode());
+        return index != null ? index : register(currency);
+    }
+
+    public static Currency currency(int currencyIndex) {
+        return currencies[currencyIndex];
+    }
+
+    public static int numberOfCurrencies() {
+        return currencies.length;
+    }
+
+    private static synchronized int register(Currency currency) {
+        Integer index = currencyIndexes.get(currency.getCurrencyCode());
+        if (index != null) {
+            return index;
+        }
+        int newIndex = currencies.length;
+        long[] factors = Arrays.copyOf(minorUnitFactors, newIndex + 1);
+        factors[newIndex] = pow10(Math.max(currency.getDefaultFractionDigits(), 0));
+        Currency[] table = Arrays.copyOf(currencies, newIndex + 1);
+        table[newIndex] = currency;
+        minorUnitFactors = factors;
+        currencies = table;
+        currencyIndexes.put(currency.getCurrencyCode(), newIndex);
+        return newIndex;
+    }
+
+    static long minorUnitFactor(int currencyIndex) {
+        return minorUnitFactors[currencyIndex];
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public long getMajorUnits() {
+        return minorUnits / minorUnitFactors[currencyIndex];
+    }
+
+    public int getCurrencyIndex() {
+        return currencyIndex;
+    }
+
+    public Currency getCurrency() {
+        return currencies[currencyIndex];
+    }
+
+    public Money plus(Money other) {
+        checkSameCurrency(other);
+        return new Money(Math.addExact(minorUnits, other.minorUnits), currencyIndex);
+    }
+
+    public Money minus(Money other) {
+        checkSameCurrency(other);
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits), currencyIndex);
+    }
+
+    public Money times(long quantity) {
+        return new Money(Math.multiplyExact(minorUnits, quantity), currencyIndex);
+    }
+
+    public boolean isZero() {
+        return minorUnits == 0;
+    }
+
+    private void checkSameCurrency(Money other) {
+        if (other.currencyIndex != currencyIndex) {
+            throw new IllegalArgumentException("Currency mismatch: " + getCurrency() + " and " + other.getCurrency());
+        }
+    }
+
+    /**
+     * Amount without the currency code, e.g. "300" or "12.50".
+     */
+    public String formatAmount() {
+        return formatAmount(minorUnits, currencyIndex);
+    }
+
+    /**
+     * Amount followed by the currency code, e.g. "300 USD".
+     */
+    public String format() {
+        return formatAmount() + " " + getCurrency().getCurrencyCode();
+    }
+
+    static String formatAmount(long minorUnits, int currencyIndex) {
+        long factor = minorUnitFactors[currencyIndex];
+        long major = minorUnits / factor;
+        long minor = Math.abs(minorUnits % factor);
+        if (minor == 0) {
+            return String.valueOf(major);
+        }
+        StringBuilder sb = new StringBuilder(24);
+        if (minorUnits < 0 && major == 0) {
+            sb.append('-');
+        }
+        sb.append(major).append('.');
+        String fraction = String.valueOf(minor);
+        for (long pad = factor / 10; pad > minor && pad > 1; pad /= 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction).toString();
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        checkSameCurrency(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Money)) return false;
+        Money money = (Money) o;
+        return minorUnits == money.minorUnits && currencyIndex == money.currencyIndex;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + currencyIndex;
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
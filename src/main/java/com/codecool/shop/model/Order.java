@@ -1,5 +1,7 @@
 package com.codecool.shop.model;
 
+import java.util.List;
+
 public class Order {
 
     public static enum Status {
@@ -13,6 +15,7 @@ public class Order {
     private Address shippingAddress;
     private int phone;
     private Status status;
+    private List<Money> total;
     ShoppingCart orderShoppingCart;
 
     public Order(String name, String email, Address billingAddress, Address shippingAddress, int phone, ShoppingCart shoppingCart) {
@@ -22,6 +25,7 @@ public class Order {
         this.billingAddress = billingAddress;
         this.shippingAddress = shippingAddress;
         this.phone = phone;
+        this.total = shoppingCart.getTotals();
         status = Status.IN_PROGRESS;
     }
 
@@ -73,4 +77,8 @@ public class Order {
         return status;
     }
 
+    public List<Money> getTotal() {
+        return total;
+    }
+
 }
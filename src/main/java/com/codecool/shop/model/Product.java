@@ -4,8 +4,10 @@ import java.util.Currency;
 
 public class Product extends BaseModel {
 
-    private int defaultPrice;
-    private Currency defaultCurrency;
+    private Money defaultPrice;
+    private String priceAmount;
+    private String priceDisplay;
+    private volatile ConvertedPrices convertedPrices;
     private ProductCategory productCategory;
     private Supplier supplier;
 
@@ -17,29 +19,93 @@ public class Product extends BaseModel {
         this.setProductCategory(productCategory);
     }
 
+    private Product(Product source) {
+        super(source.name, source.description);
+        this.id = source.id;
+        this.defaultPrice = source.defaultPrice;
+        this.priceAmount = source.priceAmount;
+        this.priceDisplay = source.priceDisplay;
+        this.convertedPrices = source.convertedPrices;
+        this.productCategory = source.productCategory;
+        this.supplier = source.supplier;
+    }
+
+    /**
+     * A copy that can be changed without affecting this product. Category and
+     * supplier are shared, and so are the formatted prices: nothing is formatted
+     * again until the copy's price or the rate table changes.
+     */
+    public Product copy() {
+        return new Product(this);
+    }
+
     public int getDefaultPrice() {
-        return defaultPrice;
+        return (int) defaultPrice.getMajorUnits();
     }
 
     public void setDefaultPrice(int defaultPrice) {
-        this.defaultPrice = defaultPrice;
+        setUnitPrice(Money.of(defaultPrice, getDefaultCurrency().getCurrencyCode()));
     }
 
     public Currency getDefaultCurrency() {
-        return defaultCurrency;
+        return defaultPrice.getCurrency();
     }
 
     public void setDefaultCurrency(Currency defaultCurrency) {
-        this.defaultCurrency = defaultCurrency;
+        setPrice(getDefaultPrice(), defaultCurrency.getCurrencyCode());
+    }
+
+    public Money getUnitPrice() {
+        return defaultPrice;
+    }
+
+    public void setUnitPrice(Money unitPrice) {
+        this.defaultPrice = unitPrice;
+        this.priceAmount = unitPrice.formatAmount();
+        this.priceDisplay = unitPrice.format();
+    }
+
+    public String getPriceAmount() {
+        return priceAmount;
+    }
+
+    /**
+     * Price amount converted to the given currency. All currencies of the rate table
+     * are formatted at once and kept until the table is swapped for a new version.
+     */
+    public String getPriceAmount(RateTable rates, int currencyIndex) {
+        String amount = convertedAmount(rates, currencyIndex);
+        return amount != null ? amount : priceAmount;
+    }
+
+    /**
+     * Code of the currency {@link #getPriceAmount(RateTable, int)} is in: the given
+     * one, or the product's own when the price cannot be converted to it.
+     */
+    public String getPriceCurrency(RateTable rates, int currencyIndex) {
+        return convertedAmount(rates, currencyIndex) != null
+                ? Money.currency(currencyIndex).getCurrencyCode()
+                : defaultPrice.getCurrency().getCurrencyCode();
+    }
+
+    private String convertedAmount(RateTable rates, int currencyIndex) {
+        if (currencyIndex == defaultPrice.getCurrencyIndex() || !rates.supports(currencyIndex)) {
+            return null;
+        }
+        ConvertedPrices converted = convertedPrices;
+        if (converted == null || converted.version != rates.getVersion() || converted.unitPrice != defaultPrice) {
+            converted = new ConvertedPrices(rates.getVersion(), defaultPrice, rates.formatAll(defaultPrice));
+            convertedPrices = converted;
+        }
+        return converted.amounts[currencyIndex];
     }
 
     public String getPrice() {
-        return String.valueOf(this.defaultPrice) + " " + this.defaultCurrency.toString();
+        return priceDisplay;
     }
 
     public void setPrice(int price, String currency) {
-        this.defaultPrice = price;
-        this.defaultCurrency = Currency.getInstance(currency);
+        setUnitPrice(Money.of(price, currency));
     }
 
     public ProductCategory getProductCategory() {
@@ -48,7 +114,6 @@ public class Product extends BaseModel {
 
     public void setProductCategory(ProductCategory productCategory) {
         this.productCategory = productCategory;
-        this.productCategory.addProduct(this);
     }
 
     public Supplier getSupplier() {
@@ -57,22 +122,33 @@ public class Product extends BaseModel {
 
     public void setSupplier(Supplier supplier) {
         this.supplier = supplier;
-        this.supplier.addProduct(this);
     }
 
     @Override
     public String toString() {
         return String.format("id: %1$d, " +
                         "name: %2$s, " +
-                        "defaultPrice: %3$, " +
+                        "defaultPrice: %3$s, " +
                         "defaultCurrency: %4$s, " +
                         "productCategory: %5$s, " +
                         "supplier: %6$s",
                 this.id,
                 this.name,
-                this.defaultPrice,
-                this.defaultCurrency.toString(),
+                this.priceAmount,
+                this.getDefaultCurrency().toString(),
                 this.productCategory.getName(),
                 this.supplier.getName());
     }
+
+    private static final class ConvertedPrices {
+        private final long version;
+        private final Money unitPrice;
+        private final String[] amounts;
+
+        private ConvertedPrices(long version, Money unitPrice, String[] amounts) {
+            this.version = version;
+            this.unitPrice = unitPrice;
+            this.amounts = amounts;
+        }
+    }
 }
@@ -1,17 +1,18 @@
 package com.codecool.shop.model;
 
-import java.util.ArrayList;
+import com.codecool.shop.dao.ProductDao;
+
 import java.util.List;
 
 public class ProductCategory extends BaseModel {
+
     private String department;
-    private List<Product> products;
+    private final ProductIds productIds = new ProductIds();
 
     public ProductCategory(String name, String department, String description) {
         super(name);
         this.department = department;
         this.description = description;
-        this.products = new ArrayList<>();
     }
 
     public String getDepartment() {
@@ -22,16 +23,24 @@ public class ProductCategory extends BaseModel {
         this.department = department;
     }
 
-    public void setProducts(ArrayList<Product> products) {
-        this.products = products;
+    public void setProductIds(int[] productIds) {
+        this.productIds.set(productIds);
+    }
+
+    public int[] getProductIds() {
+        return productIds.toArray();
     }
 
-    public List<Product> getProducts() {
-        return this.products;
+    public List<Product> getProducts(ProductDao productDao) {
+        return productDao.getBy(this);
     }
 
     public void addProduct(Product product) {
-        this.products.add(product);
+        productIds.add(product.getId());
+    }
+
+    public void removeProduct(int productId) {
+        productIds.remove(productId);
     }
 
     public String toString() {
@@ -45,4 +54,4 @@ public class ProductCategory extends BaseModel {
                 this.department,
                 this.description);
     }
-}
\ No newline at end of file
+}
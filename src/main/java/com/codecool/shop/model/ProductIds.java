@@ -0,0 +1,57 @@
+package com.codecool.shop.model;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of product ids kept by categories and suppliers. Ids usually arrive in
+ * ascending order, which appends in amortized constant time; the array doubles
+ * when full instead of being copied on every add.
+ */
+class ProductIds {
+    private int[] ids = new int[0];
+    private int size;
+
+    synchronized void add(int id) {
+        if (size > 0 && id <= ids[size - 1]) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            insert(-index - 1, id);
+            return;
+        }
+        insert(size, id);
+    }
+
+    private void insert(int index, int id) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(8, size * 2));
+        }
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        ids[index] = id;
+        size++;
+    }
+
+    synchronized void remove(int id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+        }
+    }
+
+    synchronized void set(int[] productIds) {
+        ids = productIds == null ? new int[0] : productIds.clone();
+        Arrays.sort(ids);
+        size = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (size == 0 || ids[i] != ids[size - 1]) {
+                ids[size++] = ids[i];
+            }
+        }
+    }
+
+    synchronized int[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+}
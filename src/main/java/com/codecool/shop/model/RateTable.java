@@ -0,0 +1,96 @@
+package com.codecool.shop.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of exchange rates, relative to a base currency and indexed
+ * by the currency indexes of {@link Money}.
+ */
+public final class RateTable {
+
+    private final long version;
+    private final int baseCurrencyIndex;
+    private final double[] rates;
+    private final List<Currency> currencies;
+
+    public RateTable(long version, String baseCurrency, Map<String, Double> ratesByCode) {
+        this.version = version;
+        this.baseCurrencyIndex = Money.currencyIndex(baseCurrency);
+        List<Currency> supported = new ArrayList<>();
+        double[] table = new double[0];
+        for (Map.Entry<String, Double> entry : ratesByCode.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() <= 0) {
+                throw new IllegalArgumentException("Invalid rate for " + entry.getKey() + ": " + entry.getValue());
+            }
+            int index = Money.currencyIndex(entry.getKey());
+            if (index >= table.length) {
+                int oldLength = table.length;
+                table = Arrays.copyOf(table, index + 1);
+                Arrays.fill(table, oldLength, table.length, Double.NaN);
+            }
+            table[index] = entry.getValue();
+            supported.add(Money.currency(index));
+        }
+        if (baseCurrencyIndex >= table.length || Double.isNaN(table[baseCurrencyIndex])) {
+            throw new IllegalArgumentException("Missing rate for base currency " + baseCurrency);
+        }
+        supported.sort((a, b) -> a.getCurrencyCode().compareTo(b.getCurrencyCode()));
+        this.rates = table;
+        this.currencies = Collections.unmodifiableList(supported);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Currency getBaseCurrency() {
+        return Money.currency(baseCurrencyIndex);
+    }
+
+    public List<Currency> getCurrencies() {
+        return currencies;
+    }
+
+    public boolean supports(int currencyIndex) {
+        return currencyIndex >= 0 && currencyIndex < rates.length && !Double.isNaN(rates[currencyIndex]);
+    }
+
+    public Money convert(Money money, int targetCurrencyIndex) {
+        if (money.getCurrencyIndex() == targetCurrencyIndex) {
+            return money;
+        }
+        return Money.ofMinor(convertMinor(money.getMinorUnits(), money.getCurrencyIndex(), targetCurrencyIndex), targetCurrencyIndex);
+    }
+
+    long convertMinor(long minorUnits, int sourceCurrencyIndex, int targetCurrencyIndex) {
+        if (!supports(sourceCurrencyIndex) || !supports(targetCurrencyIndex)) {
+            throw new IllegalArgumentException("No exchange rate between " + Money.currency(sourceCurrencyIndex)
+                    + " and " + Money.currency(targetCurrencyIndex));
+        }
+        double factor = rates[targetCurrencyIndex] / rates[sourceCurrencyIndex]
+                * Money.minorUnitFactor(targetCurrencyIndex) / Money.minorUnitFactor(sourceCurrencyIndex);
+        return Math.round(minorUnits * factor);
+    }
+
+    /**
+     * Formats the given price in every currency of this table; unsupported
+     * currencies are left null. The result is indexed by currency index.
+     */
+    String[] formatAll(Money money) {
+        String[] amounts = new String[rates.length];
+        if (!supports(money.getCurrencyIndex())) {
+            return amounts;
+        }
+        for (int index = 0; index < rates.length; index++) {
+            if (supports(index)) {
+                amounts[index] = Money.formatAmount(convertMinor(money.getMinorUnits(), money.getCurrencyIndex(), index), index);
+            }
+        }
+        return amounts;
+    }
+}
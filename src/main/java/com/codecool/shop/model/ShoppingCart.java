@@ -1,46 +1,76 @@
 package com.codecool.shop.model;
 
-import com.codecool.shop.dao.implementation.ProductDaoDB;
-import com.codecool.shop.dao.implementation.ProductDaoMem;
+import com.codecool.shop.service.FlashSale;
+import com.codecool.shop.service.Inventory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
+/**
+ * Flash sale purchases are added from the sale's runner threads while the owner's
+ * requests read the cart, so every access to the content holds the cart's lock.
+ */
 public class ShoppingCart {
     private HashMap<Product, Integer> shoppingCartContent = new HashMap<Product, Integer>();
+    private final String reservationId = UUID.randomUUID().toString();
 
-    public void addItem(int id) {
-        Product productToAdd = ProductDaoDB.getInstance().find(id);
+    public synchronized boolean addItem(int id) {
+        Product productToAdd = FlashSale.getInstance().find(id);
+        if (!Inventory.getInstance().reserve(reservationId, productToAdd.getId(), 1)) return false;
         Product sameProduct = getSameProductFromShoppingCartContent(productToAdd);
         if (sameProduct == null) shoppingCartContent.put(productToAdd, 1);
         else shoppingCartContent.put(sameProduct, shoppingCartContent.get(sameProduct) + 1);
-
+        return true;
     }
 
-    public void removeItem(int id) {
-        Product productToRemove = ProductDaoDB.getInstance().find(id);
+    public synchronized void removeItem(int id) {
+        Product productToRemove = FlashSale.getInstance().find(id);
         Product sameProduct = getSameProductFromShoppingCartContent(productToRemove);
         Integer currentQuantity = shoppingCartContent.get(sameProduct);
         if (currentQuantity > 1) shoppingCartContent.put(sameProduct, --currentQuantity);
         else if (currentQuantity == 1) shoppingCartContent.remove(sameProduct);
+        Inventory.getInstance().release(reservationId, id, 1);
+    }
+
+    /**
+     * A copy of the content, so it can be iterated while items are added.
+     */
+    public synchronized HashMap getContent() {
+        return new HashMap<>(shoppingCartContent);
     }
 
-    public HashMap getContent() {
-        return shoppingCartContent;
+    public synchronized String sumCart() {
+        List<Money> totals = getTotals();
+        if (totals.isEmpty()) return "0";
+        StringBuilder sb = new StringBuilder();
+        for (Money total : totals) {
+            if (sb.length() > 0) sb.append(" + ");
+            sb.append(total.format());
+        }
+        return sb.toString();
     }
 
-    public int sumCart() {
-        int sum = 0;
+    public synchronized List<Money> getTotals() {
+        long[] sums = new long[Money.numberOfCurrencies()];
+        boolean[] used = new boolean[sums.length];
         for (Map.Entry<Product, Integer> entry : shoppingCartContent.entrySet()) {
-            Product product = entry.getKey();
-            Integer quantity = entry.getValue();
-            sum += product.getDefaultPrice() * quantity;
+            Money unitPrice = entry.getKey().getUnitPrice();
+            int currency = unitPrice.getCurrencyIndex();
+            sums[currency] = Math.addExact(sums[currency], Math.multiplyExact(unitPrice.getMinorUnits(), (long) entry.getValue()));
+            used[currency] = true;
+        }
+        List<Money> totals = new ArrayList<>();
+        for (int currency = 0; currency < sums.length; currency++) {
+            if (used[currency]) totals.add(Money.ofMinor(sums[currency], currency));
         }
-        return sum;
+        return totals;
     }
 
-    public int getNumberOfItemById(int id) {
-        Product productToCount = ProductDaoDB.getInstance().find(id);
+    public synchronized int getNumberOfItemById(int id) {
+        Product productToCount = FlashSale.getInstance().find(id);
         Product sameProduct = getSameProductFromShoppingCartContent(productToCount);
         if (sameProduct == null) return 0;
         return shoppingCartContent.get(sameProduct);
@@ -53,11 +83,24 @@ public class ShoppingCart {
         return null;
     }
 
-    public int getNumberOfItems() {
+    public synchronized int getNumberOfItems() {
         return shoppingCartContent.values().stream().mapToInt(i -> i).sum();
     }
 
-    public void clear() {
+    public synchronized Map<Integer, Integer> getQuantitiesById() {
+        Map<Integer, Integer> quantities = new HashMap<>();
+        for (Map.Entry<Product, Integer> entry : shoppingCartContent.entrySet()) {
+            quantities.put(entry.getKey().getId(), entry.getValue());
+        }
+        return quantities;
+    }
+
+    public String getReservationId() {
+        return reservationId;
+    }
+
+    public synchronized void clear() {
+        Inventory.getInstance().releaseAll(reservationId);
         shoppingCartContent.clear();
     }
 }
@@ -1,26 +1,34 @@
 package com.codecool.shop.model;
 
-import java.util.ArrayList;
+import com.codecool.shop.dao.ProductDao;
+
 import java.util.List;
 
 public class Supplier extends BaseModel {
-    private List<Product> products;
+    private final ProductIds productIds = new ProductIds();
 
     public Supplier(String name, String description) {
         super(name, description);
-        this.products = new ArrayList<>();
     }
 
-    public void setProducts(ArrayList<Product> products) {
-        this.products = products;
+    public void setProductIds(int[] productIds) {
+        this.productIds.set(productIds);
+    }
+
+    public int[] getProductIds() {
+        return productIds.toArray();
     }
 
-    public List<Product> getProducts() {
-        return this.products;
+    public List<Product> getProducts(ProductDao productDao) {
+        return productDao.getBy(this);
     }
 
     public void addProduct(Product product) {
-        this.products.add(product);
+        productIds.add(product.getId());
+    }
+
+    public void removeProduct(int productId) {
+        productIds.remove(productId);
     }
 
     public String toString() {
@@ -32,4 +40,4 @@ public class Supplier extends BaseModel {
                 this.description
         );
     }
-}
\ No newline at end of file
+}
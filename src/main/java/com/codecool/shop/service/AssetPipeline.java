@@ -0,0 +1,224 @@
+package com.codecool.shop.service;
+
+import javax.servlet.ServletContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Fingerprints the files under /static/ at startup. Every file is served from
+ * /assets/ with a hash of its content in the name, so it can be cached forever;
+ * text files are gzipped once up front. References to other assets inside CSS are
+ * rewritten before hashing, so a changed image also changes the stylesheet's name;
+ * this includes /images/{width}/ variant links.
+ */
+public class AssetPipeline {
+
+    public static final String SOURCE_PREFIX = "/static/";
+    public static final String ASSET_PREFIX = "/assets/";
+
+    private static final Pattern CSS_URL =
+            Pattern.compile("url\\(\\s*(['\"]?)(/static/|/images/\\d+/)([^'\")\\s]+)\\1\\s*\\)");
+    private static final int HASH_LENGTH = 10;
+
+    private static AssetPipeline instance = null;
+
+    private volatile Map<String, String> assetPathsBySource = Collections.emptyMap();
+    private volatile Map<String, Asset> assetsByPath = Collections.emptyMap();
+
+    public static synchronized AssetPipeline getInstance() {
+        if (instance == null) {
+            instance = new AssetPipeline();
+        }
+        return instance;
+    }
+
+    public static final class Asset {
+        private final String contentType;
+        private final byte[] content;
+        private final byte[] gzipped;
+        private final String etag;
+
+        Asset(String contentType, byte[] content, byte[] gzipped, String hash) {
+            this.contentType = contentType;
+            this.content = content;
+            this.gzipped = gzipped;
+            this.etag = "\"" + hash + "\"";
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * The gzipped content, or null if compressing did not make it smaller.
+         */
+        public byte[] getGzipped() {
+            return gzipped;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    public void build(ServletContext servletContext) throws IOException {
+        Map<String, byte[]> sources = new TreeMap<>();
+        collect(servletContext, SOURCE_PREFIX, sources);
+        build(sources, servletContext::getMimeType);
+    }
+
+    /**
+     * Replaces the current assets with the given files, keyed by their /static/ path.
+     */
+    public void build(Map<String, byte[]> sources, Function<String, String> mimeTypes) {
+        Map<String, String> pathsBySource = new HashMap<>();
+        Map<String, Asset> byPath = new HashMap<>();
+        // stylesheets last, so the assets they refer to already have their names
+        for (boolean stylesheets : new boolean[]{false, true}) {
+            for (Map.Entry<String, byte[]> source : sources.entrySet()) {
+                String path = source.getKey();
+                if (path.endsWith(".css") != stylesheets) {
+                    continue;
+                }
+                byte[] content = source.getValue();
+                if (stylesheets) {
+                    content = rewriteCss(new String(content, StandardCharsets.UTF_8), pathsBySource)
+                            .getBytes(StandardCharsets.UTF_8);
+                }
+                String contentType = mimeTypes.apply(path);
+                if (contentType == null) {
+                    contentType = "application/octet-stream";
+                }
+                String hash = hash(content);
+                String assetPath = assetPath(path, hash);
+                pathsBySource.put(path, assetPath);
+                byPath.put(assetPath, new Asset(contentType, content, isText(contentType) ? gzip(content) : null, hash));
+            }
+        }
+        assetsByPath = byPath;
+        assetPathsBySource = pathsBySource;
+    }
+
+    /**
+     * Returns the fingerprinted link for a /static/ link, or the link itself if there
+     * is no such asset.
+     */
+    public String resolve(String link, String contextPath) {
+        String prefix = contextPath == null ? "" : contextPath;
+        if (!link.startsWith(prefix + SOURCE_PREFIX)) {
+            return link;
+        }
+        String assetPath = assetPathsBySource.get(link.substring(prefix.length()));
+        return assetPath == null ? link : prefix + assetPath;
+    }
+
+    public Asset find(String assetPath) {
+        return assetsByPath.get(assetPath);
+    }
+
+    public int size() {
+        return assetsByPath.size();
+    }
+
+    private static void collect(ServletContext servletContext, String directory, Map<String, byte[]> sources) throws IOException {
+        Set<String> paths = servletContext.getResourcePaths(directory);
+        if (paths == null) {
+            return;
+        }
+        for (String path : paths) {
+            if (path.endsWith("/")) {
+                collect(servletContext, path, sources);
+                continue;
+            }
+            try (InputStream in = servletContext.getResourceAsStream(path)) {
+                if (in != null) {
+                    sources.put(path, readAll(in));
+                }
+            }
+        }
+    }
+
+    private static String rewriteCss(String css, Map<String, String> pathsBySource) {
+        Matcher matcher = CSS_URL.matcher(css);
+        StringBuffer rewritten = new StringBuffer();
+        while (matcher.find()) {
+            String assetPath = pathsBySource.get(SOURCE_PREFIX + matcher.group(3));
+            String replacement = matcher.group();
+            if (assetPath != null) {
+                // image variants keep their /images/{width}/ prefix
+                String prefix = SOURCE_PREFIX.equals(matcher.group(2)) ? ASSET_PREFIX : matcher.group(2);
+                replacement = "url(" + matcher.group(1) + prefix + assetPath.substring(ASSET_PREFIX.length()) + matcher.group(1) + ")";
+            }
+            matcher.appendReplacement(rewritten, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(rewritten);
+        return rewritten.toString();
+    }
+
+    private static String assetPath(String sourcePath, String hash) {
+        String relative = sourcePath.substring(SOURCE_PREFIX.length());
+        int slash = relative.lastIndexOf('/');
+        int dot = relative.lastIndexOf('.');
+        if (dot <= slash) {
+            return ASSET_PREFIX + relative + "." + hash;
+        }
+        return ASSET_PREFIX + relative.substring(0, dot) + "." + hash + relative.substring(dot);
+    }
+
+    private static boolean isText(String contentType) {
+        return contentType.startsWith("text/") || contentType.contains("javascript")
+                || contentType.contains("json") || contentType.contains("svg") || contentType.contains("xml");
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            out.write(content);
+        } catch (IOException e) {
+            return null;
+        }
+        byte[] gzipped = bytes.toByteArray();
+        return gzipped.length < content.length ? gzipped : null;
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; hex.length() < HASH_LENGTH; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.substring(0, HASH_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,400 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.cache.CacheInvalidationBus;
+import com.codecool.shop.config.ServerConfig;
+import com.codecool.shop.dao.ProductCategoryDao;
+import com.codecool.shop.dao.SupplierDao;
+import com.codecool.shop.dao.implementation.PostgresInvalidationTransport;
+import com.codecool.shop.dao.implementation.ProductCategoryDaoDB;
+import com.codecool.shop.dao.implementation.ProductDaoDB;
+import com.codecool.shop.dao.implementation.SupplierDaoDB;
+import com.codecool.shop.model.Money;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.Supplier;
+import com.codecool.shop.util.CsvReader;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams products from a CSV file (with a header row) or a JSON-lines file into the
+ * database. Only one batch of products is held in memory. Each batch is committed
+ * together with the number of rows consumed so far, so an interrupted import
+ * continues after the last committed batch when started again on the same file.
+ * Rejected rows are written next to the input with the reason.
+ * <p>
+ * Columns: name, description, price, currency, category, supplier.
+ */
+public class CatalogImporter {
+
+    private static final List<String> COLUMNS =
+            Arrays.asList("name", "description", "price", "currency", "category", "supplier");
+    private static final List<String> REQUIRED_COLUMNS =
+            Arrays.asList("name", "price", "currency", "category", "supplier");
+    private static final int MAX_NAME_LENGTH = 30;
+    private static final long PROGRESS_INTERVAL_MILLIS = 5000;
+
+    private final ProductDaoDB productDao;
+    private final SupplierDao supplierDao;
+    private final ProductCategoryDao productCategoryDao;
+    private final int batchSize;
+    private final Map<String, Supplier> suppliersByName = new HashMap<>();
+    private final Map<String, ProductCategory> categoriesByName = new HashMap<>();
+
+    public CatalogImporter(ProductDaoDB productDao, SupplierDao supplierDao,
+                           ProductCategoryDao productCategoryDao, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        this.productDao = productDao;
+        this.supplierDao = supplierDao;
+        this.productCategoryDao = productCategoryDao;
+        this.batchSize = batchSize;
+    }
+
+    public ImportReport importFile(Path path) throws IOException {
+        String source = path.toAbsolutePath().normalize().toString();
+        String fingerprint = Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis();
+        long resumeFrom = productDao.getImportPosition(source, fingerprint);
+        boolean jsonLines = !source.toLowerCase().endsWith(".csv");
+        Path rejectsPath = Paths.get(source + ".rejected");
+        ImportReport report = new ImportReport(rejectsPath, resumeFrom);
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectsPath, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     resumeFrom > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+            RowSource rows = jsonLines ? new JsonLinesSource(reader) : new CsvSource(new CsvReader(reader));
+            List<Product> batch = new ArrayList<>(batchSize);
+            long position = 0;
+            long lastProgress = System.currentTimeMillis();
+            // rows committed before are neither parsed nor checked again, so their rejects are not repeated
+            while (position < resumeFrom && rows.skip()) {
+                position++;
+            }
+            Map<String, String> row;
+            while ((row = nextRow(rows, rejects, report)) != null) {
+                position++;
+                if (row.isEmpty()) {
+                    continue;
+                }
+                try {
+                    batch.add(toProduct(row));
+                } catch (IllegalArgumentException e) {
+                    reject(rejects, report, rows.getLineNumber(), e.getMessage());
+                }
+                if (batch.size() == batchSize) {
+                    commit(batch, source, fingerprint, position, report);
+                    if (System.currentTimeMillis() - lastProgress >= PROGRESS_INTERVAL_MILLIS) {
+                        lastProgress = System.currentTimeMillis();
+                        System.out.println(report);
+                    }
+                }
+            }
+            commit(batch, source, fingerprint, position, report);
+        }
+        productDao.removeImportPosition(source);
+        report.finish();
+        return report;
+    }
+
+    /**
+     * Reads the next row; rows that cannot even be parsed are rejected and come
+     * back as an empty map so they still count towards the position.
+     */
+    private Map<String, String> nextRow(RowSource rows, BufferedWriter rejects, ImportReport report) throws IOException {
+        try {
+            return rows.next();
+        } catch (IllegalArgumentException e) {
+            reject(rejects, report, rows.getLineNumber(), e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
+    private void commit(List<Product> batch, String source, String fingerprint, long position,
+                        ImportReport report) throws IOException {
+        if (!productDao.addAll(batch, source, fingerprint, position)) {
+            throw new IOException("Import failed after row " + report.getRowsRead() +
+                    "; start it again to resume from the last committed batch.");
+        }
+        report.imported(batch.size(), position);
+        batch.clear();
+    }
+
+    private void reject(BufferedWriter rejects, ImportReport report, long lineNumber, String reason) throws IOException {
+        rejects.write("line " + lineNumber + ": " + reason);
+        rejects.newLine();
+        report.rejected();
+    }
+
+    Product toProduct(Map<String, String> row) {
+        String name = required(row, "name");
+        if (name.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("name is longer than " + MAX_NAME_LENGTH + " characters");
+        }
+        String description = row.getOrDefault("description", "");
+        int price;
+        try {
+            price = Integer.parseInt(required(row, "price"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("price is not a whole number: " + row.get("price"));
+        }
+        if (price < 0) {
+            throw new IllegalArgumentException("price is negative: " + price);
+        }
+        String currency = required(row, "currency");
+        try {
+            Money.currencyIndex(currency);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown currency: " + currency);
+        }
+        ProductCategory category = findCategory(required(row, "category"));
+        Supplier supplier = findSupplier(required(row, "supplier"));
+        return new Product(name, price, currency, description, category, supplier);
+    }
+
+    private ProductCategory findCategory(String name) {
+        if (!categoriesByName.containsKey(name)) {
+            categoriesByName.put(name, productCategoryDao.findByName(name));
+        }
+        ProductCategory category = categoriesByName.get(name);
+        if (category == null) {
+            throw new IllegalArgumentException("unknown category: " + name);
+        }
+        return category;
+    }
+
+    private Supplier findSupplier(String name) {
+        if (!suppliersByName.containsKey(name)) {
+            suppliersByName.put(name, supplierDao.findByName(name));
+        }
+        Supplier supplier = suppliersByName.get(name);
+        if (supplier == null) {
+            throw new IllegalArgumentException("unknown supplier: " + name);
+        }
+        return supplier;
+    }
+
+    private static String required(Map<String, String> row, String column) {
+        String value = row.get(column);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException(column + " is missing");
+        }
+        return value.trim();
+    }
+
+    private interface RowSource {
+        Map<String, String> next() throws IOException;
+
+        /**
+         * Moves past the next row without reading its fields. Returns false at the end.
+         */
+        boolean skip() throws IOException;
+
+        long getLineNumber();
+    }
+
+    private static class CsvSource implements RowSource {
+        private final CsvReader csv;
+        private List<String> header;
+
+        CsvSource(CsvReader csv) {
+            this.csv = csv;
+        }
+
+        public Map<String, String> next() throws IOException {
+            if (!readHeader()) {
+                return null;
+            }
+            List<String> fields = csv.readRecord();
+            if (fields == null) {
+                return null;
+            }
+            if (fields.size() != header.size()) {
+                throw new IllegalArgumentException("expected " + header.size() + " fields, found " + fields.size());
+            }
+            Map<String, String> row = new HashMap<>();
+            for (int i = 0; i < fields.size(); i++) {
+                row.put(header.get(i), fields.get(i));
+            }
+            return row;
+        }
+
+        public boolean skip() throws IOException {
+            return readHeader() && csv.readRecord() != null;
+        }
+
+        private boolean readHeader() throws IOException {
+            if (header == null) {
+                header = csv.readRecord();
+                if (header == null) {
+                    return false;
+                }
+                for (int i = 0; i < header.size(); i++) {
+                    header.set(i, header.get(i).trim().toLowerCase());
+                }
+                if (!header.containsAll(REQUIRED_COLUMNS)) {
+                    throw new IOException("CSV header must contain the columns " + REQUIRED_COLUMNS);
+                }
+            }
+            return true;
+        }
+
+        public long getLineNumber() {
+            return csv.getLineNumber();
+        }
+    }
+
+    private static class JsonLinesSource implements RowSource {
+        private final BufferedReader reader;
+        private long lineNumber;
+
+        JsonLinesSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        public Map<String, String> next() throws IOException {
+            String line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                return new HashMap<>();
+            }
+            JSONObject object;
+            try {
+                object = new JSONObject(line);
+            } catch (JSONException e) {
+                throw new IllegalArgumentException("invalid JSON: " + e.getMessage());
+            }
+            Map<String, String> row = new HashMap<>();
+            for (String column : COLUMNS) {
+                if (object.has(column) && !object.isNull(column)) {
+                    row.put(column, object.get(column).toString());
+                }
+            }
+            return row;
+        }
+
+        public boolean skip() throws IOException {
+            if (reader.readLine() == null) {
+                return false;
+            }
+            lineNumber++;
+            return true;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+    }
+
+    public static class ImportReport {
+        private final Path rejectsPath;
+        private final long resumedFrom;
+        private final long startedAt = System.currentTimeMillis();
+        private long finishedAt;
+        private long rowsRead;
+        private long imported;
+        private long rejected;
+
+        ImportReport(Path rejectsPath, long resumedFrom) {
+            this.rejectsPath = rejectsPath;
+            this.resumedFrom = resumedFrom;
+            this.rowsRead = resumedFrom;
+        }
+
+        void imported(int count, long position) {
+            imported += count;
+            rowsRead = position;
+        }
+
+        void rejected() {
+            rejected++;
+        }
+
+        void finish() {
+            finishedAt = System.currentTimeMillis();
+        }
+
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getResumedFrom() {
+            return resumedFrom;
+        }
+
+        public Path getRejectsPath() {
+            return rejectsPath;
+        }
+
+        public double getRowsPerSecond() {
+            long end = finishedAt == 0 ? System.currentTimeMillis() : finishedAt;
+            long millis = Math.max(1, end - startedAt);
+            return (rowsRead - resumedFrom) * 1000.0 / millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("rows: %d, imported: %d, rejected: %d, resumed from: %d, %.0f rows/s",
+                    rowsRead, imported, rejected, resumedFrom, getRowsPerSecond());
+        }
+    }
+
+    /**
+     * Usage: CatalogImporter &lt;file.csv|file.jsonl&gt; [batch size]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: CatalogImporter <file.csv|file.jsonl> [batch size]");
+            return;
+        }
+        ServerConfig config = ServerConfig.getInstance();
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : config.getInt("catalog_import_batch_size", 1000);
+        PostgresInvalidationTransport transport = null;
+        if ("postgres".equals(config.getString("cache_invalidation_transport", "postgres"))) {
+            transport = new PostgresInvalidationTransport("src/main/resources/connection.properties",
+                    config.getInt("cache_invalidation_wait_ms", 1000),
+                    config.getLong("cache_invalidation_reconnect_ms", 2000));
+            CacheInvalidationBus.getInstance().start(transport);
+        }
+        try {
+            CatalogImporter importer = new CatalogImporter(ProductDaoDB.getInstance(),
+                    SupplierDaoDB.getInstance(), ProductCategoryDaoDB.getInstance(), batchSize);
+            ImportReport report = importer.importFile(Paths.get(args[0]));
+            System.out.println(report);
+            if (report.getRejected() > 0) {
+                System.out.println("Rejected rows: " + report.getRejectsPath());
+            }
+        } finally {
+            if (transport != null) {
+                CacheInvalidationBus.getInstance().stop();
+                transport.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.config.ServerConfig;
+import com.codecool.shop.dao.DatabaseUnavailableException;
+import com.codecool.shop.dao.ProductDao;
+import com.codecool.shop.dao.implementation.CatalogSnapshot;
+import com.codecool.shop.dao.implementation.CoalescingProductCategoryDao;
+import com.codecool.shop.dao.implementation.CoalescingProductDao;
+import com.codecool.shop.dao.implementation.CoalescingSupplierDao;
+import com.codecool.shop.dao.implementation.ProductCategoryDaoDB;
+import com.codecool.shop.dao.implementation.ProductCategoryDaoMem;
+import com.codecool.shop.dao.implementation.ProductDaoColumnar;
+import com.codecool.shop.dao.implementation.ProductDaoDB;
+import com.codecool.shop.dao.implementation.ProductDaoMem;
+import com.codecool.shop.dao.implementation.ProductDaoOffHeap;
+import com.codecool.shop.dao.implementation.SupplierDaoDB;
+import com.codecool.shop.dao.implementation.SupplierDaoMem;
+
+import com.codecool.shop.util.MetricsRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether the controllers read the catalog from the database or from the
+ * in-memory daos filled from a catalog snapshot.
+ * <p>
+ * When the database becomes unavailable the catalog is served from the last known
+ * good snapshot in degraded mode, in which carts and checkout are closed. A probe
+ * checks the database while degraded and keeps the snapshot current while not.
+ */
+public class CatalogSource {
+
+    private static CatalogSource instance = null;
+
+    private volatile boolean servingSnapshot;
+    private volatile boolean degraded;
+    private volatile CatalogSnapshot lastKnownGood;
+    private volatile String servedFingerprint;
+    private volatile Path snapshotPath;
+    private ScheduledExecutorService probe;
+
+    private final AtomicLong degradedEntered = new AtomicLong();
+    private final AtomicLong degradedLeft = new AtomicLong();
+    private final AtomicLong snapshotsExported = new AtomicLong();
+
+    public static synchronized CatalogSource getInstance() {
+        if (instance == null) {
+            instance = new CatalogSource();
+            MetricsRegistry.getInstance().register("catalog.source", instance::getMetrics);
+        }
+        return instance;
+    }
+
+    /**
+     * Probes the database every probeIntervalMillis, switching to and from degraded
+     * mode and re-exporting the snapshot at the given path whenever the catalog
+     * changed.
+     */
+    public synchronized void start(Path snapshotPath, long probeIntervalMillis) {
+        this.snapshotPath = snapshotPath;
+        if (probe == null) {
+            probe = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "catalog-probe");
+                thread.setDaemon(true);
+                return thread;
+            });
+            probe.scheduleWithFixedDelay(() -> {
+                try {
+                    check();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }, probeIntervalMillis, probeIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (probe != null) {
+            probe.shutdown();
+            probe = null;
+        }
+    }
+
+    /**
+     * One probe of the database: enters degraded mode when it is down, leaves it when
+     * it is back and refreshes the last known good snapshot when the catalog changed.
+     */
+    public void check() {
+        String fingerprint = databaseFingerprint();
+        if (fingerprint == null) {
+            enterDegradedMode();
+            return;
+        }
+        if (degraded) {
+            leaveDegradedMode(fingerprint);
+        }
+        CatalogSnapshot snapshot = lastKnownGood;
+        if (snapshotPath != null && (snapshot == null || !fingerprint.equals(snapshot.getFingerprint()))) {
+            exportSnapshot(snapshotPath);
+        }
+        if (servingSnapshot && !fingerprint.equals(servedFingerprint)) {
+            refreshSnapshot(fingerprint);
+        }
+    }
+
+    /**
+     * The catalog changed under the served snapshot, e.g. by an import on this node or
+     * by direct SQL: serves the freshly exported snapshot, or the database if there is none.
+     */
+    private synchronized void refreshSnapshot(String fingerprint) {
+        if (!servingSnapshot || degraded) {
+            return;
+        }
+        CatalogSnapshot snapshot = lastKnownGood;
+        if (snapshot != null && fingerprint.equals(snapshot.getFingerprint())) {
+            serveSnapshot(snapshot);
+        } else {
+            serveDatabase();
+        }
+    }
+
+    private static String databaseFingerprint() {
+        try {
+            return ProductDaoDB.getInstance().getCatalogFingerprint();
+        } catch (DatabaseUnavailableException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Loads the snapshot at the given path into the in-memory daos and serves from
+     * them. Returns false, leaving the database in charge, if the snapshot is
+     * missing, damaged or does not match the database.
+     */
+    public boolean serveSnapshot(Path path) {
+        snapshotPath = path;
+        String fingerprint = databaseFingerprint();
+        if (fingerprint == null) {
+            return enterDegradedMode();
+        }
+        CatalogSnapshot snapshot = CatalogSnapshot.readIfFresh(path, fingerprint);
+        if (snapshot == null) {
+            return false;
+        }
+        serveSnapshot(snapshot);
+        return true;
+    }
+
+    public synchronized void serveSnapshot(CatalogSnapshot snapshot) {
+        SupplierDaoMem.getInstance().replaceAll(snapshot.getSuppliers());
+        ProductCategoryDaoMem.getInstance().replaceAll(snapshot.getCategories());
+        String layout = snapshotLayout();
+        if ("columnar".equals(layout)) {
+            ProductDaoColumnar.getInstance().replaceAll(snapshot.getProducts());
+        } else if ("offheap".equals(layout)) {
+            ProductDaoOffHeap.getInstance().replaceAll(snapshot.getProducts());
+        } else {
+            ProductDaoMem.getInstance().replaceAll(snapshot.getProducts());
+        }
+        CoalescingSupplierDao.getInstance().setDelegate(SupplierDaoMem.getInstance());
+        CoalescingProductCategoryDao.getInstance().setDelegate(ProductCategoryDaoMem.getInstance());
+        CoalescingProductDao.getInstance().setDelegate(getSnapshotProductDao());
+        lastKnownGood = snapshot;
+        servedFingerprint = snapshot.getFingerprint();
+        servingSnapshot = true;
+    }
+
+    /**
+     * The in-memory product dao snapshots are served from, chosen by catalog_snapshot_layout:
+     * objects keeps a list of products, columnar keeps primitive columns for scans and
+     * offheap keeps the records outside the heap for catalogs too large for it.
+     */
+    public ProductDao getSnapshotProductDao() {
+        String layout = snapshotLayout();
+        if ("columnar".equals(layout)) {
+            return ProductDaoColumnar.getInstance();
+        }
+        return "offheap".equals(layout) ? ProductDaoOffHeap.getInstance() : ProductDaoMem.getInstance();
+    }
+
+    private String snapshotLayout() {
+        return ServerConfig.getInstance().getString("catalog_snapshot_layout", "objects");
+    }
+
+    /**
+     * Goes back to the database, e.g. once the catalog changed on another node.
+     * Does nothing in degraded mode, which only the probe ends.
+     */
+    public synchronized void serveDatabase() {
+        if (!servingSnapshot || degraded) {
+            return;
+        }
+        CoalescingSupplierDao.getInstance().setDelegate(SupplierDaoDB.getInstance());
+        CoalescingProductCategoryDao.getInstance().setDelegate(ProductCategoryDaoDB.getInstance());
+        CoalescingProductDao.getInstance().setDelegate(ProductDaoDB.getInstance());
+        servingSnapshot = false;
+    }
+
+    public boolean isServingSnapshot() {
+        return servingSnapshot;
+    }
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * Serves the last known good snapshot, from memory or else from the snapshot
+     * file, until the database is back. Returns false if there is no snapshot.
+     */
+    public synchronized boolean enterDegradedMode() {
+        if (degraded) {
+            return true;
+        }
+        CatalogSnapshot snapshot = lastKnownGood;
+        if (snapshot == null && snapshotPath != null && Files.isRegularFile(snapshotPath)) {
+            try {
+                snapshot = CatalogSnapshot.read(snapshotPath);
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+        if (snapshot == null) {
+            return false;
+        }
+        serveSnapshot(snapshot);
+        degraded = true;
+        degradedEntered.incrementAndGet();
+        System.out.println("Database unavailable, serving the catalog read-only from the snapshot of "
+                + Instant.ofEpochMilli(snapshot.getCreatedAtMillis()));
+        return true;
+    }
+
+    private synchronized void leaveDegradedMode(String fingerprint) {
+        if (!degraded) {
+            return;
+        }
+        degraded = false;
+        degradedLeft.incrementAndGet();
+        if (!fingerprint.equals(lastKnownGood.getFingerprint())) {
+            serveDatabase();
+        }
+        // carts open again once the stock could be read, if that failed at startup
+        Inventory.getInstance().loadIfMissing();
+        System.out.println("Database available again, leaving read-only mode");
+    }
+
+    /**
+     * Writes the current database catalog to the given path.
+     */
+    public void exportSnapshot(Path path) {
+        String fingerprint = databaseFingerprint();
+        if (fingerprint == null) {
+            return;
+        }
+        CatalogSnapshot snapshot;
+        try {
+            snapshot = new CatalogSnapshot(fingerprint, System.currentTimeMillis(),
+                    SupplierDaoDB.getInstance().getAll(),
+                    ProductCategoryDaoDB.getInstance().getAll(),
+                    ProductDaoDB.getInstance().getAll());
+        } catch (DatabaseUnavailableException e) {
+            return;
+        }
+        // a failed read returns an empty list, which must not become the last known good catalog
+        if (!fingerprint.equals(databaseFingerprint())) {
+            return;
+        }
+        lastKnownGood = snapshot;
+        snapshotsExported.incrementAndGet();
+        try {
+            snapshot.write(path);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("degraded", degraded ? 1L : 0L);
+        metrics.put("servingSnapshot", servingSnapshot ? 1L : 0L);
+        metrics.put("degraded.entered", degradedEntered.get());
+        metrics.put("degraded.left", degradedLeft.get());
+        metrics.put("snapshots.exported", snapshotsExported.get());
+        return metrics;
+    }
+}
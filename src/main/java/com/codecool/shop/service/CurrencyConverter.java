@@ -0,0 +1,106 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.model.Money;
+import com.codecool.shop.model.RateTable;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current exchange rate snapshot. Readers only do a volatile read; a
+ * reload builds a complete new {@link RateTable} and swaps it in atomically.
+ */
+public class CurrencyConverter {
+
+    private static CurrencyConverter instance = null;
+
+    private String ratesConfigPath = "src/main/resources/exchange_rates.properties";
+    private final AtomicReference<RateTable> rates = new AtomicReference<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    public static synchronized CurrencyConverter getInstance() {
+        if (instance == null) {
+            instance = new CurrencyConverter();
+            instance.reload();
+        }
+        return instance;
+    }
+
+    public CurrencyConverter() {
+    }
+
+    public CurrencyConverter(String ratesConfigPath) {
+        this.ratesConfigPath = ratesConfigPath;
+        reload();
+    }
+
+    /**
+     * Re-reads the rate file. The previous snapshot stays in place if the file
+     * can not be read or contains invalid rates.
+     */
+    public boolean reload() {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(ratesConfigPath)) {
+            properties.load(in);
+            String base = properties.getProperty("base");
+            Map<String, Double> ratesByCode = new LinkedHashMap<>();
+            for (String code : properties.stringPropertyNames()) {
+                if (!"base".equals(code)) {
+                    ratesByCode.put(code, Double.valueOf(properties.getProperty(code)));
+                }
+            }
+            swap(new RateTable(versions.incrementAndGet(), base, ratesByCode));
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            e.printStackTrace(System.out);
+            return false;
+        }
+    }
+
+    public void swap(RateTable rateTable) {
+        rates.set(rateTable);
+    }
+
+    public RateTable getRates() {
+        RateTable current = rates.get();
+        if (current == null) {
+            throw new IllegalStateException("No exchange rates loaded from " + ratesConfigPath);
+        }
+        return current;
+    }
+
+    /**
+     * Returns the index of the given currency code, or -1 if it is unknown or has no rate.
+     */
+    public int findCurrencyIndex(String currencyCode) {
+        if (currencyCode == null) {
+            return -1;
+        }
+        try {
+            int index = Money.currencyIndex(currencyCode);
+            return getRates().supports(index) ? index : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Sums the given per-currency totals into a single amount of the target currency.
+     */
+    public Money total(List<Money> totals, int targetCurrencyIndex) {
+        RateTable table = getRates();
+        long sum = 0;
+        for (Money total : totals) {
+            sum = Math.addExact(sum, table.convert(total, targetCurrencyIndex).getMinorUnits());
+        }
+        return Money.ofMinor(sum, targetCurrencyIndex);
+    }
+}
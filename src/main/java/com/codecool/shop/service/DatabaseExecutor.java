@@ -0,0 +1,206 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.config.ServerConfig;
+import com.codecool.shop.dao.implementation.ReplicaRouter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded executor for blocking database work, so request threads are not held
+ * while JDBC waits. Uses virtual threads when the JDK has them, otherwise a fixed
+ * pool. Either way at most threads tasks run at once, so no more connections are
+ * asked for than with the pool, and at most threads + queue tasks are accepted;
+ * further tasks are rejected with {@link RejectedExecutionException}.
+ * <p>
+ * A second instance, {@link #getQueryInstance()}, runs the single queries a request
+ * fires in parallel through {@link #supply(Supplier)}. It is separate so that
+ * request tasks waiting for their queries can never occupy the threads those
+ * queries need.
+ */
+public class DatabaseExecutor implements Executor {
+
+    private static DatabaseExecutor instance = null;
+    private static DatabaseExecutor queryInstance = null;
+
+    private final ExecutorService executor;
+    private final Semaphore capacity;
+    private final Semaphore running;
+    private final boolean virtualThreads;
+
+    public static synchronized DatabaseExecutor getInstance() {
+        if (instance == null) {
+            ServerConfig config = ServerConfig.getInstance();
+            instance = new DatabaseExecutor(
+                    config.getInt("db_executor_threads", 16),
+                    config.getInt("db_executor_queue", 64),
+                    config.getBoolean("db_executor_virtual_threads", true));
+        }
+        return instance;
+    }
+
+    public static synchronized DatabaseExecutor getQueryInstance() {
+        if (queryInstance == null) {
+            ServerConfig config = ServerConfig.getInstance();
+            queryInstance = new DatabaseExecutor(
+                    config.getInt("db_query_executor_threads", 16),
+                    config.getInt("db_query_executor_queue", 256),
+                    config.getBoolean("db_executor_virtual_threads", true));
+        }
+        return queryInstance;
+    }
+
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
+        if (queryInstance != null) {
+            queryInstance.shutdown();
+            queryInstance = null;
+        }
+    }
+
+    public DatabaseExecutor(int threads, int queueCapacity, boolean preferVirtualThreads) {
+        ExecutorService virtual = preferVirtualThreads ? newVirtualThreadExecutor() : null;
+        this.virtualThreads = virtual != null;
+        this.capacity = new Semaphore(threads + queueCapacity);
+        if (virtual != null) {
+            this.executor = virtual;
+            // every task gets its own thread, so the queue is the threads waiting here
+            this.running = new Semaphore(threads);
+        } else {
+            this.running = null;
+            this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory(),
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!capacity.tryAcquire()) {
+            throw new RejectedExecutionException("Database executor is saturated");
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (running == null) {
+                        task.run();
+                    } else {
+                        running.acquireUninterruptibly();
+                        try {
+                            task.run();
+                        } finally {
+                            running.release();
+                        }
+                    }
+                } finally {
+                    capacity.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            capacity.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs task on this executor and completes the returned future with its result.
+     * The read-your-writes session of the caller goes with the task. When the
+     * executor is saturated the task runs on the calling thread instead, so a
+     * request degrades to sequential queries rather than failing.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Supplier<String> session = ReplicaRouter.boundSession();
+        Runnable run = () -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        };
+        try {
+            execute(() -> {
+                ReplicaRouter.bindSession(session);
+                try {
+                    run.run();
+                } finally {
+                    ReplicaRouter.unbindSession();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            run.run();
+        }
+        return future;
+    }
+
+    /**
+     * Waits for the future and rethrows a failure of its task as it was thrown, not
+     * wrapped in a {@link CompletionException}.
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getAvailableCapacity() {
+        return capacity.availablePermits();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "db-executor-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
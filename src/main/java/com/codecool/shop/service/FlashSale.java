@@ -0,0 +1,239 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.cache.InvalidationEvent;
+import com.codecool.shop.config.ServerConfig;
+import com.codecool.shop.dao.ProductDao;
+import com.codecool.shop.dao.implementation.CoalescingProductDao;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ShoppingCart;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Flash-sale mode for products announced in advance. While it is on, the announced
+ * products are pinned in memory and purchase attempts on them wait in a fair FIFO
+ * queue so only a few run at a time, however large the spike is.
+ * <p>
+ * A queued attempt holds no thread: it is a future that is run on the runner
+ * executor once a finished purchase hands its slot on, so a long queue does not
+ * take the executor threads other requests need.
+ */
+public class FlashSale {
+
+    private static FlashSale instance = null;
+
+    private final ProductDao productDao;
+    private final Map<Integer, Product> pinned = new ConcurrentHashMap<>();
+    private volatile Set<String> pinnedNames = new HashSet<>();
+    private final Executor runner;
+    private final Object queueLock = new Object();
+    private final ArrayDeque<Waiter<?>> queue = new ArrayDeque<>();
+    private int freeSlots;
+    private final int maxWaiting;
+    private final long queueTimeoutNanos;
+    private volatile boolean enabled;
+
+    public static synchronized FlashSale getInstance() {
+        if (instance == null) {
+            ServerConfig config = ServerConfig.getInstance();
+            instance = new FlashSale(CoalescingProductDao.getInstance(),
+                    config.getInt("flash_sale_concurrent_purchases", 4),
+                    config.getInt("flash_sale_queue_size", 1000),
+                    config.getLong("flash_sale_queue_timeout_ms", 5000),
+                    DatabaseExecutor.getInstance());
+        }
+        return instance;
+    }
+
+    public FlashSale(ProductDao productDao, int concurrentPurchases, int maxWaiting, long queueTimeoutMillis,
+                     Executor runner) {
+        this.productDao = productDao;
+        this.freeSlots = concurrentPurchases;
+        this.maxWaiting = maxWaiting;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        this.runner = runner;
+    }
+
+    public static Set<String> configuredProductNames() {
+        String names = ServerConfig.getInstance().getString("flash_sale_products", "");
+        Set<String> result = new HashSet<>();
+        for (String name : Arrays.asList(names.split(","))) {
+            if (!name.trim().isEmpty()) {
+                result.add(name.trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Turns flash-sale mode on and pre-warms the cache with every product whose
+     * name is in the given collection.
+     */
+    public void start(Collection<String> productNames) {
+        pinnedNames = new HashSet<>(productNames);
+        pinned.clear();
+        for (Product product : productDao.getAll()) {
+            if (productNames.contains(product.getName())) {
+                pinned.put(product.getId(), product);
+            }
+        }
+        enabled = true;
+    }
+
+    public void stop() {
+        enabled = false;
+        pinned.clear();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isPinned(int productId) {
+        return enabled && pinned.containsKey(productId);
+    }
+
+    public void unpin(int productId) {
+        pinned.remove(productId);
+    }
+
+    /**
+     * Drops a pinned product changed on another node so the next read goes to the dao.
+     * A whole-catalog change pins the announced products again.
+     */
+    public void applyInvalidation(InvalidationEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (event.isAll()) {
+            start(pinnedNames);
+        } else {
+            pinned.remove(event.getId());
+        }
+    }
+
+    /**
+     * The product, from memory if it is pinned. Pinned products are shared by every
+     * cart, so each caller gets its own copy.
+     */
+    public Product find(int id) {
+        Product product = enabled ? pinned.get(id) : null;
+        return product != null ? product.copy() : productDao.find(id);
+    }
+
+    /**
+     * Runs a purchase attempt on the calling thread if a slot is free, otherwise
+     * queues it. The future fails with {@link RejectedExecutionException} if the
+     * attempt waited longer than the queue timeout; a cancelled one is skipped.
+     *
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public <T> CompletableFuture<T> purchase(Supplier<T> attempt) {
+        Waiter<T> waiter = new Waiter<>(attempt, System.nanoTime() + queueTimeoutNanos);
+        synchronized (queueLock) {
+            if (freeSlots == 0) {
+                if (queue.size() >= maxWaiting) {
+                    throw new RejectedExecutionException("Flash sale queue is full");
+                }
+                queue.add(waiter);
+                return waiter.future;
+            }
+            freeSlots--;
+        }
+        waiter.run();
+        return waiter.future;
+    }
+
+    /**
+     * Adds a product to the cart, queueing the attempt if the product is pinned.
+     *
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public CompletableFuture<Boolean> addToCart(ShoppingCart shoppingCart, int productId) {
+        if (!isPinned(productId)) {
+            return CompletableFuture.completedFuture(shoppingCart.addItem(productId));
+        }
+        return purchase(() -> shoppingCart.addItem(productId));
+    }
+
+    public int getWaiting() {
+        synchronized (queueLock) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Hands the slot of a finished attempt to the first waiter still in time, or
+     * frees it when nobody is waiting.
+     */
+    private void release() {
+        List<Waiter<?>> expired = new ArrayList<>();
+        Waiter<?> next;
+        synchronized (queueLock) {
+            long now = System.nanoTime();
+            while ((next = queue.poll()) != null) {
+                if (next.future.isDone()) {
+                    continue;
+                }
+                if (now - next.deadline > 0) {
+                    expired.add(next);
+                    continue;
+                }
+                break;
+            }
+            if (next == null) {
+                freeSlots++;
+            }
+        }
+        // completed outside the lock, their callbacks write responses
+        for (Waiter<?> waiter : expired) {
+            waiter.future.completeExceptionally(new RejectedExecutionException("Timed out waiting in the flash sale queue"));
+        }
+        if (next != null) {
+            try {
+                runner.execute(next::run);
+            } catch (RejectedExecutionException e) {
+                next.future.completeExceptionally(e);
+                release();
+            }
+        }
+    }
+
+    private final class Waiter<T> {
+        private final Supplier<T> attempt;
+        private final long deadline;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Waiter(Supplier<T> attempt, long deadline) {
+            this.attempt = attempt;
+            this.deadline = deadline;
+        }
+
+        private void run() {
+            T result;
+            try {
+                result = attempt.get();
+            } catch (RuntimeException e) {
+                release();
+                future.completeExceptionally(e);
+                return;
+            }
+            // the next attempt need not wait for this one's response to be written
+            release();
+            future.complete(result);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.config.ServerConfig;
+import com.codecool.shop.util.DiskLruCache;
+import com.codecool.shop.util.MetricsRegistry;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.servlet.ServletContext;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Downscaled copies of the shop's images in a few fixed widths, so small screens do
+ * not download full-size pictures. JPEGs are re-encoded as progressive JPEGs, PNGs
+ * stay PNGs to keep their transparency. Variants are kept in a size-bounded disk
+ * cache; only the configured widths are produced, so URLs cannot fill the cache
+ * with arbitrary sizes.
+ */
+public class ImageVariants {
+
+    private static ImageVariants instance = null;
+
+    private final int[] widths;
+    private final float jpegQuality;
+    private final DiskLruCache cache;
+    private final Map<String, Integer> sourceWidths = new ConcurrentHashMap<>();
+
+    public static synchronized ImageVariants getInstance() {
+        if (instance == null) {
+            ServerConfig config = ServerConfig.getInstance();
+            int[] widths = Arrays.stream(config.getString("image_variant_widths", "320,640,960,1280").split(","))
+                    .mapToInt(width -> Integer.parseInt(width.trim())).sorted().toArray();
+            try {
+                instance = new ImageVariants(widths, config.getInt("image_jpeg_quality", 80) / 100f,
+                        new DiskLruCache(Paths.get(config.getString("image_cache_dir", "target/image-cache")),
+                                config.getLong("image_cache_max_mb", 64) * 1024 * 1024));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            MetricsRegistry.getInstance().register("images.cache", instance.cache::getMetrics);
+        }
+        return instance;
+    }
+
+    public ImageVariants(int[] widths, float jpegQuality, DiskLruCache cache) {
+        this.widths = widths.clone();
+        this.jpegQuality = jpegQuality;
+        this.cache = cache;
+    }
+
+    /**
+     * An image under /static/, preferably in its fingerprinted version.
+     */
+    public static final class Source {
+        private final byte[] content;
+        private final String version;
+        private final String relativePath;
+        private final boolean fingerprinted;
+
+        Source(byte[] content, String version, String relativePath, boolean fingerprinted) {
+            this.content = content;
+            this.version = version;
+            this.relativePath = relativePath;
+            this.fingerprinted = fingerprinted;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Path below /assets/ if fingerprinted, below /static/ otherwise.
+         */
+        public String getRelativePath() {
+            return relativePath;
+        }
+
+        public boolean isFingerprinted() {
+            return fingerprinted;
+        }
+
+        public boolean isJpeg() {
+            String path = relativePath.toLowerCase();
+            return path.endsWith(".jpg") || path.endsWith(".jpeg");
+        }
+    }
+
+    /**
+     * Looks the image up by its path below /static/ or /assets/; null if there is none.
+     */
+    public Source findSource(ServletContext servletContext, String relativePath) throws IOException {
+        AssetPipeline assets = AssetPipeline.getInstance();
+        String assetPath = AssetPipeline.ASSET_PREFIX + relativePath;
+        AssetPipeline.Asset asset = assets.find(assetPath);
+        if (asset == null) {
+            assetPath = assets.resolve(AssetPipeline.SOURCE_PREFIX + relativePath, "");
+            asset = assets.find(assetPath);
+        }
+        if (asset != null) {
+            return new Source(asset.getContent(), asset.getEtag(),
+                    assetPath.substring(AssetPipeline.ASSET_PREFIX.length()), true);
+        }
+        if (relativePath.contains("..")) {
+            return null;
+        }
+        try (InputStream in = servletContext.getResourceAsStream(AssetPipeline.SOURCE_PREFIX + relativePath)) {
+            if (in == null) {
+                return null;
+            }
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(content.toByteArray());
+            return new Source(content.toByteArray(), relativePath + "#" + crc.getValue(), relativePath, false);
+        }
+    }
+
+    /**
+     * A srcset value listing the variants narrower than the image and the image itself.
+     */
+    public String srcset(Source source, String contextPath) {
+        int sourceWidth = sourceWidth(source.getVersion(), source.getContent());
+        StringBuilder srcset = new StringBuilder();
+        for (int width : widthsBelow(sourceWidth)) {
+            srcset.append(contextPath).append("/images/").append(width).append('/')
+                    .append(source.getRelativePath()).append(' ').append(width).append("w, ");
+        }
+        srcset.append(contextPath)
+                .append(source.isFingerprinted() ? AssetPipeline.ASSET_PREFIX : AssetPipeline.SOURCE_PREFIX)
+                .append(source.getRelativePath()).append(' ').append(sourceWidth).append('w');
+        return srcset.toString();
+    }
+
+    public boolean isVariantWidth(int width) {
+        return Arrays.binarySearch(widths, width) >= 0;
+    }
+
+    /**
+     * The configured widths that are smaller than the image itself.
+     */
+    public List<Integer> widthsBelow(int sourceWidth) {
+        List<Integer> result = new ArrayList<>();
+        for (int width : widths) {
+            if (width < sourceWidth) {
+                result.add(width);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Width of the image in pixels, read from its header once per version.
+     */
+    public int sourceWidth(String version, byte[] source) {
+        return sourceWidths.computeIfAbsent(version, key -> {
+            try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(source))) {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+                if (!readers.hasNext()) {
+                    throw new IllegalArgumentException("Not an image: " + version);
+                }
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(in);
+                    return reader.getWidth(0);
+                } finally {
+                    reader.dispose();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * The image scaled down to the given width, or the source itself if it is not
+     * wider than that. The version must change whenever the source does.
+     */
+    public byte[] variant(String version, byte[] source, int width, boolean jpeg) {
+        if (!isVariantWidth(width)) {
+            throw new IllegalArgumentException("Not a variant width: " + width);
+        }
+        if (sourceWidth(version, source) <= width) {
+            return source;
+        }
+        byte[] variant = cache.get(version + "@" + width, key -> resize(source, width, jpeg));
+        return variant.length < source.length ? variant : source;
+    }
+
+    private byte[] resize(byte[] source, int width, boolean jpeg) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(source));
+            if (image == null) {
+                throw new IllegalArgumentException("Not an image");
+            }
+            BufferedImage scaled = scale(image, width, jpeg);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (jpeg) {
+                writeProgressiveJpeg(scaled, out);
+            } else {
+                ImageIO.write(scaled, "png", out);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Halves the image until it is close to the target, then scales the rest of the
+     * way, which looks much better than a single bilinear step.
+     */
+    private static BufferedImage scale(BufferedImage image, int width, boolean jpeg) {
+        int type = jpeg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            int nextWidth = Math.max(width, currentWidth / 2);
+            int nextHeight = Math.max(1, (int) Math.round((double) image.getHeight() * nextWidth / image.getWidth()));
+            BufferedImage next = new BufferedImage(nextWidth, nextHeight, type);
+            Graphics2D graphics = next.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(current, 0, 0, nextWidth, nextHeight, 0, 0, currentWidth, currentHeight, null);
+            graphics.dispose();
+            current = next;
+            currentWidth = nextWidth;
+            currentHeight = nextHeight;
+        } while (currentWidth > width);
+        return current;
+    }
+
+    private void writeProgressiveJpeg(BufferedImage image, ByteArrayOutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(jpegQuality);
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.config.ServerConfig;
+import com.codecool.shop.dao.StockDao;
+import com.codecool.shop.dao.implementation.StockDaoDB;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory stock counters for products that have a row in the stock table;
+ * products without one are not limited. Adding to a cart reserves units with a
+ * compare-and-set on the product's own counter, so concurrent carts never wait on
+ * a shared lock. Reservations of a cart expire when it is left untouched. The
+ * counters are only this node's view: a sale is taken off the stock table with a
+ * conditional update, so several nodes selling the same product can not oversell,
+ * and {@link #refresh()} takes over what the other nodes sold. Stock changes made
+ * here are written back in batches by {@link #reconcile()}.
+ * Until the counters have been loaded from the database nothing can be reserved,
+ * and the sync thread keeps trying to load them.
+ */
+public class Inventory {
+
+    private static Inventory instance = null;
+
+    private final StockDao stockDao;
+    private final long reservationTtlMillis;
+    private final Map<Integer, Stock> stocks = new ConcurrentHashMap<>();
+    private final Map<String, Holder> holders = new ConcurrentHashMap<>();
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    private final List<Runnable> loadListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean loaded;
+    private ScheduledExecutorService scheduler;
+
+    public static synchronized Inventory getInstance() {
+        if (instance == null) {
+            ServerConfig config = ServerConfig.getInstance();
+            instance = new Inventory(StockDaoDB.getInstance(),
+                    config.getLong("inventory_reservation_ttl_seconds", 900) * 1000);
+        }
+        return instance;
+    }
+
+    public Inventory(StockDao stockDao, long reservationTtlMillis) {
+        this.stockDao = stockDao;
+        this.reservationTtlMillis = reservationTtlMillis;
+    }
+
+    public synchronized void start(long syncIntervalSeconds) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "inventory-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    if (!loaded) {
+                        load();
+                    }
+                    expireReservations();
+                    reconcile();
+                    refresh();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }, syncIntervalSeconds, syncIntervalSeconds, TimeUnit.SECONDS);
+        }
+        loadIfMissing();
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+        reconcile();
+    }
+
+    /**
+     * Replaces the counters with the stock table and runs the load listeners. If
+     * either fails the inventory stays closed.
+     */
+    public synchronized void load() {
+        Map<Integer, Integer> quantities = stockDao.getAll();
+        loaded = false;
+        stocks.clear();
+        holders.clear();
+        dirty.clear();
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            stocks.put(entry.getKey(), new Stock(entry.getValue()));
+        }
+        for (Runnable listener : loadListeners) {
+            listener.run();
+        }
+        loaded = true;
+    }
+
+    /**
+     * Loads the counters unless they already are, e.g. once the database is back
+     * after a start without it. Returns whether the inventory is open.
+     */
+    public boolean loadIfMissing() {
+        if (loaded) {
+            return true;
+        }
+        try {
+            load();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        return loaded;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Runs the given listener after every load, before anything can be reserved,
+     * e.g. to stock new products.
+     */
+    public void addLoadListener(Runnable listener) {
+        loadListeners.add(listener);
+    }
+
+    public void setStock(int productId, int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Stock can not be negative.");
+        }
+        Stock stock = stocks.computeIfAbsent(productId, id -> new Stock(0));
+        // a delta, so reservations taken concurrently by take() are kept
+        int delta = quantity - stock.onHand.getAndSet(quantity);
+        stock.available.addAndGet(delta);
+        stock.pending.addAndGet(delta);
+        dirty.add(productId);
+    }
+
+    public boolean isTracked(int productId) {
+        return stocks.containsKey(productId);
+    }
+
+    /**
+     * Units that can still be reserved, or -1 if the product is not limited.
+     */
+    public int getAvailable(int productId) {
+        Stock stock = stocks.get(productId);
+        return stock == null ? -1 : Math.max(0, stock.available.get());
+    }
+
+    public boolean reserve(String holderId, int productId, int quantity) {
+        if (!loaded) {
+            return false;
+        }
+        Stock stock = stocks.get(productId);
+        if (stock == null) {
+            return true;
+        }
+        if (!take(stock, quantity)) {
+            return false;
+        }
+        while (true) {
+            Holder holder = holders.computeIfAbsent(holderId, id -> new Holder());
+            synchronized (holder) {
+                if (holder.removed) {
+                    continue;
+                }
+                holder.quantities.merge(productId, quantity, Integer::sum);
+                holder.touch(reservationTtlMillis);
+                return true;
+            }
+        }
+    }
+
+    public void release(String holderId, int productId, int quantity) {
+        Holder holder = holders.get(holderId);
+        if (holder == null) {
+            return;
+        }
+        int released;
+        synchronized (holder) {
+            Integer held = holder.quantities.get(productId);
+            if (held == null) {
+                return;
+            }
+            released = Math.min(held, quantity);
+            if (held - released == 0) {
+                holder.quantities.remove(productId);
+            } else {
+                holder.quantities.put(productId, held - released);
+            }
+            holder.touch(reservationTtlMillis);
+        }
+        giveBack(productId, released);
+    }
+
+    public void releaseAll(String holderId) {
+        Holder holder = holders.remove(holderId);
+        if (holder == null) {
+            return;
+        }
+        synchronized (holder) {
+            holder.removed = true;
+            for (Map.Entry<Integer, Integer> entry : holder.quantities.entrySet()) {
+                giveBack(entry.getKey(), entry.getValue());
+            }
+            holder.quantities.clear();
+        }
+    }
+
+    /**
+     * Turns the reservations of a paid cart into sales. Quantities whose reservation
+     * already expired are reserved again first, and the sale is then taken off the
+     * stock table; if either fails nothing is sold.
+     */
+    public boolean commit(String holderId, Map<Integer, Integer> quantities) {
+        if (!loaded) {
+            return false;
+        }
+        while (true) {
+            Holder holder = holders.computeIfAbsent(holderId, id -> new Holder());
+            synchronized (holder) {
+                if (holder.removed) {
+                    continue;
+                }
+                return commit(holderId, holder, quantities);
+            }
+        }
+    }
+
+    private boolean commit(String holderId, Holder holder, Map<Integer, Integer> quantities) {
+        Map<Integer, Integer> topUps = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            Stock stock = stocks.get(entry.getKey());
+            if (stock == null) {
+                continue;
+            }
+            int missing = entry.getValue() - holder.quantities.getOrDefault(entry.getKey(), 0);
+            if (missing > 0) {
+                if (!take(stock, missing)) {
+                    for (Map.Entry<Integer, Integer> topUp : topUps.entrySet()) {
+                        giveBack(topUp.getKey(), topUp.getValue());
+                    }
+                    return false;
+                }
+                topUps.put(entry.getKey(), missing);
+            }
+        }
+        boolean stored = false;
+        try {
+            // stock set on this node has to be in the table before it can be sold there
+            reconcile();
+            stored = stockDao.sell(tracked(quantities));
+        } finally {
+            if (!stored) {
+                for (Map.Entry<Integer, Integer> topUp : topUps.entrySet()) {
+                    giveBack(topUp.getKey(), topUp.getValue());
+                }
+            }
+        }
+        if (!stored) {
+            return false;
+        }
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            Stock stock = stocks.get(entry.getKey());
+            if (stock == null) {
+                continue;
+            }
+            int reserved = holder.quantities.getOrDefault(entry.getKey(), 0) + topUps.getOrDefault(entry.getKey(), 0);
+            int sold = entry.getValue();
+            stock.onHand.addAndGet(-sold);
+            if (reserved > sold) {
+                stock.available.addAndGet(reserved - sold);
+            }
+            holder.quantities.remove(entry.getKey());
+        }
+        for (Map.Entry<Integer, Integer> leftover : holder.quantities.entrySet()) {
+            giveBack(leftover.getKey(), leftover.getValue());
+        }
+        holder.quantities.clear();
+        holder.removed = true;
+        holders.remove(holderId, holder);
+        return true;
+    }
+
+    private Map<Integer, Integer> tracked(Map<Integer, Integer> quantities) {
+        Map<Integer, Integer> tracked = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            if (stocks.containsKey(entry.getKey()) && entry.getValue() > 0) {
+                tracked.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return tracked;
+    }
+
+    public int expireReservations() {
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        Iterator<Map.Entry<String, Holder>> iterator = holders.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Holder> entry = iterator.next();
+            Holder holder = entry.getValue();
+            synchronized (holder) {
+                if (holder.expiresAt > now) {
+                    continue;
+                }
+                for (Map.Entry<Integer, Integer> reservation : holder.quantities.entrySet()) {
+                    giveBack(reservation.getKey(), reservation.getValue());
+                }
+                holder.quantities.clear();
+                holder.removed = true;
+                iterator.remove();
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Writes the stock changes made on this node since the last call to the
+     * database in one batch.
+     */
+    public void reconcile() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> changed = new HashMap<>();
+        for (Iterator<Integer> iterator = dirty.iterator(); iterator.hasNext(); ) {
+            Integer productId = iterator.next();
+            iterator.remove();
+            Stock stock = stocks.get(productId);
+            if (stock != null) {
+                int delta = stock.pending.getAndSet(0);
+                if (delta != 0) {
+                    changed.put(productId, delta);
+                }
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        try {
+            stockDao.addAll(changed);
+        } catch (RuntimeException e) {
+            for (Map.Entry<Integer, Integer> entry : changed.entrySet()) {
+                Stock stock = stocks.get(entry.getKey());
+                if (stock != null) {
+                    stock.pending.addAndGet(entry.getValue());
+                }
+            }
+            dirty.addAll(changed.keySet());
+            throw e;
+        }
+    }
+
+    /**
+     * Sets the counters without unsaved changes to the stock table, which holds the
+     * sales of every node. Reservations on this node are kept.
+     */
+    public void refresh() {
+        for (Map.Entry<Integer, Integer> entry : stockDao.getAll().entrySet()) {
+            if (dirty.contains(entry.getKey())) {
+                continue;
+            }
+            Stock stock = stocks.putIfAbsent(entry.getKey(), new Stock(entry.getValue()));
+            if (stock != null) {
+                int delta = entry.getValue() - stock.onHand.getAndSet(entry.getValue());
+                stock.available.addAndGet(delta);
+            }
+        }
+    }
+
+    private boolean take(Stock stock, int quantity) {
+        while (true) {
+            int available = stock.available.get();
+            if (available < quantity) {
+                return false;
+            }
+            if (stock.available.compareAndSet(available, available - quantity)) {
+                return true;
+            }
+        }
+    }
+
+    private void giveBack(int productId, int quantity) {
+        Stock stock = stocks.get(productId);
+        if (stock != null && quantity > 0) {
+            stock.available.addAndGet(quantity);
+        }
+    }
+
+    private static class Stock {
+        private final AtomicInteger onHand;
+        private final AtomicInteger available;
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Stock(int quantity) {
+            this.onHand = new AtomicInteger(quantity);
+            this.available = new AtomicInteger(quantity);
+        }
+    }
+
+    private static class Holder {
+        private final Map<Integer, Integer> quantities = new HashMap<>();
+        private volatile long expiresAt;
+        private boolean removed;
+
+        private void touch(long ttlMillis) {
+            expiresAt = System.currentTimeMillis() + ttlMillis;
+        }
+    }
+}
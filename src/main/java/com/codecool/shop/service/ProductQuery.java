@@ -0,0 +1,364 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.config.ServerConfig;
+import com.codecool.shop.model.Money;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.RateTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Filter, sort and top-K selection over an in-memory product list. Lists of at
+ * least {@code product_query_parallel_threshold} products are filtered, sorted
+ * and selected on the common fork/join pool, smaller ones on the calling thread.
+ * Results keep the input order wherever the sort keys are equal.
+ */
+public class ProductQuery {
+
+    public enum SortKey { PRICE, NAME, ID }
+
+    private static volatile int defaultThreshold = -1;
+
+    private final int parallelThreshold;
+    private final List<Predicate<Product>> filters = new ArrayList<>();
+    private final List<SortKey> sortKeys = new ArrayList<>();
+    private final List<Boolean> descending = new ArrayList<>();
+    private RateTable rates;
+    private int limit = -1;
+
+    public ProductQuery() {
+        this(threshold());
+    }
+
+    public ProductQuery(int parallelThreshold) {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("parallelThreshold must be positive: " + parallelThreshold);
+        }
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    private static int threshold() {
+        int threshold = defaultThreshold;
+        if (threshold < 0) {
+            threshold = Math.max(1, ServerConfig.getInstance().getInt("product_query_parallel_threshold", 8192));
+            defaultThreshold = threshold;
+        }
+        return threshold;
+    }
+
+    /**
+     * Keeps the products matching the predicate, in their original order.
+     */
+    public static List<Product> filter(List<Product> products, Predicate<Product> predicate) {
+        return new ProductQuery().where(predicate).execute(products);
+    }
+
+    public ProductQuery where(Predicate<Product> predicate) {
+        filters.add(predicate);
+        return this;
+    }
+
+    public ProductQuery orderBy(SortKey key, boolean desc) {
+        sortKeys.add(key);
+        descending.add(desc);
+        return this;
+    }
+
+    /**
+     * Parses a sort specification like {@code "price,-name"}: comma separated keys
+     * out of price, name and id, a leading minus sorts that key descending.
+     */
+    public ProductQuery orderBy(String spec) {
+        if (spec == null) {
+            return this;
+        }
+        for (String part : spec.split(",")) {
+            String key = part.trim();
+            if (key.isEmpty()) {
+                continue;
+            }
+            boolean desc = key.startsWith("-");
+            if (desc || key.startsWith("+")) {
+                key = key.substring(1);
+            }
+            try {
+                orderBy(SortKey.valueOf(key.toUpperCase(Locale.ROOT)), desc);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown sort key: " + part.trim());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Prices in different currencies are compared after converting them to the
+     * base currency of the given table.
+     */
+    public ProductQuery withRates(RateTable rates) {
+        this.rates = rates;
+        return this;
+    }
+
+    public ProductQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    public List<Product> execute(List<Product> products) {
+        boolean parallel = products.size() >= parallelThreshold;
+        List<Product> matching = applyFilters(products, parallel);
+        if (sortKeys.isEmpty()) {
+            return limit >= 0 && limit < matching.size() ? new ArrayList<>(matching.subList(0, limit)) : matching;
+        }
+
+        Row[] rows = toRows(matching);
+        Comparator<Row> comparator = comparator();
+        parallel = rows.length >= parallelThreshold;
+        if (limit >= 0 && limit < rows.length / 4) {
+            rows = parallel
+                    ? ForkJoinPool.commonPool().invoke(new TopK(rows, 0, rows.length, limit, comparator, parallelThreshold))
+                    : TopK.select(rows, 0, rows.length, limit, comparator);
+        } else {
+            if (sortKeys.get(0) != SortKey.PRICE || !sortByPrice(rows, parallel)) {
+                if (parallel) {
+                    Arrays.parallelSort(rows, comparator);
+                } else {
+                    Arrays.sort(rows, comparator);
+                }
+            }
+            if (limit >= 0 && limit < rows.length) {
+                rows = Arrays.copyOf(rows, limit);
+            }
+        }
+
+        List<Product> result = new ArrayList<>(rows.length);
+        for (Row row : rows) {
+            result.add(row.product);
+        }
+        return result;
+    }
+
+    private List<Product> applyFilters(List<Product> products, boolean parallel) {
+        if (filters.isEmpty()) {
+            return products;
+        }
+        Predicate<Product> predicate = filters.get(0);
+        for (int i = 1; i < filters.size(); i++) {
+            predicate = predicate.and(filters.get(i));
+        }
+        if (parallel) {
+            return products.parallelStream().filter(predicate).collect(Collectors.toList());
+        }
+        List<Product> matching = new ArrayList<>();
+        for (Product product : products) {
+            if (predicate.test(product)) {
+                matching.add(product);
+            }
+        }
+        return matching;
+    }
+
+    private Row[] toRows(List<Product> products) {
+        boolean byPrice = sortKeys.contains(SortKey.PRICE);
+        int commonCurrency = byPrice ? commonCurrency(products) : -1;
+        int baseCurrency = rates != null ? Money.currencyIndex(rates.getBaseCurrency()) : -1;
+        Row[] rows = new Row[products.size()];
+        int position = 0;
+        for (Product product : products) {
+            long price = 0;
+            if (byPrice) {
+                Money unitPrice = product.getUnitPrice();
+                price = commonCurrency >= 0 || baseCurrency < 0 || !rates.supports(unitPrice.getCurrencyIndex())
+                        ? unitPrice.getMinorUnits()
+                        : rates.convert(unitPrice, baseCurrency).getMinorUnits();
+            }
+            rows[position] = new Row(product, price, position);
+            position++;
+        }
+        return rows;
+    }
+
+    private static int commonCurrency(List<Product> products) {
+        int currency = -1;
+        for (Product product : products) {
+            int index = product.getUnitPrice().getCurrencyIndex();
+            if (currency >= 0 && index != currency) {
+                return -1;
+            }
+            currency = index;
+        }
+        return currency;
+    }
+
+    /**
+     * Price first sorts primitive longs holding the price in the high bits and the
+     * position in the low bits, which is several times faster than comparing rows.
+     * Runs of equal prices are then ordered by the remaining keys.
+     */
+    private boolean sortByPrice(Row[] rows, boolean parallel) {
+        int positionBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, rows.length - 1));
+        long maxPrice = Long.MAX_VALUE >>> positionBits;
+        long highest = 0;
+        for (Row row : rows) {
+            if (row.price < 0 || row.price > maxPrice) {
+                return false;
+            }
+            highest = Math.max(highest, row.price);
+        }
+        boolean desc = descending.get(0);
+        long[] keys = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            long price = desc ? highest - rows[i].price : rows[i].price;
+            keys[i] = price << positionBits | i;
+        }
+        if (parallel) {
+            Arrays.parallelSort(keys);
+        } else {
+            Arrays.sort(keys);
+        }
+        Row[] unsorted = rows.clone();
+        long positionMask = (1L << positionBits) - 1;
+        for (int i = 0; i < keys.length; i++) {
+            rows[i] = unsorted[(int) (keys[i] & positionMask)];
+        }
+        if (sortKeys.size() > 1) {
+            Comparator<Row> ties = comparator(1);
+            int start = 0;
+            for (int i = 1; i <= rows.length; i++) {
+                if (i == rows.length || rows[i].price != rows[start].price) {
+                    if (i - start > 1) {
+                        Arrays.sort(rows, start, i, ties);
+                    }
+                    start = i;
+                }
+            }
+        }
+        return true;
+    }
+
+    private Comparator<Row> comparator() {
+        return comparator(0);
+    }
+
+    private Comparator<Row> comparator(int firstKey) {
+        Comparator<Row> comparator = null;
+        for (int i = firstKey; i < sortKeys.size(); i++) {
+            Comparator<Row> next;
+            switch (sortKeys.get(i)) {
+                case PRICE:
+                    next = (a, b) -> Long.compare(a.price, b.price);
+                    break;
+                case NAME:
+                    next = (a, b) -> compareNames(a.product.getName(), b.product.getName());
+                    break;
+                default:
+                    next = (a, b) -> Integer.compare(a.product.getId(), b.product.getId());
+                    break;
+            }
+            if (descending.get(i)) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        // equal keys keep the input order, so every run returns the same list
+        return comparator.thenComparingInt(row -> row.position);
+    }
+
+    private static int compareNames(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        int result = a.compareToIgnoreCase(b);
+        return result != 0 ? result : a.compareTo(b);
+    }
+
+    private static final class Row {
+        private final Product product;
+        private final long price;
+        private final int position;
+
+        private Row(Product product, long price, int position) {
+            this.product = product;
+            this.price = price;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Splits the rows until a range is below the threshold, keeps the best
+     * {@code k} of each range in a bounded heap and merges the sorted halves.
+     */
+    private static final class TopK extends RecursiveTask<Row[]> {
+        private final Row[] rows;
+        private final int from;
+        private final int to;
+        private final int k;
+        private final Comparator<Row> comparator;
+        private final int threshold;
+
+        private TopK(Row[] rows, int from, int to, int k, Comparator<Row> comparator, int threshold) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.comparator = comparator;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Row[] compute() {
+            if (to - from <= threshold) {
+                return select(rows, from, to, k, comparator);
+            }
+            int middle = (from + to) >>> 1;
+            TopK left = new TopK(rows, from, middle, k, comparator, threshold);
+            left.fork();
+            Row[] right = new TopK(rows, middle, to, k, comparator, threshold).compute();
+            return merge(left.join(), right);
+        }
+
+        private Row[] merge(Row[] left, Row[] right) {
+            Row[] merged = new Row[Math.min(k, left.length + right.length)];
+            int l = 0;
+            int r = 0;
+            for (int i = 0; i < merged.length; i++) {
+                if (r >= right.length || (l < left.length && comparator.compare(left[l], right[r]) <= 0)) {
+                    merged[i] = left[l++];
+                } else {
+                    merged[i] = right[r++];
+                }
+            }
+            return merged;
+        }
+
+        static Row[] select(Row[] rows, int from, int to, int k, Comparator<Row> comparator) {
+            if (k == 0) {
+                return new Row[0];
+            }
+            PriorityQueue<Row> heap = new PriorityQueue<>(k + 1, comparator.reversed());
+            for (int i = from; i < to; i++) {
+                if (heap.size() < k) {
+                    heap.add(rows[i]);
+                } else if (comparator.compare(rows[i], heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(rows[i]);
+                }
+            }
+            Row[] selected = heap.toArray(new Row[0]);
+            Arrays.sort(selected, comparator);
+            return selected;
+        }
+    }
+}
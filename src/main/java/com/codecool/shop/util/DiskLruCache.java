@@ -0,0 +1,149 @@
+package com.codecool.shop.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Byte arrays cached as files in one directory, bounded by their total size. The
+ * least recently used files are deleted first. Files left by an earlier run are
+ * kept, oldest first in line for eviction. Concurrent misses on the same key run
+ * the loader once.
+ */
+public class DiskLruCache {
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> sizesByFile = new LinkedHashMap<>(16, 0.75f, true);
+    private final SingleFlight<String, byte[]> loads = new SingleFlight<>();
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DiskLruCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        List<Path> existing = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.bin")) {
+            for (Path file : files) {
+                existing.add(file);
+            }
+        }
+        existing.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+        synchronized (this) {
+            for (Path file : existing) {
+                sizesByFile.put(file.getFileName().toString(), file.toFile().length());
+                totalBytes += file.toFile().length();
+            }
+            evict();
+        }
+    }
+
+    public byte[] get(String key, Function<String, byte[]> loader) {
+        String fileName = fileName(key);
+        boolean cached;
+        synchronized (this) {
+            cached = sizesByFile.get(fileName) != null;
+        }
+        if (cached) {
+            try {
+                byte[] content = Files.readAllBytes(directory.resolve(fileName));
+                hits.incrementAndGet();
+                return content;
+            } catch (NoSuchFileException e) {
+                // evicted in the meantime
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return loads.get(key, k -> {
+            misses.incrementAndGet();
+            byte[] content = loader.apply(k);
+            store(fileName, content);
+            return content;
+        });
+    }
+
+    private void store(String fileName, byte[] content) {
+        if (content.length > maxBytes) {
+            return;
+        }
+        try {
+            Path temp = Files.createTempFile(directory, "variant", ".tmp");
+            Files.write(temp, content);
+            Files.move(temp, directory.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchronized (this) {
+            Long previous = sizesByFile.put(fileName, (long) content.length);
+            totalBytes += content.length - (previous == null ? 0 : previous);
+            evict();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = sizesByFile.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            totalBytes -= entry.getValue();
+            evictions.incrementAndGet();
+            try {
+                Files.deleteIfExists(directory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.append(".bin").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return sizesByFile.size();
+    }
+
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new HashMap<>();
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("evictions", evictions.get());
+        metrics.put("bytes", getTotalBytes());
+        metrics.put("files", (long) size());
+        return metrics;
+    }
+}
@@ -0,0 +1,42 @@
+package com.codecool.shop.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Named metric sources of the running shop. Each source returns its current values
+ * when asked; nothing is sampled in the background.
+ */
+public class MetricsRegistry {
+
+    private static MetricsRegistry instance = null;
+
+    private final Map<String, Supplier<Map<String, ? extends Number>>> sources = new ConcurrentHashMap<>();
+
+    public static synchronized MetricsRegistry getInstance() {
+        if (instance == null) {
+            instance = new MetricsRegistry();
+        }
+        return instance;
+    }
+
+    public void register(String prefix, Supplier<Map<String, ? extends Number>> source) {
+        sources.put(prefix, source);
+    }
+
+    public void unregister(String prefix) {
+        sources.remove(prefix);
+    }
+
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new TreeMap<>();
+        for (Map.Entry<String, Supplier<Map<String, ? extends Number>>> source : sources.entrySet()) {
+            for (Map.Entry<String, ? extends Number> value : source.getValue().get().entrySet()) {
+                values.put(source.getKey() + "." + value.getKey(), value.getValue());
+            }
+        }
+        return values;
+    }
+}
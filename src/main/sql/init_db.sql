@@ -1,4 +1,7 @@
-﻿DROP TABLE IF EXISTS suppliers CASCADE;
+﻿-- the migrations recreate their indexes on the next start
+DROP TABLE IF EXISTS schema_migrations;
+
+DROP TABLE IF EXISTS suppliers CASCADE;
 CREATE TABLE suppliers
 (
   id SERIAL PRIMARY KEY,
@@ -28,6 +31,21 @@ CREATE TABLE products
   supplier INT REFERENCES suppliers(id) ON DELETE CASCADE
 );
 
+DROP TABLE IF EXISTS stock CASCADE;
+CREATE TABLE stock
+(
+  product_id INT PRIMARY KEY REFERENCES products(id) ON DELETE CASCADE,
+  quantity INT NOT NULL CHECK (quantity >= 0)
+);
+
+DROP TABLE IF EXISTS catalog_imports CASCADE;
+CREATE TABLE catalog_imports
+(
+  source TEXT PRIMARY KEY,
+  fingerprint TEXT NOT NULL,
+  position BIGINT NOT NULL
+);
+
 DROP TABLE IF EXISTS users CASCADE;
 CREATE TABLE users
 (
@@ -0,0 +1,84 @@
+-- Tables of init_db.sql; a no-op on databases created from it.
+
+CREATE TABLE IF NOT EXISTS suppliers
+(
+  id SERIAL PRIMARY KEY,
+  name VARCHAR(36),
+  description TEXT
+);
+
+
+CREATE TABLE IF NOT EXISTS product_categories
+(
+  id SERIAL PRIMARY KEY,
+  name VARCHAR(36),
+  description TEXT,
+  department VARCHAR(36)
+);
+
+CREATE TABLE IF NOT EXISTS products
+(
+  id SERIAL PRIMARY KEY,
+  name VARCHAR(30),
+  description TEXT,
+  default_price INT,
+  default_currency VARCHAR(3),
+  product_category INT REFERENCES product_categories(id) ON DELETE CASCADE,
+  supplier INT REFERENCES suppliers(id) ON DELETE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS stock
+(
+  product_id INT PRIMARY KEY REFERENCES products(id) ON DELETE CASCADE,
+  quantity INT NOT NULL CHECK (quantity >= 0)
+);
+
+CREATE TABLE IF NOT EXISTS catalog_imports
+(
+  source TEXT PRIMARY KEY,
+  fingerprint TEXT NOT NULL,
+  position BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS users
+(
+  id SERIAL PRIMARY KEY,
+  username VARCHAR(36),
+  email VARCHAR(36),
+  password TEXT
+);
+
+CREATE TABLE IF NOT EXISTS orders
+(
+  id SERIAL PRIMARY KEY,
+  user_id INT REFERENCES users(id) ,
+  name VARCHAR(36),
+  email VARCHAR(36),
+  billing_address VARCHAR(150),
+  shipping_address VARCHAR(150),
+  phone VARCHAR(46),
+  creation_date TIMESTAMP ,
+  status VARCHAR(36),
+  shopping_cart_id INT
+);
+
+CREATE TABLE IF NOT EXISTS shopping_carts
+(
+  id SERIAL PRIMARY KEY,
+  creation_date TIMESTAMP,
+  status VARCHAR(36)
+);
+
+CREATE TABLE IF NOT EXISTS user_shopping_cart
+(
+  id SERIAL PRIMARY KEY,
+  user_id INT references users(id),
+  shopping_cart_id INT REFERENCES shopping_carts(id) 
+);
+
+CREATE TABLE IF NOT EXISTS shopping_cart_product
+(
+  id SERIAL PRIMARY KEY,
+  shopping_cart_id INT REFERENCES shopping_carts(id),
+  product_id INT REFERENCES  products(id) 
+);
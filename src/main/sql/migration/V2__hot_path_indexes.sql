@@ -0,0 +1,34 @@
+-- Seeding on every boot could leave several suppliers or categories with one name.
+-- Their products move to the oldest row of the name and the other rows are dropped,
+-- so the unique indexes below can be built.
+UPDATE products SET supplier = keep.id
+FROM suppliers duplicate
+JOIN (SELECT name, MIN(id) AS id FROM suppliers GROUP BY name) keep ON keep.name = duplicate.name
+WHERE products.supplier = duplicate.id AND duplicate.id <> keep.id;
+DELETE FROM suppliers duplicate USING suppliers keep
+WHERE duplicate.name = keep.name AND duplicate.id > keep.id;
+
+UPDATE products SET product_category = keep.id
+FROM product_categories duplicate
+JOIN (SELECT name, MIN(id) AS id FROM product_categories GROUP BY name) keep ON keep.name = duplicate.name
+WHERE products.product_category = duplicate.id AND duplicate.id <> keep.id;
+DELETE FROM product_categories duplicate USING product_categories keep
+WHERE duplicate.name = keep.name AND duplicate.id > keep.id;
+
+-- Name lookups of SupplierDaoDB and ProductCategoryDaoDB (findIdByName, findByName).
+CREATE UNIQUE INDEX IF NOT EXISTS suppliers_name_key ON suppliers (name);
+CREATE UNIQUE INDEX IF NOT EXISTS product_categories_name_key ON product_categories (name);
+
+-- ProductDaoDB.getBy(ProductCategory), and category + supplier filters through its leading column.
+CREATE INDEX IF NOT EXISTS products_category_supplier_idx ON products (product_category, supplier);
+
+-- ProductDaoDB.getBy(Supplier), and the ON DELETE CASCADE from suppliers.
+CREATE INDEX IF NOT EXISTS products_supplier_idx ON products (supplier);
+
+-- ON DELETE CASCADE and joins from carts and orders.
+CREATE INDEX IF NOT EXISTS shopping_cart_product_cart_idx ON shopping_cart_product (shopping_cart_id);
+CREATE INDEX IF NOT EXISTS orders_user_idx ON orders (user_id);
+
+ANALYZE suppliers;
+ANALYZE product_categories;
+ANALYZE products;
@@ -13,10 +13,18 @@ function addEventListenerToButtons() {
                 url: '/',
                 data: {"id": id},
                 success: function (response) {
+                    if (response.added === false) {
+                        alert("Sorry, this item is sold out.");
+                    }
                     let priceSum = response.priceSum;
                     let numberOfItems = response.numberOfItems;
                     $('#numberOfItems').html(numberOfItems + " items");
                     $('#totalPrice').html(priceSum);
+                },
+                error: function (xhr) {
+                    if (xhr.status === 503) {
+                        alert(xhr.responseText);
+                    }
                 }
             });
             // button.preventDefault();
@@ -7,6 +7,8 @@ function addFilterListeners() {
     button.addEventListener("click", function (event) {
         let category = document.getElementById("select-category");
         let supplier = document.getElementById("select-supplier");
+        let currency = document.getElementById("select-currency");
+        let sort = document.getElementById("select-sort");
 
         $.ajax({
             dataType: "JSON",
@@ -14,6 +16,8 @@ function addFilterListeners() {
             data: {
                 'select_category': category.options[category.selectedIndex].value,
                 'select_supplier': supplier.options[supplier.selectedIndex].value,
+                'currency': currency.options[currency.selectedIndex].value,
+                'sort': sort.options[sort.selectedIndex].value,
                 'ajax': "ajax"
             },
             // cache: false,
@@ -27,7 +31,8 @@ function addFilterListeners() {
                 productList.innerHTML = htmlString;
                 addFlyEventListener();
                 addEventListenerToButtons();
-                changeURL(category.options[category.selectedIndex].value, supplier.options[supplier.selectedIndex].value)
+                changeURL(category.options[category.selectedIndex].value, supplier.options[supplier.selectedIndex].value,
+                    currency.options[currency.selectedIndex].value, sort.options[sort.selectedIndex].value)
             },
             error: function (xhr) {
                 alert('something went wrong');
@@ -37,14 +42,18 @@ function addFilterListeners() {
 }
 
 
-function changeURL(category, supplier) {
-    let urlString = "/?select_category=" + category + "&select_supplier=" + supplier;
+function changeURL(category, supplier, currency, sort) {
+    let urlString = "/?select_category=" + category + "&select_supplier=" + supplier + "&currency=" + currency;
+    if (sort) {
+        urlString += "&sort=" + encodeURIComponent(sort);
+    }
     window.history.pushState(document.innerHTML, "Codecool Shop", urlString);
 }
 
 
 function itemHtmlText(id, title, description, price, supplier) {
 
+    let currency = price.split(" ")[1];
     price = price.split(" ")[0];
 
     return "<div class=\"lots-productcard\" id=\"product_" + id + "\">\n" +
@@ -56,7 +65,7 @@ function itemHtmlText(id, title, description, price, supplier) {
         "            <div class=\"lots-productcard_footer\">\n" +
         "                <div class=\"lots-pricewrapper\">\n" +
         "                    <div class=\"lots_price\">" + price + "</div>\n" +
-        "                    <div class=\"lots-currency-icon\"></div>\n" +
+        "                    <div class=\"lots-currency-icon\" title=\"" + currency + "\"></div>\n" +
         "                </div>\n" +
         "            </div>\n" +
         "            <div class=\"lots_add-btn add-to-cart\" data-id=\"" + id + "\"></div>\n" +
@@ -20,6 +20,9 @@ let shoppingCartManager = {
             url: "/shoppingcart",
             data: { id: id, process: process},
             success: function(result){
+                if (process === "increase" && result.added === false) {
+                    alert("Sorry, this item is sold out.");
+                }
                 let quantityField = parentNode.getElementsByClassName("quantity_field")[0];
                 if (parseInt(result.numOfItems) > 0) {
                     quantityField.textContent = result.numOfItems;
@@ -27,6 +30,11 @@ let shoppingCartManager = {
                     document.getElementById("productItem_" + id).remove();
                 }
                 document.getElementById("total_price_field").textContent = result.total;
+            },
+            error: function (xhr) {
+                if (xhr.status === 503) {
+                    alert(xhr.responseText);
+                }
             }
         })
     },
@@ -0,0 +1,100 @@
+package com.codecool.shop.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheInvalidationBusTest {
+
+    private LoopbackInvalidationTransport transport;
+    private CacheInvalidationBus nodeA;
+    private CacheInvalidationBus nodeB;
+    private List<InvalidationEvent> receivedByA;
+    private List<InvalidationEvent> receivedByB;
+
+    @BeforeEach
+    void setUp() {
+        transport = new LoopbackInvalidationTransport();
+        nodeA = new CacheInvalidationBus("a");
+        nodeB = new CacheInvalidationBus("b");
+        receivedByA = new CopyOnWriteArrayList<>();
+        receivedByB = new CopyOnWriteArrayList<>();
+        nodeA.addListener(receivedByA::add);
+        nodeB.addListener(receivedByB::add);
+        nodeA.start(transport);
+        nodeB.start(transport);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transport.close();
+    }
+
+    @Test
+    void testEventReachesOtherNodesOnly() throws Exception {
+        nodeA.publish(InvalidationEvent.EntityType.SUPPLIER, 3);
+        transport.awaitDelivery(1000);
+
+        assertTrue(receivedByA.isEmpty());
+        assertEquals(1, receivedByB.size());
+        assertEquals(InvalidationEvent.EntityType.SUPPLIER, receivedByB.get(0).getEntityType());
+        assertEquals(3, receivedByB.get(0).getId());
+        assertEquals("a", receivedByB.get(0).getOrigin());
+    }
+
+    @Test
+    void testCatalogVersionsConverge() throws Exception {
+        nodeA.publish(InvalidationEvent.EntityType.PRODUCT, 1);
+        nodeA.publish(InvalidationEvent.EntityType.PRODUCT, 2);
+        nodeB.publish(InvalidationEvent.EntityType.CATEGORY, InvalidationEvent.ALL);
+        transport.awaitDelivery(1000);
+
+        assertEquals(2, nodeA.getCatalogVersion());
+        assertEquals(2, nodeB.getCatalogVersion());
+        assertTrue(receivedByA.get(0).isAll());
+    }
+
+    @Test
+    void testStoppedNodeNoLongerReceives() throws Exception {
+        nodeB.stop();
+        nodeA.publish(InvalidationEvent.EntityType.PRODUCT, 1);
+        transport.awaitDelivery(1000);
+
+        assertTrue(receivedByB.isEmpty());
+    }
+
+    @Test
+    void testFailingListenerDoesNotStopOthers() throws Exception {
+        List<InvalidationEvent> afterFailure = new CopyOnWriteArrayList<>();
+        nodeB.addListener(event -> { throw new IllegalStateException("broken cache"); });
+        nodeB.addListener(afterFailure::add);
+        nodeA.publish(InvalidationEvent.EntityType.PRODUCT, 1);
+        transport.awaitDelivery(1000);
+
+        assertEquals(1, afterFailure.size());
+        assertEquals(1L, (long) nodeB.getMetrics().get("failures"));
+    }
+
+    @Test
+    void testEncodeDecodeRoundTrip() {
+        InvalidationEvent event = new InvalidationEvent(InvalidationEvent.EntityType.CATEGORY, 7, 42, "node", 1000);
+        InvalidationEvent decoded = InvalidationEvent.decode(event.encode());
+
+        assertEquals(event.getEntityType(), decoded.getEntityType());
+        assertEquals(7, decoded.getId());
+        assertEquals(42, decoded.getCatalogVersion());
+        assertEquals("node", decoded.getOrigin());
+        assertEquals(1000, decoded.getPublishedAtMillis());
+    }
+
+    @Test
+    void testDecodeRejectsMalformedPayload() {
+        assertThrows(IllegalArgumentException.class, () -> InvalidationEvent.decode("PRODUCT,1"));
+        assertThrows(IllegalArgumentException.class, () -> InvalidationEvent.decode("SHELF,1,1,a,1"));
+    }
+}
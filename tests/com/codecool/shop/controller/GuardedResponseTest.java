@@ -0,0 +1,99 @@
+package com.codecool.shop.controller;
+
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuardedResponseTest {
+
+    private final StringWriter body = new StringWriter();
+    private final List<Integer> statuses = new ArrayList<>();
+
+    private HttpServletResponse response() {
+        PrintWriter writer = new PrintWriter(body);
+        return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getWriter":
+                            return writer;
+                        case "setStatus":
+                            statuses.add((Integer) args[0]);
+                            return null;
+                        case "isCommitted":
+                            return false;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    void writesAfterFinishAreNotSent() throws Exception {
+        AsyncRequestHandler.GuardedResponse guarded = new AsyncRequestHandler.GuardedResponse(response());
+        PrintWriter writer = guarded.getWriter();
+        writer.print("before");
+        writer.flush();
+
+        assertTrue(guarded.finish());
+        writer.print("after");
+        writer.flush();
+        guarded.setStatus(500);
+
+        assertEquals("before", body.toString());
+        assertTrue(writer.checkError());
+        assertTrue(statuses.isEmpty());
+        assertTrue(guarded.isCommitted());
+        assertFalse(guarded.finish());
+    }
+
+    @Test
+    void streamWritesAfterFinishThrow() throws Exception {
+        AsyncRequestHandler.GuardedResponse guarded = new AsyncRequestHandler.GuardedResponse(response());
+        assertTrue(guarded.finish());
+        ServletOutputStream out = guarded.getOutputStream();
+        assertThrows(IOException.class, () -> out.write(new byte[]{1, 2, 3}, 0, 3));
+        assertThrows(IOException.class, out::flush);
+    }
+
+    @Test
+    void timeoutInterruptsTheHandlerAndSkipsQueuedTasks() throws Exception {
+        AsyncRequestHandler.GuardedResponse guarded = new AsyncRequestHandler.GuardedResponse(response());
+        CountDownLatch attached = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AtomicBoolean interruptedAfterDetach = new AtomicBoolean(true);
+        Thread handler = new Thread(() -> {
+            guarded.attach();
+            attached.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+                Thread.currentThread().interrupt();
+            }
+            guarded.detach();
+            interruptedAfterDetach.set(Thread.currentThread().isInterrupted());
+        });
+        handler.start();
+        assertTrue(attached.await(5, TimeUnit.SECONDS));
+
+        assertTrue(guarded.finish());
+        handler.join(5_000);
+
+        assertTrue(interrupted.get());
+        assertFalse(interruptedAfterDetach.get());
+        assertFalse(guarded.attach());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
@@ -0,0 +1,87 @@
+package com.codecool.shop.dao;
+
+import com.codecool.shop.dao.implementation.CatalogSnapshot;
+import com.codecool.shop.model.Money;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSnapshotTest {
+
+    private Path path;
+    private CatalogSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        path = Files.createTempFile("catalog", ".snapshot");
+        Supplier bence = new Supplier("Bence", "Mouse-less computer user");
+        bence.setId(10);
+        Supplier zozi = new Supplier("Zozi", "IT-guy philosopher halfling");
+        zozi.setId(11);
+        ProductCategory entertainment = new ProductCategory("Entertainment", "-", "Fun with mentors");
+        entertainment.setId(20);
+        Product teleport = new Product("Teleport", 300, "USD", "Teleport the mentor", entertainment, bence);
+        teleport.setId(30);
+        Product cave = new Product("Departure from the Cave", 0, "EUR", "Árpád-kori filozófia", entertainment, zozi);
+        cave.setUnitPrice(Money.ofMinor(1050, Money.currencyIndex("EUR")));
+        cave.setId(31);
+        snapshot = new CatalogSnapshot("products:2:31", 1000, Arrays.asList(bence, zozi),
+                Arrays.asList(entertainment), Arrays.asList(teleport, cave));
+        snapshot.write(path);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    void testRoundTripKeepsIdsPricesAndLinks() throws IOException {
+        CatalogSnapshot read = CatalogSnapshot.read(path);
+
+        assertEquals("products:2:31", read.getFingerprint());
+        assertEquals(1000, read.getCreatedAtMillis());
+        assertEquals(2, read.getSuppliers().size());
+        Product cave = read.getProducts().get(1);
+        assertEquals(31, cave.getId());
+        assertEquals("Árpád-kori filozófia", cave.getDescription());
+        assertEquals("10.50 EUR", cave.getPrice());
+        assertSame(read.getSuppliers().get(1), cave.getSupplier());
+        assertSame(read.getCategories().get(0), cave.getProductCategory());
+    }
+
+    @Test
+    void testProductIdsAreIndexed() throws IOException {
+        CatalogSnapshot read = CatalogSnapshot.read(path);
+
+        assertArrayEquals(new int[]{30}, read.getSuppliers().get(0).getProductIds());
+        assertArrayEquals(new int[]{30, 31}, read.getCategories().get(0).getProductIds());
+    }
+
+    @Test
+    void testStaleSnapshotIsIgnored() {
+        assertNotNull(CatalogSnapshot.readIfFresh(path, "products:2:31"));
+        assertNull(CatalogSnapshot.readIfFresh(path, "products:3:32"));
+        assertNull(CatalogSnapshot.readIfFresh(path.resolveSibling("missing.snapshot"), "products:2:31"));
+    }
+
+    @Test
+    void testDamagedSnapshotIsIgnored() throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 0x7f;
+        Files.write(path, bytes);
+
+        assertThrows(IOException.class, () -> CatalogSnapshot.read(path));
+        assertNull(CatalogSnapshot.readIfFresh(path, "products:2:31"));
+    }
+}
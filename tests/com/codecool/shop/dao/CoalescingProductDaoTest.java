@@ -0,0 +1,69 @@
+package com.codecool.shop.dao;
+
+import com.codecool.shop.dao.implementation.CoalescingProductDao;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.Supplier;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoalescingProductDaoTest {
+
+    @Test
+    void testConcurrentFindsAreCollapsed() throws InterruptedException {
+        AtomicInteger finds = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Product product = new Product("Teleport", 300, "USD", "test",
+                new ProductCategory("Entertainment", "-", "test"), new Supplier("Bence", "test"));
+        ProductDao slowDao = new ProductDao() {
+            public void add(Product p) { }
+            public Product find(int id) {
+                finds.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return product;
+            }
+            public void remove(int id) { }
+            public void removeAllProducts() { }
+            public List<Product> getAll() { return Collections.emptyList(); }
+            public List<Product> getBy(Supplier supplier) { return Collections.emptyList(); }
+            public List<Product> getBy(ProductCategory productCategory) { return Collections.emptyList(); }
+        };
+        CoalescingProductDao dao = new CoalescingProductDao(slowDao);
+
+        List<Product> found = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Thread thread = new Thread(() -> found.add(dao.find(6)));
+            threads.add(thread);
+            thread.start();
+        }
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, finds.get());
+        assertEquals(19L, (long) dao.getMetrics().get("find.collapsed"));
+        assertEquals(20, found.size());
+        for (Product copy : found) {
+            assertNotSame(product, copy);
+            assertEquals(product.getId(), copy.getId());
+            assertEquals(product.getName(), copy.getName());
+        }
+        found.get(0).setName("changed");
+        assertEquals("changed", found.get(0).getName());
+        assertNotEquals("changed", found.get(1).getName());
+    }
+}
@@ -0,0 +1,100 @@
+package com.codecool.shop.dao.implementation;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLSyntaxErrorException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    @Test
+    void testOpensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 100, () -> 0L);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.allow());
+            breaker.recordFailure();
+        }
+        assertTrue(breaker.allow());
+        breaker.recordSuccess();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allow());
+            breaker.recordFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allow());
+        assertEquals(1L, (long) breaker.getMetrics().get("rejected"));
+    }
+
+    @Test
+    void testHalfOpenTrialClosesOrReopens() {
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(1, 100, now::get);
+        breaker.allow();
+        breaker.recordFailure();
+
+        now.set(100 * MILLIS);
+        assertTrue(breaker.allow());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allow());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now.set(200 * MILLIS);
+        assertTrue(breaker.allow());
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(2L, (long) breaker.getMetrics().get("transitions.opened"));
+        assertEquals(1L, (long) breaker.getMetrics().get("transitions.closed"));
+    }
+
+    @Test
+    void testStatementTimeoutsOnFreshConnectionsOpenTheBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 100, () -> 0L);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allow());
+            breaker.recordConnected();
+            assertTrue(ResiliencePolicy.isStatementTimeout(new SQLException("canceling statement", "57014")));
+            breaker.recordFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testRetriesTransientFailuresOnly() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("db_retry_attempts", "3");
+        properties.setProperty("db_retry_base_ms", "1");
+        ResiliencePolicy policy = new ResiliencePolicy(properties);
+
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals("ok", policy.retry(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new SQLException("connection refused", "08001");
+            }
+            return "ok";
+        }));
+
+        calls.set(0);
+        assertThrows(SQLException.class, () -> policy.retry(() -> {
+            calls.incrementAndGet();
+            throw new SQLException("connection refused", "08001");
+        }));
+        assertEquals(3, calls.get());
+
+        calls.set(0);
+        assertThrows(SQLSyntaxErrorException.class, () -> policy.retry(() -> {
+            calls.incrementAndGet();
+            throw new SQLSyntaxErrorException("syntax error", "42601");
+        }));
+        assertEquals(1, calls.get());
+        assertEquals(4L, (long) policy.getMetrics().get("retries"));
+        assertEquals(1L, (long) policy.getMetrics().get("retries.exhausted"));
+    }
+}
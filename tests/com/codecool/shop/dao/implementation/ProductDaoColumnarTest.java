@@ -0,0 +1,107 @@
+package com.codecool.shop.dao.implementation;
+
+import com.codecool.shop.model.Money;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductDaoColumnarTest {
+
+    private ProductDaoColumnar dao;
+    private ProductCategory tablet;
+    private ProductCategory laptop;
+    private Supplier amazon;
+    private Supplier lenovo;
+
+    @BeforeEach
+    void setup() {
+        dao = new ProductDaoColumnar();
+        tablet = new ProductCategory("Tablet", "Hardware", "test");
+        laptop = new ProductCategory("Laptop", "Hardware", "test");
+        amazon = new Supplier("Amazon", "test");
+        lenovo = new Supplier("Lenovo", "test");
+        for (int i = 0; i < 40; i++) {
+            dao.add(new Product("Product " + (i % 4), i * 10, "USD", "desc",
+                    i % 2 == 0 ? tablet : laptop, i % 4 == 0 ? lenovo : amazon));
+        }
+    }
+
+    @Test
+    void materializedProductsCarryEveryColumn() {
+        Product product = dao.find(6);
+
+        assertEquals(6, product.getId());
+        assertEquals("Product 1", product.getName());
+        assertEquals("desc", product.getDescription());
+        assertEquals(Money.of(50, "USD"), product.getUnitPrice());
+        assertSame(laptop, product.getProductCategory());
+        assertSame(amazon, product.getSupplier());
+        assertNull(dao.find(41));
+    }
+
+    @Test
+    void scansByCategorySupplierAndPrice() {
+        assertEquals(20, dao.getBy(tablet).size());
+        assertEquals(10, dao.getBy(lenovo).size());
+        assertTrue(dao.getBy(new Supplier("Unknown", "test")).isEmpty());
+
+        List<Product> range = dao.getByPriceRange(Money.of(100, "USD"), Money.of(150, "USD"));
+        assertEquals(6, range.size());
+        assertEquals(11, range.get(0).getId());
+        assertEquals(6, dao.countByPriceRange(Money.of(100, "USD"), Money.of(150, "USD")));
+        assertEquals(0, dao.countByPriceRange(Money.of(100, "EUR"), Money.of(150, "EUR")));
+        assertThrows(IllegalArgumentException.class,
+                () -> dao.countByPriceRange(Money.of(100, "USD"), Money.of(150, "EUR")));
+    }
+
+    @Test
+    void facetsAndSums() {
+        Map<ProductCategory, Integer> byCategory = dao.countByCategory();
+        Map<Supplier, Integer> bySupplier = dao.countBySupplier();
+
+        assertEquals(20, (int) byCategory.get(tablet));
+        assertEquals(20, (int) byCategory.get(laptop));
+        assertEquals(10, (int) bySupplier.get(lenovo));
+        assertEquals(30, (int) bySupplier.get(amazon));
+        assertEquals(Money.of(7800, "USD"), dao.sumPrices(Money.currencyIndex("USD")));
+    }
+
+    @Test
+    void removeDoesNotChangeAListAlreadyRead() {
+        List<Product> before = dao.getBy(tablet);
+
+        dao.remove(1);
+        dao.remove(2);
+
+        assertEquals(38, dao.size());
+        assertNull(dao.find(1));
+        assertEquals(3, dao.find(3).getId());
+        assertEquals(20, before.size());
+        assertEquals(19, dao.getBy(tablet).size());
+    }
+
+    @Test
+    void replaceAllKeepsIdsAndOrder() {
+        List<Product> products = new ArrayList<>();
+        for (int id : new int[]{30, 10, 20}) {
+            Product product = new Product("P" + id, id, "EUR", "d", tablet, amazon);
+            product.setId(id);
+            products.add(product);
+        }
+
+        dao.replaceAll(products);
+
+        assertEquals(3, dao.size());
+        assertEquals(10, dao.find(10).getId());
+        assertEquals(30, dao.getAll().get(0).getId());
+        assertEquals(Money.of(20, "EUR"), dao.find(20).getUnitPrice());
+    }
+}
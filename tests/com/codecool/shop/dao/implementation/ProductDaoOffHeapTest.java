@@ -0,0 +1,125 @@
+package com.codecool.shop.dao.implementation;
+
+import com.codecool.shop.model.Money;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductDaoOffHeapTest {
+
+    private ProductCategory tablet;
+    private ProductCategory laptop;
+    private Supplier amazon;
+    private Supplier lenovo;
+
+    @BeforeEach
+    void setup() {
+        tablet = new ProductCategory("Tablet", "Hardware", "test");
+        laptop = new ProductCategory("Laptop", "Hardware", "test");
+        amazon = new Supplier("Amazon", "test");
+        lenovo = new Supplier("Lenovo", "test");
+    }
+
+    private void fill(ProductDaoOffHeap dao, int count) {
+        for (int i = 0; i < count; i++) {
+            dao.add(new Product("Product árvíztűrő " + i, i, "USD", "A rather long description of product " + i,
+                    i % 2 == 0 ? tablet : laptop, i % 3 == 0 ? lenovo : amazon));
+        }
+    }
+
+    @Test
+    void growsBeyondInitialBuffers() {
+        ProductDaoOffHeap dao = new ProductDaoOffHeap();
+        fill(dao, 5000);
+
+        assertEquals(5000, dao.size());
+        Product product = dao.find(4321);
+        assertEquals("Product árvíztűrő 4320", product.getName());
+        assertEquals("A rather long description of product 4320", product.getDescription());
+        assertEquals(Money.of(4320, "USD"), product.getUnitPrice());
+        assertSame(tablet, product.getProductCategory());
+        assertSame(lenovo, product.getSupplier());
+        assertEquals(2500, dao.getBy(laptop).size());
+        assertEquals(1667, dao.getBy(lenovo).size());
+        assertEquals(0, tablet.getProductIds().length);
+    }
+
+    @Test
+    void fieldsAreReadWithoutBuildingProducts() {
+        ProductDaoOffHeap dao = new ProductDaoOffHeap();
+        fill(dao, 3);
+
+        ByteBuffer name = dao.nameAt(2);
+        byte[] bytes = new byte[name.remaining()];
+        name.get(bytes);
+
+        assertTrue(name.isReadOnly());
+        assertEquals("Product árvíztűrő 2", new String(bytes, StandardCharsets.UTF_8));
+        assertEquals(3, dao.idAt(2));
+        assertEquals(Money.of(2, "USD"), dao.priceAt(2));
+        assertEquals("A rather long description of product 1",
+                StandardCharsets.UTF_8.decode(dao.descriptionAt(1)).toString());
+    }
+
+    @Test
+    void removedProductsDisappearFromLaterReads() {
+        ProductDaoOffHeap dao = new ProductDaoOffHeap();
+        fill(dao, 10);
+        List<Product> tablets = dao.getBy(tablet);
+
+        dao.remove(3);
+
+        assertNull(dao.find(3));
+        assertTrue(dao.isRemovedAt(2));
+        assertEquals(9, dao.size());
+        assertEquals(9, dao.getAll().size());
+        assertEquals(4, dao.getAll().get(2).getId());
+        assertEquals(5, tablets.size());
+        assertEquals(4, dao.getBy(tablet).size());
+    }
+
+    @Test
+    void mappedFileKeepsRecords() throws IOException {
+        Path dir = Files.createTempDirectory("offheap");
+        try {
+            ProductDaoOffHeap dao = new ProductDaoOffHeap(dir.resolve("catalog"));
+            fill(dao, 2000);
+
+            assertTrue(Files.exists(dir.resolve("catalog.1.records")));
+            assertTrue(Files.exists(dir.resolve("catalog.1.strings")));
+            List<Product> before = dao.getAll();
+            assertEquals(2000, before.size());
+            assertEquals("Product árvíztűrő 1999", dao.find(2000).getName());
+
+            Product replacement = new Product("Replacement", 1, "USD", "d", tablet, amazon);
+            replacement.setId(2000);
+            dao.replaceAll(Collections.singletonList(replacement));
+
+            // a list read before the replace still sees the old generation
+            assertEquals("Product árvíztűrő 1999", before.get(1999).getName());
+            assertEquals("Replacement", dao.find(2000).getName());
+            assertFalse(Files.exists(dir.resolve("catalog.1.records")));
+            assertTrue(Files.exists(dir.resolve("catalog.2.records")));
+
+            dao.removeAllProducts();
+            assertEquals(0, dao.getAll().size());
+        } finally {
+            for (Path file : Files.list(dir).toArray(Path[]::new)) {
+                Files.delete(file);
+            }
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.codecool.shop.dao.implementation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaRouterTest {
+
+    private static ReplicaRouter router(String routing) {
+        Properties properties = new Properties();
+        properties.setProperty("db_url", "primary:5432");
+        properties.setProperty("db_replica_urls", "replica1:5432, replica2:5432");
+        properties.setProperty("replica_routing", routing);
+        properties.setProperty("replica_sticky_ms", "60000");
+        return new ReplicaRouter(properties);
+    }
+
+    @AfterEach
+    void unbind() {
+        ReplicaRouter.unbindSession();
+    }
+
+    @Test
+    void testWithoutReplicasReadsPrimary() {
+        ReplicaRouter router = new ReplicaRouter(new Properties());
+        assertEquals(ReplicaRouter.PRIMARY, router.acquire());
+    }
+
+    @Test
+    void testRoundRobin() {
+        ReplicaRouter router = router("round_robin");
+        int first = router.acquire();
+        int second = router.acquire();
+        assertNotEquals(first, second);
+        assertEquals(first, router.acquire());
+        assertEquals("replica1:5432", router.getUrl(0));
+    }
+
+    @Test
+    void testLeastLoaded() {
+        ReplicaRouter router = router("least_loaded");
+        int busy = router.acquire();
+        int other = router.acquire();
+        assertNotEquals(busy, other);
+        router.release(other);
+        assertEquals(other, router.acquire());
+    }
+
+    @Test
+    void testDownReplicaSkipped() {
+        ReplicaRouter router = router("round_robin");
+        router.markDown(0);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(1, router.acquire());
+        }
+        router.markDown(1);
+        assertEquals(ReplicaRouter.PRIMARY, router.acquire());
+    }
+
+    @Test
+    void testSessionReadsItsWritesFromPrimary() {
+        ReplicaRouter router = router("round_robin");
+        ReplicaRouter.bindSession(() -> "writer");
+        router.recordWrite();
+        assertEquals(ReplicaRouter.PRIMARY, router.acquire());
+
+        ReplicaRouter.bindSession(() -> "reader");
+        assertNotEquals(ReplicaRouter.PRIMARY, router.acquire());
+        assertEquals(1L, (long) router.getMetrics().get("reads.sticky"));
+    }
+
+    @Test
+    void testThreadStickinessEndsWithTheTask() {
+        ReplicaRouter router = router("round_robin");
+        ReplicaRouter.bindSession(() -> null);
+        router.recordWrite();
+        assertEquals(ReplicaRouter.PRIMARY, router.acquire());
+
+        ReplicaRouter.unbindSession();
+        ReplicaRouter.bindSession(() -> null);
+        assertNotEquals(ReplicaRouter.PRIMARY, router.acquire());
+    }
+
+    @Test
+    void testStickinessExpires() throws InterruptedException {
+        Properties properties = new Properties();
+        properties.setProperty("db_replica_urls", "replica1:5432");
+        properties.setProperty("replica_sticky_ms", "20");
+        ReplicaRouter router = new ReplicaRouter(properties);
+        router.recordWrite();
+        assertEquals(ReplicaRouter.PRIMARY, router.acquire());
+        Thread.sleep(50);
+        assertEquals(0, router.acquire());
+    }
+}
@@ -0,0 +1,53 @@
+package com.codecool.shop.dao.implementation;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigratorTest {
+
+    private static final Path MIGRATIONS = Paths.get("src/main/sql/migration");
+
+    @Test
+    void testLoadsMigrationsInVersionOrder() throws IOException {
+        List<SchemaMigrator.Migration> migrations = SchemaMigrator.load(MIGRATIONS);
+        List<Integer> versions = migrations.stream().map(SchemaMigrator.Migration::getVersion).collect(Collectors.toList());
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(i + 1, (int) versions.get(i));
+        }
+        assertEquals("baseline schema", migrations.get(0).getDescription());
+        assertEquals(64, migrations.get(0).getChecksum().length());
+    }
+
+    @Test
+    void testBaselineCreatesEveryTableOfInitScript() throws IOException {
+        String init = new String(Files.readAllBytes(Paths.get("src/main/sql/init_db.sql")), StandardCharsets.UTF_8);
+        String baseline = new String(Files.readAllBytes(MIGRATIONS.resolve("V1__baseline_schema.sql")), StandardCharsets.UTF_8);
+        Matcher tables = Pattern.compile("CREATE TABLE (\\w+)").matcher(init);
+        while (tables.find()) {
+            assertTrue(baseline.contains("CREATE TABLE IF NOT EXISTS " + tables.group(1)), tables.group(1));
+        }
+    }
+
+    @Test
+    void testRejectsBadFileNames() throws IOException {
+        Path directory = Files.createTempDirectory("migrations");
+        Files.write(directory.resolve("V1__first.sql"), "SELECT 1;".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("V1__again.sql"), "SELECT 1;".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> SchemaMigrator.load(directory));
+
+        Files.delete(directory.resolve("V1__again.sql"));
+        Files.write(directory.resolve("add_index.sql"), "SELECT 1;".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> SchemaMigrator.load(directory));
+    }
+}
@@ -0,0 +1,133 @@
+package com.codecool.shop.dao.implementation;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnitOfWorkTest {
+
+    private List<String> calls;
+    private int connectionsOpened;
+    private Queryhandler queryhandler;
+
+    @BeforeEach
+    void setup() {
+        calls = new ArrayList<>();
+        connectionsOpened = 0;
+        queryhandler = new Queryhandler() {
+            @Override
+            public String getConnectionConfigPath() {
+                return "test_resources/unit_of_work.properties";
+            }
+
+            @Override
+            public Connection getConnection(String dbUrl) {
+                connectionsOpened++;
+                return fakeConnection();
+            }
+        };
+    }
+
+    private Connection fakeConnection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "prepareStatement":
+                            return fakeStatement((String) args[0]);
+                        case "commit":
+                        case "rollback":
+                        case "close":
+                            calls.add(method.getName());
+                            return null;
+                        case "isClosed":
+                            return false;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private PreparedStatement fakeStatement(String query) {
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "executeUpdate":
+                            if (query.contains("FAIL")) {
+                                throw new SQLException("failed");
+                            }
+                            calls.add(query);
+                            return 1;
+                        case "addBatch":
+                            calls.add("batch " + query);
+                            return null;
+                        case "executeBatch":
+                            calls.add("execute " + query);
+                            return new int[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    void testWritesShareOneConnectionAndCommitOnce() throws SQLException {
+        queryhandler.inTransaction(() -> {
+            queryhandler.executeDMLQuery("UPDATE a");
+            queryhandler.executeDMLQuery("UPDATE b", Collections.singletonList(1));
+            return null;
+        });
+        assertEquals(1, connectionsOpened);
+        assertEquals(Arrays.asList("UPDATE a", "UPDATE b", "commit", "close"), calls);
+    }
+
+    @Test
+    void testNestedScopeJoinsOuterTransaction() throws SQLException {
+        queryhandler.inTransaction(() -> queryhandler.inTransaction(() -> queryhandler.executeDMLQuery("UPDATE a")));
+        assertEquals(1, connectionsOpened);
+        assertEquals(1, Collections.frequency(calls, "commit"));
+    }
+
+    @Test
+    void testDeferredWritesBatchedBeforeCommit() throws SQLException {
+        queryhandler.inTransaction(() -> {
+            queryhandler.deferDMLQuery("INSERT x", Collections.singletonList(1));
+            queryhandler.executeDMLQuery("UPDATE a");
+            queryhandler.deferDMLQuery("INSERT x", Collections.singletonList(2));
+            return null;
+        });
+        assertEquals(Arrays.asList("UPDATE a", "batch INSERT x", "batch INSERT x", "execute INSERT x",
+                "commit", "close"), calls);
+    }
+
+    @Test
+    void testFailedStatementRollsBackAndSkipsAfterCommit() {
+        List<String> actions = new ArrayList<>();
+        assertThrows(SQLException.class, () -> queryhandler.inTransaction(() -> {
+            queryhandler.afterCommit(() -> actions.add("published"));
+            queryhandler.afterRollback(() -> actions.add("invalidated"));
+            queryhandler.executeDMLQuery("UPDATE a");
+            queryhandler.executeDMLQuery("UPDATE FAIL");
+            return null;
+        }));
+        assertFalse(calls.contains("commit"));
+        assertTrue(calls.contains("rollback"));
+        assertEquals(Collections.singletonList("invalidated"), actions);
+    }
+
+    @Test
+    void testAfterCommitOutsideTransactionRunsAtOnce() {
+        List<String> actions = new ArrayList<>();
+        queryhandler.afterCommit(() -> actions.add("published"));
+        assertEquals(Collections.singletonList("published"), actions);
+    }
+}
@@ -0,0 +1,86 @@
+package com.codecool.shop.filter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    private static final long SLOW = 1_000_000_000L;
+    private static final long FAST = 1_000_000L;
+
+    private AdmissionController admissionController;
+
+    @BeforeEach
+    void setup() {
+        admissionController = new AdmissionController();
+        admissionController.configure(RequestPriority.CHECKOUT, 2, 4, 100);
+        admissionController.configure(RequestPriority.CART, 2, 4, 100);
+        admissionController.configure(RequestPriority.BROWSE, 1, 10, 100);
+        admissionController.configure(RequestPriority.EXPORT, 1, 2, 60_000);
+    }
+
+    @Test
+    void testRejectsOverLimit() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(admissionController.tryAcquire(RequestPriority.CHECKOUT));
+        }
+        assertFalse(admissionController.tryAcquire(RequestPriority.CHECKOUT));
+        assertEquals(1, admissionController.getRejected(RequestPriority.CHECKOUT));
+    }
+
+    @Test
+    void testSlowCheckoutShedsBrowseFirst() {
+        for (int i = 0; i < 25; i++) {
+            admissionController.tryAcquire(RequestPriority.CHECKOUT);
+            admissionController.release(RequestPriority.CHECKOUT, SLOW);
+        }
+        assertEquals(1, admissionController.getLimit(RequestPriority.BROWSE));
+        assertEquals(4, admissionController.getLimit(RequestPriority.CHECKOUT));
+    }
+
+    @Test
+    void testCheckoutShrinksOnlyAfterLowerClasses() {
+        for (int i = 0; i < 200; i++) {
+            admissionController.tryAcquire(RequestPriority.CHECKOUT);
+            admissionController.release(RequestPriority.CHECKOUT, SLOW);
+        }
+        assertEquals(1, admissionController.getLimit(RequestPriority.BROWSE));
+        assertEquals(2, admissionController.getLimit(RequestPriority.CART));
+        assertEquals(2, admissionController.getLimit(RequestPriority.CHECKOUT));
+    }
+
+    @Test
+    void testFastRequestsRecoverLimit() {
+        for (int i = 0; i < 30; i++) {
+            admissionController.tryAcquire(RequestPriority.CHECKOUT);
+            admissionController.release(RequestPriority.CHECKOUT, SLOW);
+        }
+        for (int i = 0; i < 100; i++) {
+            admissionController.tryAcquire(RequestPriority.BROWSE);
+            admissionController.release(RequestPriority.BROWSE, FAST);
+        }
+        assertTrue(admissionController.getLimit(RequestPriority.BROWSE) > 1);
+        assertEquals(0, admissionController.getInFlight(RequestPriority.BROWSE));
+    }
+
+    @Test
+    void testSlowBrowseNeverShedsCheckout() {
+        for (int i = 0; i < 200; i++) {
+            admissionController.tryAcquire(RequestPriority.BROWSE);
+            admissionController.release(RequestPriority.BROWSE, SLOW);
+        }
+        assertEquals(1, admissionController.getLimit(RequestPriority.BROWSE));
+        assertEquals(4, admissionController.getLimit(RequestPriority.CART));
+        assertEquals(4, admissionController.getLimit(RequestPriority.CHECKOUT));
+    }
+
+    @Test
+    void testLongExportDoesNotShedTheShop() {
+        admissionController.tryAcquire(RequestPriority.EXPORT);
+        admissionController.release(RequestPriority.EXPORT, 30 * SLOW);
+        assertEquals(10, admissionController.getLimit(RequestPriority.BROWSE));
+        assertEquals(2, admissionController.getLimit(RequestPriority.EXPORT));
+    }
+}
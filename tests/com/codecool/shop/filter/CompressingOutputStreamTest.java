@@ -0,0 +1,152 @@
+package com.codecool.shop.filter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressingOutputStreamTest {
+
+    private ByteArrayOutputStream body;
+    private DeflaterPool pool;
+    private CompressionStats stats;
+    private boolean compress;
+    private int passedLength;
+
+    @BeforeEach
+    void setup() {
+        body = new ByteArrayOutputStream();
+        pool = new DeflaterPool(2, 6);
+        stats = new CompressionStats();
+        compress = true;
+        passedLength = -2;
+    }
+
+    private CompressingOutputStream stream(int minBytes) {
+        ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+        CompressingOutputStream.Decision decision = new CompressingOutputStream.Decision() {
+            @Override
+            public boolean startCompressing() {
+                return compress;
+            }
+
+            @Override
+            public void passThrough(int contentLength) {
+                passedLength = contentLength;
+            }
+        };
+        return new CompressingOutputStream(out, decision, pool, stats, minBytes);
+    }
+
+    private static String gunzip(byte[] data) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String page(int lines) {
+        StringBuilder page = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            page.append("<li class=\"product\">Product ").append(i).append("</li>\n");
+        }
+        return page.toString();
+    }
+
+    @Test
+    void testSmallBodyPassesThroughWithLength() throws IOException {
+        CompressingOutputStream stream = stream(1024);
+        stream.write("hello".getBytes(StandardCharsets.UTF_8));
+        stream.finish();
+        assertEquals("hello", body.toString("UTF-8"));
+        assertEquals(5, passedLength);
+        assertEquals(1L, (long) stats.getMetrics().get("responses.skipped"));
+    }
+
+    @Test
+    void testLargeBodyIsGzipped() throws IOException {
+        String page = page(2000);
+        CompressingOutputStream stream = stream(1024);
+        byte[] bytes = page.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i += 100) {
+            stream.write(bytes, i, Math.min(100, bytes.length - i));
+        }
+        stream.finish();
+        assertEquals(page, gunzip(body.toByteArray()));
+        assertTrue(body.size() < bytes.length / 5);
+        assertEquals(1L, (long) stats.getMetrics().get("responses.compressed"));
+        assertEquals((long) bytes.length, (long) stats.getMetrics().get("bytes.in"));
+        assertEquals((long) body.size(), (long) stats.getMetrics().get("bytes.out"));
+    }
+
+    @Test
+    void testFlushKeepsStreamDecodable() throws IOException {
+        CompressingOutputStream stream = stream(16);
+        stream.write(page(10).getBytes(StandardCharsets.UTF_8));
+        stream.flush();
+        int flushed = body.size();
+        assertTrue(flushed > 10);
+        stream.write(page(20).getBytes(StandardCharsets.UTF_8));
+        stream.finish();
+        assertEquals(page(10) + page(20), gunzip(body.toByteArray()));
+    }
+
+    @Test
+    void testRefusedCompressionWritesPlain() throws IOException {
+        compress = false;
+        String page = page(100);
+        CompressingOutputStream stream = stream(64);
+        stream.write(page.getBytes(StandardCharsets.UTF_8));
+        stream.finish();
+        assertEquals(page, body.toString("UTF-8"));
+    }
+
+    @Test
+    void testDeflaterReturnedToPool() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            body.reset();
+            CompressingOutputStream stream = stream(16);
+            stream.write(page(50).getBytes(StandardCharsets.UTF_8));
+            stream.finish();
+            assertEquals(page(50), gunzip(body.toByteArray()));
+        }
+        assertEquals(1, pool.getIdle());
+    }
+
+    @Test
+    void testAcceptEncodingNegotiation() {
+        assertTrue(CompressionFilter.acceptsGzip("gzip, deflate, br"));
+        assertTrue(CompressionFilter.acceptsGzip("deflate;q=1.0, gzip;q=0.5"));
+        assertTrue(CompressionFilter.acceptsGzip("*"));
+        assertFalse(CompressionFilter.acceptsGzip("gzip;q=0"));
+        assertFalse(CompressionFilter.acceptsGzip("br, identity"));
+        assertFalse(CompressionFilter.acceptsGzip(null));
+    }
+}
@@ -0,0 +1,56 @@
+package com.codecool.shop.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void testOfStoresMinorUnits() {
+        Money price = Money.of(300, "USD");
+        assertEquals(30000, price.getMinorUnits());
+        assertEquals(300, price.getMajorUnits());
+    }
+
+    @Test
+    void testCurrencyIndexIsCached() {
+        assertEquals(Money.currencyIndex("EUR"), Money.currencyIndex("EUR"));
+        assertEquals("EUR", Money.currency(Money.currencyIndex("EUR")).getCurrencyCode());
+    }
+
+    @Test
+    void testFormat() {
+        assertEquals("300 USD", Money.of(300, "USD").format());
+        assertEquals("12.05", Money.ofMinor(1205, Money.currencyIndex("USD")).formatAmount());
+        assertEquals("-0.50", Money.ofMinor(-50, Money.currencyIndex("USD")).formatAmount());
+        assertEquals("77 HUF", Money.of(77, "HUF").format());
+    }
+
+    @Test
+    void testPlusAndTimes() {
+        Money sum = Money.of(3, "USD").plus(Money.of(2, "USD")).times(3);
+        assertEquals(Money.of(15, "USD"), sum);
+    }
+
+    @Test
+    void testPlusDifferentCurrenciesThrows() {
+        assertThrows(IllegalArgumentException.class, () -> Money.of(3, "USD").plus(Money.of(3, "HUF")));
+    }
+
+    @Test
+    void testOverflowThrows() {
+        assertThrows(ArithmeticException.class, () -> Money.ofMinor(Long.MAX_VALUE, Money.currencyIndex("USD")).times(2));
+    }
+
+    @Test
+    void testProductCachesDisplayStrings() {
+        Product product = new Product("Teleport", 300, "USD", "test",
+                new ProductCategory("Entertainment", "-", "test"), new Supplier("Bence", "test"));
+        assertEquals("300 USD", product.getPrice());
+        assertSame(product.getPrice(), product.getPrice());
+        assertEquals("300", product.getPriceAmount());
+    }
+}
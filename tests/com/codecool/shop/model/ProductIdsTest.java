@@ -0,0 +1,72 @@
+package com.codecool.shop.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductIdsTest {
+
+    @Test
+    void keepsIdsSortedAndUnique() {
+        ProductIds ids = new ProductIds();
+        for (int id : new int[]{1, 2, 5, 3, 5, 2, 9}) {
+            ids.add(id);
+        }
+        assertArrayEquals(new int[]{1, 2, 3, 5, 9}, ids.toArray());
+
+        ids.remove(3);
+        ids.remove(42);
+        assertArrayEquals(new int[]{1, 2, 5, 9}, ids.toArray());
+    }
+
+    @Test
+    void setDropsDuplicates() {
+        ProductIds ids = new ProductIds();
+        ids.set(new int[]{5, 1, 5, 3, 1});
+        assertArrayEquals(new int[]{1, 3, 5}, ids.toArray());
+
+        ids.remove(5);
+        assertArrayEquals(new int[]{1, 3}, ids.toArray());
+        ids.add(2);
+        assertArrayEquals(new int[]{1, 2, 3}, ids.toArray());
+    }
+
+    @Test
+    void concurrentAddsAreNotLost() throws InterruptedException {
+        ProductIds ids = new ProductIds();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    ids.add(i * 4 + offset);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, ids.toArray().length);
+    }
+
+    @Test
+    void categoryForgetsRemovedProduct() {
+        ProductCategory category = new ProductCategory("Tablet", "-", "test");
+        Supplier supplier = new Supplier("Amazon", "test");
+        Product product = new Product("Pad", 1, "USD", "test", category, supplier);
+        product.setId(7);
+        category.addProduct(product);
+        supplier.addProduct(product);
+
+        category.removeProduct(7);
+        supplier.removeProduct(7);
+
+        assertEquals(0, category.getProductIds().length);
+        assertEquals(0, supplier.getProductIds().length);
+    }
+}
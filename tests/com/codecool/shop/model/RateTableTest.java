@@ -0,0 +1,71 @@
+package com.codecool.shop.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateTableTest {
+
+    private RateTable rates;
+
+    @BeforeEach
+    void setup() {
+        Map<String, Double> ratesByCode = new LinkedHashMap<>();
+        ratesByCode.put("USD", 1.0);
+        ratesByCode.put("EUR", 0.5);
+        ratesByCode.put("HUF", 300.0);
+        rates = new RateTable(1, "USD", ratesByCode);
+    }
+
+    @Test
+    void testConvertBetweenCurrencies() {
+        assertEquals(Money.of(5, "EUR"), rates.convert(Money.of(10, "USD"), Money.currencyIndex("EUR")));
+        assertEquals(Money.of(600, "HUF"), rates.convert(Money.of(1, "EUR"), Money.currencyIndex("HUF")));
+    }
+
+    @Test
+    void testMissingBaseRateThrows() {
+        Map<String, Double> ratesByCode = new LinkedHashMap<>();
+        ratesByCode.put("EUR", 0.5);
+        assertThrows(IllegalArgumentException.class, () -> new RateTable(1, "USD", ratesByCode));
+    }
+
+    @Test
+    void testUnsupportedCurrencyFallsBackToDefaultPrice() {
+        Product product = new Product("Teleport", 300, "USD", "test",
+                new ProductCategory("Entertainment", "-", "test"), new Supplier("Bence", "test"));
+        assertEquals("150", product.getPriceAmount(rates, Money.currencyIndex("EUR")));
+        assertEquals("300", product.getPriceAmount(rates, Money.currencyIndex("JPY")));
+        assertEquals("300", product.getPriceAmount(rates, -1));
+        assertEquals("EUR", product.getPriceCurrency(rates, Money.currencyIndex("EUR")));
+        assertEquals("USD", product.getPriceCurrency(rates, Money.currencyIndex("JPY")));
+        assertEquals("USD", product.getPriceCurrency(rates, -1));
+    }
+
+    @Test
+    void testConvertedPricesFollowNewTable() {
+        Product product = new Product("Teleport", 300, "USD", "test",
+                new ProductCategory("Entertainment", "-", "test"), new Supplier("Bence", "test"));
+        assertEquals("150", product.getPriceAmount(rates, Money.currencyIndex("EUR")));
+        Map<String, Double> ratesByCode = new LinkedHashMap<>();
+        ratesByCode.put("USD", 1.0);
+        ratesByCode.put("EUR", 2.0);
+        assertEquals("600", product.getPriceAmount(new RateTable(2, "USD", ratesByCode), Money.currencyIndex("EUR")));
+    }
+
+    @Test
+    void testCopiesKeepConvertedPrices() {
+        Product product = new Product("Teleport", 300, "USD", "test",
+                new ProductCategory("Entertainment", "-", "test"), new Supplier("Bence", "test"));
+        String converted = product.getPriceAmount(rates, Money.currencyIndex("EUR"));
+        Product copy = product.copy();
+        assertSame(converted, copy.getPriceAmount(rates, Money.currencyIndex("EUR")));
+        copy.setPrice(100, "USD");
+        assertEquals("50", copy.getPriceAmount(rates, Money.currencyIndex("EUR")));
+        assertEquals("150", product.getPriceAmount(rates, Money.currencyIndex("EUR")));
+    }
+}
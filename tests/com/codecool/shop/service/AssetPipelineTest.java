@@ -0,0 +1,94 @@
+package com.codecool.shop.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssetPipelineTest {
+
+    private AssetPipeline pipeline;
+    private Map<String, byte[]> sources;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new AssetPipeline();
+        sources = new HashMap<>();
+        StringBuilder css = new StringBuilder("body { background: url(\"/static/img/coin.png\") no-repeat; }\n");
+        for (int i = 0; i < 50; i++) {
+            css.append(".lots-").append(i).append(" { color: black; }\n");
+        }
+        sources.put("/static/css/custom.css", css.toString().getBytes(StandardCharsets.UTF_8));
+        sources.put("/static/img/coin.png", new byte[]{1, 2, 3});
+        pipeline.build(sources, path -> path.endsWith(".css") ? "text/css" : "image/png");
+    }
+
+    @Test
+    void testLinksAreFingerprinted() {
+        String css = pipeline.resolve("/static/css/custom.css", "");
+
+        assertTrue(css.matches("/assets/css/custom\\.[0-9a-f]{10}\\.css"), css);
+        assertNotNull(pipeline.find(css));
+        assertEquals("/shop" + css, pipeline.resolve("/shop/static/css/custom.css", "/shop"));
+        assertEquals("/static/js/missing.js", pipeline.resolve("/static/js/missing.js", ""));
+        assertEquals("https://example.com/x.css", pipeline.resolve("https://example.com/x.css", ""));
+    }
+
+    @Test
+    void testStylesheetRefersToFingerprintedImages() {
+        String image = pipeline.resolve("/static/img/coin.png", "");
+        String css = new String(pipeline.find(pipeline.resolve("/static/css/custom.css", "")).getContent(), StandardCharsets.UTF_8);
+
+        assertTrue(css.contains("url(\"" + image + "\")"), css);
+    }
+
+    @Test
+    void testImageVariantLinksInStylesheetAreFingerprinted() {
+        sources.put("/static/css/mobile.css", "body { background: url(/images/640/img/coin.png); }".getBytes(StandardCharsets.UTF_8));
+        pipeline.build(sources, path -> path.endsWith(".css") ? "text/css" : "image/png");
+        String image = pipeline.resolve("/static/img/coin.png", "").substring("/assets/".length());
+        String css = new String(pipeline.find(pipeline.resolve("/static/css/mobile.css", "")).getContent(), StandardCharsets.UTF_8);
+
+        assertEquals("body { background: url(/images/640/" + image + "); }", css);
+    }
+
+    @Test
+    void testChangedImageChangesStylesheetName() {
+        String before = pipeline.resolve("/static/css/custom.css", "");
+        sources.put("/static/img/coin.png", new byte[]{4, 5, 6});
+        pipeline.build(sources, path -> path.endsWith(".css") ? "text/css" : "image/png");
+
+        assertNotEquals(before, pipeline.resolve("/static/css/custom.css", ""));
+        assertNull(pipeline.find(before));
+    }
+
+    @Test
+    void testOnlyTextIsPrecompressed() throws IOException {
+        AssetPipeline.Asset css = pipeline.find(pipeline.resolve("/static/css/custom.css", ""));
+        AssetPipeline.Asset image = pipeline.find(pipeline.resolve("/static/img/coin.png", ""));
+
+        assertNull(image.getGzipped());
+        assertTrue(css.getGzipped().length < css.getContent().length);
+        assertArrayEquals(css.getContent(), gunzip(css.getGzipped()));
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
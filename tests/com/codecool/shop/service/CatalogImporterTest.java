@@ -0,0 +1,174 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.dao.implementation.ProductCategoryDaoMem;
+import com.codecool.shop.dao.implementation.ProductDaoDB;
+import com.codecool.shop.dao.implementation.SupplierDaoMem;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogImporterTest {
+
+    private Path directory;
+    private RecordingProductDao productDao;
+    private CatalogImporter importer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("import");
+        SupplierDaoMem suppliers = SupplierDaoMem.getInstance();
+        suppliers.removeAll();
+        suppliers.add(new Supplier("Bence", "Mouse-less computer user"));
+        ProductCategoryDaoMem categories = ProductCategoryDaoMem.getInstance();
+        categories.removeAll();
+        categories.add(new ProductCategory("Entertainment", "-", "Fun with mentors"));
+        productDao = new RecordingProductDao();
+        importer = new CatalogImporter(productDao, suppliers, categories, 2);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Path file : Files.list(directory).toArray(Path[]::new)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void testCsvRowsAreImportedInBatchesAndBadRowsRejected() throws IOException {
+        Path csv = write("products.csv",
+                "name,description,price,currency,category,supplier",
+                "Teleport,\"Off-school, far away\",300,USD,Entertainment,Bence",
+                "Guitar Hero,\"Plays \"\"loud\"\"\",10,USD,Entertainment,Bence",
+                "Broken,,ten,USD,Entertainment,Bence",
+                "Nobody,,10,USD,Entertainment,Nobody",
+                "Pass the Ball,,10,EUR,Entertainment,Bence");
+
+        CatalogImporter.ImportReport report = importer.importFile(csv);
+
+        assertEquals(5, report.getRowsRead());
+        assertEquals(3, report.getImported());
+        assertEquals(2, report.getRejected());
+        assertEquals(Arrays.asList(2, 1), productDao.batchSizes);
+        assertEquals("Off-school, far away", productDao.products.get(0).getDescription());
+        assertEquals("Plays \"loud\"", productDao.products.get(1).getDescription());
+        List<String> rejects = Files.readAllLines(report.getRejectsPath());
+        assertEquals(2, rejects.size());
+        assertTrue(rejects.get(0).startsWith("line 4: price"));
+        assertTrue(rejects.get(1).contains("unknown supplier"));
+    }
+
+    @Test
+    void testJsonLinesAreImported() throws IOException {
+        Path jsonl = write("products.jsonl",
+                "{\"name\": \"Teleport\", \"price\": 300, \"currency\": \"USD\", \"category\": \"Entertainment\", \"supplier\": \"Bence\"}",
+                "{not json",
+                "{\"name\": \"Guitar Hero\", \"price\": 10, \"currency\": \"XYZ\", \"category\": \"Entertainment\", \"supplier\": \"Bence\"}");
+
+        CatalogImporter.ImportReport report = importer.importFile(jsonl);
+
+        assertEquals(1, report.getImported());
+        assertEquals(2, report.getRejected());
+        assertEquals(300, productDao.products.get(0).getDefaultPrice());
+    }
+
+    @Test
+    void testFailedImportResumesAfterLastCommittedBatch() throws IOException {
+        Path csv = write("products.csv",
+                "name,description,price,currency,category,supplier",
+                "A,,1,USD,Entertainment,Bence",
+                "B,,2,USD,Entertainment,Bence",
+                "C,,3,USD,Entertainment,Bence",
+                "D,,4,USD,Entertainment,Bence",
+                "E,,5,USD,Entertainment,Bence");
+        productDao.failAtBatch = 2;
+
+        assertThrows(IOException.class, () -> importer.importFile(csv));
+        assertEquals(2, productDao.position);
+
+        CatalogImporter.ImportReport report = importer.importFile(csv);
+
+        assertEquals(2, report.getResumedFrom());
+        assertEquals(3, report.getImported());
+        List<String> names = new ArrayList<>();
+        for (Product product : productDao.products) {
+            names.add(product.getName());
+        }
+        assertEquals(Arrays.asList("A", "B", "C", "D", "E"), names);
+        assertEquals(0, productDao.position);
+    }
+
+    @Test
+    void testResumedImportDoesNotRejectCommittedRowsAgain() throws IOException {
+        Path csv = write("products.csv",
+                "name,description,price,currency,category,supplier",
+                "A,,1,USD,Entertainment,Bence",
+                "Broken,,one,USD,Entertainment,Bence",
+                "C,,3,USD,Entertainment,Bence",
+                "D,,4,USD,Entertainment,Bence",
+                "E,,5,USD,Entertainment,Bence");
+        productDao.failAtBatch = 2;
+
+        assertThrows(IOException.class, () -> importer.importFile(csv));
+        assertEquals(1, Files.readAllLines(csv.resolveSibling("products.csv.rejected")).size());
+
+        CatalogImporter.ImportReport report = importer.importFile(csv);
+
+        assertEquals(3, report.getResumedFrom());
+        assertEquals(0, report.getRejected());
+        List<String> rejects = Files.readAllLines(report.getRejectsPath());
+        assertEquals(1, rejects.size());
+        assertTrue(rejects.get(0).startsWith("line 3: price"));
+    }
+
+    private Path write(String name, String... lines) throws IOException {
+        return Files.write(directory.resolve(name), Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    private static class RecordingProductDao extends ProductDaoDB {
+        final List<Product> products = new ArrayList<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        int failAtBatch = -1;
+        int batches;
+        String fingerprint;
+        long position;
+
+        @Override
+        public boolean addAll(List<Product> batch, String importSource, String importFingerprint, long importPosition) {
+            if (++batches == failAtBatch) {
+                return false;
+            }
+            products.addAll(batch);
+            if (!batch.isEmpty()) {
+                batchSizes.add(batch.size());
+            }
+            fingerprint = importFingerprint;
+            position = importPosition;
+            return true;
+        }
+
+        @Override
+        public long getImportPosition(String importSource, String importFingerprint) {
+            return importFingerprint.equals(fingerprint) ? position : 0;
+        }
+
+        @Override
+        public void removeImportPosition(String importSource) {
+            fingerprint = null;
+            position = 0;
+        }
+    }
+}
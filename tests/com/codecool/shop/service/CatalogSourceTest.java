@@ -0,0 +1,48 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.dao.implementation.CatalogSnapshot;
+import com.codecool.shop.dao.implementation.CoalescingProductDao;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.Supplier;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSourceTest {
+
+    private static CatalogSnapshot snapshot() {
+        Supplier bence = new Supplier("Bence", "Mouse-less computer user");
+        bence.setId(1);
+        ProductCategory entertainment = new ProductCategory("Entertainment", "-", "Fun with mentors");
+        entertainment.setId(1);
+        Product teleport = new Product("Teleport", 300, "USD", "Teleport the mentor", entertainment, bence);
+        teleport.setId(1);
+        return new CatalogSnapshot("products:1:1", 1000, Collections.singletonList(bence),
+                Collections.singletonList(entertainment), Collections.singletonList(teleport));
+    }
+
+    @Test
+    void testNoDegradedModeWithoutSnapshot() {
+        CatalogSource source = new CatalogSource();
+        assertFalse(source.enterDegradedMode());
+        assertFalse(source.isDegraded());
+    }
+
+    @Test
+    void testDegradedModeServesLastKnownGoodSnapshot() {
+        CatalogSource source = new CatalogSource();
+        source.serveSnapshot(snapshot());
+
+        assertTrue(source.enterDegradedMode());
+        assertTrue(source.isDegraded());
+        assertEquals("Teleport", CoalescingProductDao.getInstance().find(1).getName());
+
+        // invalidations from other nodes must not send reads back to the database
+        source.serveDatabase();
+        assertTrue(source.isServingSnapshot());
+        assertEquals(1L, (long) source.getMetrics().get("degraded"));
+    }
+}
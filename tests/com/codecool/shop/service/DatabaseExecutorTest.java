@@ -0,0 +1,106 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.dao.implementation.ReplicaRouter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseExecutorTest {
+
+    private DatabaseExecutor executor;
+
+    @BeforeEach
+    void setup() {
+        executor = new DatabaseExecutor(4, 4, false);
+    }
+
+    @AfterEach
+    void teardown() {
+        executor.shutdown();
+        ReplicaRouter.unbindSession();
+    }
+
+    private static String slowQuery(String result) {
+        try {
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    @Test
+    void testIndependentQueriesOverlap() {
+        long start = System.nanoTime();
+        CompletableFuture<String> products = executor.supply(() -> slowQuery("products"));
+        CompletableFuture<String> categories = executor.supply(() -> slowQuery("categories"));
+        CompletableFuture<String> suppliers = executor.supply(() -> slowQuery("suppliers"));
+        assertEquals("products", DatabaseExecutor.join(products));
+        assertEquals("categories", DatabaseExecutor.join(categories));
+        assertEquals("suppliers", DatabaseExecutor.join(suppliers));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+    }
+
+    @Test
+    void testSaturatedExecutorRunsOnCaller() throws InterruptedException {
+        DatabaseExecutor small = new DatabaseExecutor(1, 1, false);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            small.supply(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            });
+        }
+        CompletableFuture<String> inline = small.supply(() -> Thread.currentThread().getName());
+        assertTrue(inline.isDone());
+        assertEquals(Thread.currentThread().getName(), inline.join());
+        release.countDown();
+        small.shutdown();
+    }
+
+    @Test
+    void testJoinRethrowsTaskFailure() {
+        CompletableFuture<String> failing = executor.supply(() -> {
+            throw new IllegalStateException("database down");
+        });
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> DatabaseExecutor.join(failing));
+        assertEquals("database down", e.getMessage());
+    }
+
+    @Test
+    void testSessionTravelsWithTask() {
+        ReplicaRouter.bindSession(() -> "session-1");
+        CompletableFuture<String> session = executor.supply(() -> ReplicaRouter.boundSession().get());
+        assertEquals("session-1", DatabaseExecutor.join(session));
+    }
+
+    @Test
+    void testAtMostThreadsTasksRunAtOnce() throws InterruptedException {
+        DatabaseExecutor virtual = new DatabaseExecutor(2, 8, true);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger mostActive = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(6);
+        for (int i = 0; i < 6; i++) {
+            virtual.execute(() -> {
+                mostActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                slowQuery("stock");
+                active.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, mostActive.get());
+        virtual.shutdown();
+    }
+}
@@ -0,0 +1,135 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.dao.ProductDao;
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlashSaleTest {
+
+    private AtomicInteger finds;
+    private List<Product> products;
+    private FlashSale flashSale;
+
+    @BeforeEach
+    void setup() {
+        finds = new AtomicInteger();
+        products = new ArrayList<>();
+        ProductCategory category = new ProductCategory("Entertainment", "-", "test");
+        Supplier supplier = new Supplier("Bence", "test");
+        Product teleport = new Product("Teleport", 300, "USD", "test", category, supplier);
+        teleport.setId(1);
+        Product guitar = new Product("Guitar Hero", 10, "USD", "test", category, supplier);
+        guitar.setId(2);
+        products.add(teleport);
+        products.add(guitar);
+        ProductDao productDao = new ProductDao() {
+            public void add(Product product) { }
+            public Product find(int id) {
+                finds.incrementAndGet();
+                return products.get(id - 1);
+            }
+            public void remove(int id) { }
+            public void removeAllProducts() { }
+            public List<Product> getAll() { return products; }
+            public List<Product> getBy(Supplier supplier) { return products; }
+            public List<Product> getBy(ProductCategory productCategory) { return products; }
+        };
+        flashSale = new FlashSale(productDao, 1, 1, 50, Runnable::run);
+    }
+
+    @Test
+    void testPinnedProductsAreServedWithoutLookup() {
+        flashSale.start(Collections.singleton("Teleport"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Teleport", flashSale.find(1).getName());
+        }
+        assertEquals(0, finds.get());
+        assertTrue(flashSale.isPinned(1));
+        assertFalse(flashSale.isPinned(2));
+    }
+
+    @Test
+    void testPinnedProductIsHandedOutAsCopies() {
+        flashSale.start(Collections.singleton("Teleport"));
+        Product first = flashSale.find(1);
+        first.setName("Changed");
+        assertNotSame(first, flashSale.find(1));
+        assertEquals("Teleport", flashSale.find(1).getName());
+    }
+
+    @Test
+    void testDisabledModeDelegatesToDao() {
+        flashSale.find(1);
+        assertEquals(1, finds.get());
+    }
+
+    @Test
+    void testQueuedPurchaseRunsWhenSlotFrees() throws Exception {
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch leave = new CountDownLatch(1);
+        Thread holder = new Thread(() -> flashSale.purchase(() -> {
+            inside.countDown();
+            try {
+                leave.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }));
+        holder.start();
+        inside.await();
+
+        CompletableFuture<Boolean> queued = flashSale.purchase(() -> true);
+        assertFalse(queued.isDone());
+        assertEquals(1, flashSale.getWaiting());
+        assertThrows(RejectedExecutionException.class, () -> flashSale.purchase(() -> true));
+
+        leave.countDown();
+        holder.join();
+        assertTrue(queued.get(1, TimeUnit.SECONDS));
+        assertEquals(0, flashSale.getWaiting());
+        assertTrue(flashSale.purchase(() -> true).isDone());
+    }
+
+    @Test
+    void testExpiredWaiterIsRejected() throws Exception {
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch leave = new CountDownLatch(1);
+        Thread holder = new Thread(() -> flashSale.purchase(() -> {
+            inside.countDown();
+            try {
+                leave.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }));
+        holder.start();
+        inside.await();
+
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<Integer> queued = flashSale.purchase(runs::incrementAndGet);
+        Thread.sleep(100);
+        leave.countDown();
+        holder.join();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> queued.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertEquals(0, runs.get());
+    }
+}
@@ -0,0 +1,81 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.util.DiskLruCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageVariantsTest {
+
+    private Path directory;
+    private ImageVariants variants;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("variants");
+        variants = new ImageVariants(new int[]{320, 640}, 0.8f, new DiskLruCache(directory, 10 * 1024 * 1024));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Path file : Files.list(directory).toArray(Path[]::new)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void testJpegIsScaledDownKeepingAspectRatio() throws IOException {
+        byte[] source = image(1000, 500, "jpg");
+
+        byte[] variant = variants.variant("background#1", source, 320, true);
+
+        BufferedImage scaled = ImageIO.read(new ByteArrayInputStream(variant));
+        assertEquals(320, scaled.getWidth());
+        assertEquals(160, scaled.getHeight());
+        assertTrue(variant.length < source.length);
+    }
+
+    @Test
+    void testNarrowImageIsNotScaledUp() throws IOException {
+        byte[] source = image(200, 100, "png");
+
+        assertSame(source, variants.variant("coin#1", source, 640, false));
+        assertEquals(200, variants.sourceWidth("coin#1", source));
+    }
+
+    @Test
+    void testOnlyConfiguredWidthsAreProduced() throws IOException {
+        byte[] source = image(1000, 500, "jpg");
+
+        assertThrows(IllegalArgumentException.class, () -> variants.variant("background#1", source, 500, true));
+        assertEquals(Arrays.asList(320, 640), variants.widthsBelow(1000));
+        assertEquals(Arrays.asList(320), variants.widthsBelow(500));
+    }
+
+    private static byte[] image(int width, int height, String format) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        for (int x = 0; x < width; x += 10) {
+            graphics.setColor(new Color((x * 7) % 256, (x * 13) % 256, (x * 31) % 256));
+            graphics.fillRect(x, 0, 10, height);
+        }
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,197 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.dao.StockDao;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventoryTest {
+
+    private Map<Integer, Integer> stockTable;
+    private Inventory inventory;
+
+    @BeforeEach
+    void setup() {
+        stockTable = new HashMap<>();
+        stockTable.put(1, 10);
+        StockDao stockDao = new StockDao() {
+            @Override
+            public Map<Integer, Integer> getAll() {
+                return new HashMap<>(stockTable);
+            }
+
+            @Override
+            public void addAll(Map<Integer, Integer> changes) {
+                changes.forEach((productId, change) -> stockTable.merge(productId, change, Integer::sum));
+            }
+
+            @Override
+            public boolean sell(Map<Integer, Integer> quantities) {
+                for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+                    if (stockTable.getOrDefault(entry.getKey(), 0) < entry.getValue()) {
+                        return false;
+                    }
+                }
+                quantities.forEach((productId, quantity) -> stockTable.merge(productId, -quantity, Integer::sum));
+                return true;
+            }
+
+            @Override
+            public void removeAll() {
+                stockTable.clear();
+            }
+        };
+        inventory = new Inventory(stockDao, 60_000);
+        inventory.load();
+    }
+
+    @Test
+    void testUntrackedProductIsUnlimited() {
+        assertTrue(inventory.reserve("cart", 2, 1000));
+        assertEquals(-1, inventory.getAvailable(2));
+    }
+
+    @Test
+    void testConcurrentReservationsDoNotOversell() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger successful = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            String cart = "cart" + i;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (inventory.reserve(cart, 1, 1)) {
+                    successful.incrementAndGet();
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(10, successful.get());
+        assertEquals(0, inventory.getAvailable(1));
+    }
+
+    @Test
+    void testReleaseReturnsStock() {
+        inventory.reserve("cart", 1, 3);
+        inventory.release("cart", 1, 2);
+        assertEquals(9, inventory.getAvailable(1));
+        inventory.releaseAll("cart");
+        assertEquals(10, inventory.getAvailable(1));
+    }
+
+    @Test
+    void testCommitIsReconciledToStockTable() {
+        inventory.reserve("cart", 1, 4);
+        Map<Integer, Integer> cart = new HashMap<>();
+        cart.put(1, 4);
+        assertTrue(inventory.commit("cart", cart));
+        inventory.reconcile();
+        assertEquals(6, (int) stockTable.get(1));
+        assertEquals(6, inventory.getAvailable(1));
+    }
+
+    @Test
+    void testSaleOnAnotherNodeIsNotSoldAgain() {
+        inventory.reserve("cart", 1, 4);
+        // another node sold 8 meanwhile
+        stockTable.put(1, 2);
+        Map<Integer, Integer> cart = new HashMap<>();
+        cart.put(1, 4);
+        assertFalse(inventory.commit("cart", cart));
+        assertEquals(2, (int) stockTable.get(1));
+        inventory.releaseAll("cart");
+        inventory.refresh();
+        assertEquals(2, inventory.getAvailable(1));
+    }
+
+    @Test
+    void testSetStockKeepsReservationsAndWritesTheDifference() {
+        inventory.reserve("cart", 1, 3);
+        inventory.setStock(1, 15);
+        assertEquals(12, inventory.getAvailable(1));
+
+        // another node sold 2 meanwhile
+        stockTable.put(1, 8);
+        inventory.reconcile();
+        assertEquals(13, (int) stockTable.get(1));
+    }
+
+    @Test
+    void testExpiredReservationIsReturned() {
+        Inventory shortLived = new Inventory(new StockDaoStub(), -1);
+        shortLived.load();
+        shortLived.setStock(1, 2);
+        shortLived.reserve("cart", 1, 2);
+        assertEquals(1, shortLived.expireReservations());
+        assertEquals(2, shortLived.getAvailable(1));
+    }
+
+    @Test
+    void testCommitFailsWhenExpiredReservationIsSoldOut() {
+        Inventory shortLived = new Inventory(new StockDaoStub(), -1);
+        shortLived.load();
+        shortLived.setStock(1, 1);
+        shortLived.reserve("first", 1, 1);
+        shortLived.expireReservations();
+        shortLived.reserve("second", 1, 1);
+        Map<Integer, Integer> cart = new HashMap<>();
+        cart.put(1, 1);
+        assertFalse(shortLived.commit("first", cart));
+        assertTrue(shortLived.commit("second", cart));
+    }
+
+    @Test
+    void testClosedUntilStockIsLoaded() {
+        AtomicInteger reads = new AtomicInteger();
+        Inventory booting = new Inventory(new StockDaoStub() {
+            @Override
+            public Map<Integer, Integer> getAll() {
+                if (reads.incrementAndGet() == 1) {
+                    throw new IllegalStateException("No database connection");
+                }
+                return new HashMap<>();
+            }
+        }, 60_000);
+        booting.addLoadListener(() -> booting.setStock(1, 3));
+        assertFalse(booting.loadIfMissing());
+        assertFalse(booting.reserve("cart", 2, 1));
+        assertTrue(booting.loadIfMissing());
+        assertTrue(booting.reserve("cart", 2, 1));
+        assertEquals(3, booting.getAvailable(1));
+    }
+
+    private static class StockDaoStub implements StockDao {
+        @Override
+        public Map<Integer, Integer> getAll() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public void addAll(Map<Integer, Integer> changes) {
+        }
+
+        @Override
+        public boolean sell(Map<Integer, Integer> quantities) {
+            return true;
+        }
+
+        @Override
+        public void removeAll() {
+        }
+    }
+}
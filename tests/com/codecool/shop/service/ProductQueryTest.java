@@ -0,0 +1,111 @@
+package com.codecool.shop.service;
+
+import com.codecool.shop.model.Product;
+import com.codecool.shop.model.ProductCategory;
+import com.codecool.shop.model.RateTable;
+import com.codecool.shop.model.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductQueryTest {
+
+    private ProductCategory category;
+    private Supplier supplier;
+    private List<Product> products;
+
+    @BeforeEach
+    void setup() {
+        category = new ProductCategory("Tablet", "-", "test");
+        supplier = new Supplier("Amazon", "test");
+        products = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            products.add(product(i, "Product " + random.nextInt(500), random.nextInt(1000), "USD"));
+        }
+    }
+
+    private Product product(int id, String name, int price, String currency) {
+        Product product = new Product(name, price, currency, "test", category, supplier);
+        product.setId(id);
+        return product;
+    }
+
+    private static Comparator<Product> byPriceThenName() {
+        return Comparator.<Product>comparingLong(p -> p.getUnitPrice().getMinorUnits())
+                .thenComparing(Product::getName, String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(Product::getName);
+    }
+
+    @Test
+    void filterKeepsInputOrder() {
+        List<Product> expected = products.stream().filter(p -> p.getId() % 3 == 0).collect(Collectors.toList());
+
+        assertEquals(expected, new ProductQuery(1000).where(p -> p.getId() % 3 == 0).execute(products));
+        assertEquals(expected, new ProductQuery(1_000_000).where(p -> p.getId() % 3 == 0).execute(products));
+    }
+
+    @Test
+    void parallelAndSequentialSortAgree() {
+        List<Product> expected = new ArrayList<>(products);
+        expected.sort(byPriceThenName());
+
+        assertEquals(expected, new ProductQuery(1000).orderBy("price,name").execute(products));
+        assertEquals(expected, new ProductQuery(1_000_000).orderBy("price,name").execute(products));
+    }
+
+    @Test
+    void descendingKeyKeepsInputOrderForTies() {
+        List<Product> expected = new ArrayList<>(products);
+        expected.sort(Comparator.<Product>comparingLong(p -> p.getUnitPrice().getMinorUnits()).reversed());
+
+        assertEquals(expected, new ProductQuery(1000).orderBy("-price").execute(products));
+    }
+
+    @Test
+    void topKMatchesSortedPrefix() {
+        List<Product> expected = new ArrayList<>(products);
+        expected.sort(byPriceThenName());
+        expected = expected.subList(0, 25);
+
+        assertEquals(expected, new ProductQuery(1000).orderBy("price,name").limit(25).execute(products));
+        assertEquals(expected, new ProductQuery(1_000_000).orderBy("price,name").limit(25).execute(products));
+        assertTrue(new ProductQuery().orderBy("id").limit(0).execute(products).isEmpty());
+    }
+
+    @Test
+    void pricesInOtherCurrenciesAreConverted() {
+        Map<String, Double> rates = new LinkedHashMap<>();
+        rates.put("USD", 1.0);
+        rates.put("HUF", 300.0);
+        RateTable table = new RateTable(1, "USD", rates);
+        Product cheap = product(1, "Cheap", 3000, "HUF");
+        Product middle = product(2, "Middle", 20, "USD");
+        Product expensive = product(3, "Expensive", 9000, "HUF");
+        List<Product> mixed = new ArrayList<>();
+        mixed.add(expensive);
+        mixed.add(middle);
+        mixed.add(cheap);
+
+        List<Product> sorted = new ProductQuery().orderBy("price").withRates(table).execute(mixed);
+
+        assertEquals(cheap, sorted.get(0));
+        assertEquals(middle, sorted.get(1));
+        assertEquals(expensive, sorted.get(2));
+    }
+
+    @Test
+    void unknownSortKeyIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ProductQuery().orderBy("price,rating"));
+        assertThrows(IllegalArgumentException.class, () -> new ProductQuery().limit(-1));
+    }
+}
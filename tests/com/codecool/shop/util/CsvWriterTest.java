@@ -0,0 +1,37 @@
+package com.codecool.shop.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvWriterTest {
+
+    @Test
+    void testPlainFieldsAreNotQuoted() throws IOException {
+        StringWriter out = new StringWriter();
+        new CsvWriter(out).writeRecord(1, "Teleport", null, 300);
+
+        assertEquals("1,Teleport,,300\n", out.toString());
+    }
+
+    @Test
+    void testRecordsSurviveRoundTrip() throws IOException {
+        StringWriter out = new StringWriter();
+        CsvWriter writer = new CsvWriter(out);
+        writer.writeRecord("Guitar Hero", "Plays \"loud\", for 45 minutes");
+        writer.writeRecord("Ring the Bell", "Line one\nline two");
+
+        CsvReader reader = new CsvReader(new BufferedReader(new StringReader(out.toString())));
+
+        assertEquals(Arrays.asList("Guitar Hero", "Plays \"loud\", for 45 minutes"), reader.readRecord());
+        assertEquals(Arrays.asList("Ring the Bell", "Line one\nline two"), reader.readRecord());
+        assertEquals(3, reader.getLineNumber());
+        assertNull(reader.readRecord());
+    }
+}
@@ -0,0 +1,68 @@
+package com.codecool.shop.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskLruCacheTest {
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("lru");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Path file : Files.list(directory).toArray(Path[]::new)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void testSecondReadComesFromDisk() throws IOException {
+        DiskLruCache cache = new DiskLruCache(directory, 100);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("coin@320", key -> { loads.incrementAndGet(); return new byte[]{1, 2, 3}; });
+        byte[] cached = cache.get("coin@320", key -> { loads.incrementAndGet(); return new byte[0]; });
+
+        assertArrayEquals(new byte[]{1, 2, 3}, cached);
+        assertEquals(1, loads.get());
+        assertEquals(1L, (long) cache.getMetrics().get("hits"));
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvictedFirst() throws IOException {
+        DiskLruCache cache = new DiskLruCache(directory, 100);
+        cache.get("a", key -> new byte[40]);
+        cache.get("b", key -> new byte[40]);
+        cache.get("a", key -> new byte[40]);
+        cache.get("c", key -> new byte[40]);
+
+        assertEquals(80, cache.getTotalBytes());
+        assertEquals(2, Files.list(directory).count());
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("a", key -> { loads.incrementAndGet(); return new byte[40]; });
+        cache.get("b", key -> { loads.incrementAndGet(); return new byte[40]; });
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testFilesSurviveRestart() throws IOException {
+        new DiskLruCache(directory, 100).get("a", key -> new byte[]{7});
+        DiskLruCache restarted = new DiskLruCache(directory, 100);
+
+        assertArrayEquals(new byte[]{7}, restarted.get("a", key -> new byte[]{0}));
+        assertEquals(1, restarted.getTotalBytes());
+    }
+}